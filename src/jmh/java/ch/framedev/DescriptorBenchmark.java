@@ -0,0 +1,99 @@
+package ch.framedev;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+
+/**
+ * Reading one plugin's descriptor: the getters of {@link PluginHelper}, the info text of the GUI, and plain JarFile
+ * access as a reference. "Uncached" benchmarks clear the descriptor cache first, which is what a changed jar costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DescriptorBenchmark {
+
+    @Param({"small", "huge-yml", "shaded"})
+    public String shape;
+
+    private File dir;
+    private File jar;
+
+    @Setup(Level.Trial)
+    public void createJar() {
+        Logger.getLogger("").setLevel(java.util.logging.Level.WARNING);
+        dir = SyntheticPlugins.tempDirectory();
+        jar = SyntheticPlugins.jar(dir, "Bench.jar", "Bench", SyntheticPlugins.Shape.of(shape), 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteJar() {
+        SyntheticPlugins.delete(dir);
+    }
+
+    @Benchmark
+    public PluginDescriptor descriptorUncached() {
+        PluginHelper.getDescriptorCache().clear();
+        return PluginHelper.getDescriptor(jar);
+    }
+
+    @Benchmark
+    public void gettersUncached(Blackhole blackhole) {
+        PluginHelper.getDescriptorCache().clear();
+        getters(blackhole);
+    }
+
+    @Benchmark
+    public void gettersCached(Blackhole blackhole) {
+        getters(blackhole);
+    }
+
+    private void getters(Blackhole blackhole) {
+        blackhole.consume(PluginHelper.getPluginName(jar));
+        blackhole.consume(PluginHelper.getPluginVersion(jar));
+        blackhole.consume(PluginHelper.getPluginDescription(jar));
+        blackhole.consume(PluginHelper.getPluginMainClass(jar));
+        blackhole.consume(PluginHelper.getPluginAPIVersion(jar));
+        blackhole.consume(PluginHelper.getPluginAuthors(jar));
+        blackhole.consume(PluginHelper.getCommands(jar));
+    }
+
+    @Benchmark
+    public String infoText() {
+        PluginHelper.getDescriptorCache().clear();
+        return PluginInfoText.writePluginInfoFromFile(jar);
+    }
+
+    // The access path before the central-directory reader: open the jar, read plugin.yml, nothing parsed
+    @Benchmark
+    public byte[] jarFileReadOnly() throws IOException {
+        try (JarFile jarFile = new JarFile(jar)) {
+            ZipEntry entry = jarFile.getEntry(PluginHelper.PLUGIN_YML);
+            try (InputStream in = jarFile.getInputStream(entry)) {
+                return in.readAllBytes();
+            }
+        }
+    }
+}
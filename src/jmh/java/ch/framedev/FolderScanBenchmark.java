@@ -0,0 +1,84 @@
+package ch.framedev;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Whole plugin folders: listing, reading every descriptor, and indexing with and without a previous index.
+ * Every tenth plugin is disabled, as in a typical server folder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FolderScanBenchmark {
+
+    private static final String DISABLED_SUFFIX = ".disabled";
+
+    @Param({"10", "100", "1000"})
+    public int plugins;
+
+    private File dir;
+    private File[] jars;
+    private PluginIndex warmIndex;
+
+    @Setup(Level.Trial)
+    public void createFolder() throws InterruptedException {
+        Logger.getLogger("").setLevel(java.util.logging.Level.WARNING);
+        dir = SyntheticPlugins.tempDirectory();
+        jars = new File[plugins];
+        for (int i = 0; i < plugins; i++) {
+            String name = "Plugin" + i;
+            String fileName = name + (i % 10 == 9 ? ".jar" + DISABLED_SUFFIX : ".jar");
+            jars[i] = SyntheticPlugins.jar(dir, fileName, name, SyntheticPlugins.Shape.SMALL, i);
+        }
+        warmIndex = new PluginIndex();
+        PluginIndexer.scan(dir, DISABLED_SUFFIX, warmIndex, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFolder() {
+        SyntheticPlugins.delete(dir);
+    }
+
+    @Benchmark
+    public PluginListing listLocal() {
+        return PluginListing.ofLocal(dir);
+    }
+
+    @Benchmark
+    public void describeAllUncached(Blackhole blackhole) {
+        PluginHelper.getDescriptorCache().clear();
+        for (File jar : jars) blackhole.consume(PluginHelper.getDescriptor(jar));
+    }
+
+    @Benchmark
+    public PluginIndexer.ScanResult indexCold() throws InterruptedException {
+        PluginHelper.getDescriptorCache().clear();
+        return PluginIndexer.scan(dir, DISABLED_SUFFIX, new PluginIndex(), null);
+    }
+
+    // Nothing changed since the last scan: only the folder listing and size/mtime checks remain
+    @Benchmark
+    public PluginIndexer.ScanResult indexUnchanged() throws InterruptedException {
+        return PluginIndexer.scan(dir, DISABLED_SUFFIX, warmIndex, null);
+    }
+}
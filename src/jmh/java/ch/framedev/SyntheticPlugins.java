@@ -0,0 +1,125 @@
+package ch.framedev;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates plugin jars for the benchmarks. Contents are random but seeded, so every run measures the same files.
+ * The descriptor is written last, like in shaded jars, so readers that stop at the descriptor still see the whole
+ * central directory.
+ */
+final class SyntheticPlugins {
+
+    /**
+     * Shape of a generated jar.
+     *
+     * @param classes     Number of small, compressed class-like entries.
+     * @param permissions Number of permission nodes in plugin.yml.
+     * @param shadedBytes Bytes of incompressible library data, stored without compression as in fat jars.
+     */
+    record Shape(int classes, int permissions, long shadedBytes) {
+        static final Shape SMALL = new Shape(200, 5, 0);
+        static final Shape HUGE_YML = new Shape(200, 20_000, 0);
+        static final Shape SHADED = new Shape(30_000, 50, 60L * 1024 * 1024);
+
+        static Shape of(String name) {
+            return switch (name) {
+                case "small" -> SMALL;
+                case "huge-yml" -> HUGE_YML;
+                case "shaded" -> SHADED;
+                default -> throw new IllegalArgumentException("Unknown shape: " + name);
+            };
+        }
+    }
+
+    private SyntheticPlugins() {
+    }
+
+    static File jar(File dir, String fileName, String pluginName, Shape shape, long seed) {
+        File file = new File(dir, fileName);
+        SplittableRandom random = new SplittableRandom(seed);
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            zip.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            zip.write("Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            byte[] classBytes = new byte[1024];
+            for (int i = 0; i < shape.classes(); i++) {
+                zip.putNextEntry(new ZipEntry("com/example/" + pluginName.toLowerCase() + "/p" + (i % 40) + "/Class" + i + ".class"));
+                int length = 200 + random.nextInt(classBytes.length - 200);
+                // half random, half zeros: compresses roughly like bytecode
+                for (int b = 0; b < length / 2; b++) classBytes[b] = (byte) random.nextInt(256);
+                zip.write(classBytes, 0, length);
+            }
+            if (shape.shadedBytes() > 0) {
+                zip.setLevel(Deflater.NO_COMPRESSION);
+                byte[] chunk = new byte[1024 * 1024];
+                long remaining = shape.shadedBytes();
+                for (int part = 0; remaining > 0; part++) {
+                    zip.putNextEntry(new ZipEntry("com/example/shaded/lib/blob" + part + ".bin"));
+                    int length = (int) Math.min(chunk.length, remaining);
+                    for (int b = 0; b < length; b++) chunk[b] = (byte) random.nextInt(256);
+                    zip.write(chunk, 0, length);
+                    remaining -= length;
+                }
+                zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+            }
+            zip.putNextEntry(new ZipEntry(PluginHelper.PLUGIN_YML));
+            zip.write(pluginYml(pluginName, shape.permissions()).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return file;
+    }
+
+    static String pluginYml(String name, int permissions) {
+        StringBuilder yml = new StringBuilder();
+        yml.append("name: ").append(name).append('\n');
+        yml.append("version: 1.4.2\n");
+        yml.append("main: com.example.").append(name.toLowerCase()).append(".Main\n");
+        yml.append("api-version: '1.20'\n");
+        yml.append("description: Synthetic plugin for benchmarks\n");
+        yml.append("authors: [alice, bob]\n");
+        yml.append("softdepend: [Vault, PlaceholderAPI]\n");
+        yml.append("commands:\n");
+        for (int i = 0; i < 5; i++) {
+            yml.append("  cmd").append(i).append(":\n    description: Command ").append(i)
+                    .append("\n    usage: /cmd").append(i).append(" <player>\n    aliases: [c").append(i).append("]\n");
+        }
+        yml.append("permissions:\n");
+        for (int i = 0; i < permissions; i++) {
+            yml.append("  ").append(name.toLowerCase()).append(".node").append(i).append(":\n")
+                    .append("    description: Permission ").append(i).append('\n')
+                    .append("    default: op\n")
+                    .append("    children:\n      ").append(name.toLowerCase()).append(".node").append(i).append(".use: true\n");
+        }
+        return yml.toString();
+    }
+
+    static File tempDirectory() {
+        try {
+            return Files.createTempDirectory("spm-bench").toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void delete(File dir) {
+        if (dir == null) return;
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
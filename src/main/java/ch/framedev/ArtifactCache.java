@@ -0,0 +1,271 @@
+package ch.framedev;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local cache of downloaded plugin jars. Files are stored once per content hash (SHA-256) and indexed by URL;
+ * a cached URL is revalidated with a conditional GET (ETag / Last-Modified), so an unchanged artifact is served
+ * from disk without transferring it again. The total size is bounded by evicting the least recently used files.
+ */
+public class ArtifactCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ArtifactCache.class.getName());
+
+    private static final int MAGIC = 0x53504d41; // "SPMA"
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * A cached artifact, ready to be copied to its destination.
+     *
+     * @param fileName  The file name reported by the server.
+     * @param sha256    The content hash.
+     * @param file      The cached file; its name is the hash, not the file name.
+     * @param fromCache True if nothing was transferred because the server confirmed the cached copy.
+     * @param download  The download outcome.
+     */
+    public record Artifact(String fileName, String sha256, long size, File file, boolean fromCache,
+                           HttpDownloader.Result download) {
+        @Override
+        public String toString() {
+            return fromCache ? fileName + " (from cache)" : download.toString();
+        }
+    }
+
+    private record UrlEntry(String sha256, String fileName, String etag, String lastModified) {
+    }
+
+    private record Blob(long size, long lastUsed) {
+    }
+
+    private final File directory;
+    private final long maxBytes;
+    private final Map<String, UrlEntry> urls = new HashMap<>();
+    private final Map<String, Blob> blobs = new HashMap<>();
+    private boolean loaded;
+
+    /**
+     * @param directory The cache folder; created on first use.
+     * @param maxBytes  Upper bound of the cached files' total size.
+     */
+    public ArtifactCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return The cache next to config.yml, bounded by the "download-cache-mb" setting (default 512).
+     */
+    public static ArtifactCache getDefault() {
+        return new ArtifactCache(new File(Main.utils.getFilePath(Main.class), "download-cache"),
+                Main.config.getInt("download-cache-mb", 512) * 1_048_576L);
+    }
+
+    /**
+     * Returns the artifact behind the URL, downloading it only if it is not cached or the server reports a change.
+     *
+     * @param downloader The downloader to use.
+     * @param uri        The URL.
+     * @param listener   Optional download progress listener.
+     * @param cancelled  Polled while downloading.
+     * @return The cached artifact.
+     * @throws IOException          If the download or cache update fails.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public Artifact fetch(HttpDownloader downloader, URI uri, HttpDownloader.ProgressListener listener, BooleanSupplier cancelled)
+            throws IOException, InterruptedException {
+        return fetch(downloader, uri, true, listener, cancelled);
+    }
+
+    private Artifact fetch(HttpDownloader downloader, URI uri, boolean conditional, HttpDownloader.ProgressListener listener,
+                           BooleanSupplier cancelled) throws IOException, InterruptedException {
+        String url = uri.toString();
+        UrlEntry cached = conditional ? lookup(url) : null;
+        HttpDownloader.Validators conditions = cached != null
+                ? new HttpDownloader.Validators(cached.etag(), cached.lastModified()) : HttpDownloader.Validators.NONE;
+
+        File temp = File.createTempFile("download", ".part", directory);
+        try {
+            MessageDigest digest = StagedFiles.newDigest();
+            HttpDownloader.Result result = downloader.download(uri, conditions,
+                    name -> HttpDownloader.hashing(HttpDownloader.toFile(temp), digest), listener, cancelled);
+            if (result.notModified() && cached != null) {
+                File blobFile = blobFile(cached.sha256());
+                synchronized (this) {
+                    if (blobs.containsKey(cached.sha256()) && blobFile.isFile()) {
+                        blobs.computeIfPresent(cached.sha256(), (sha, blob) -> new Blob(blob.size(), System.currentTimeMillis()));
+                        save();
+                        LOGGER.info("Serving " + url + " from cache");
+                        return new Artifact(cached.fileName(), cached.sha256(), blobFile.length(), blobFile, true, result);
+                    }
+                }
+                // evicted or removed since the lookup; the server only confirmed a copy we no longer have
+                return fetch(downloader, uri, false, listener, cancelled);
+            }
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            long size = temp.length();
+            File blobFile = blobFile(sha256);
+            synchronized (this) {
+                // same content from another URL is stored only once
+                if (blobFile.isFile() && blobFile.length() == size) {
+                    Files.delete(temp.toPath());
+                } else {
+                    Files.move(temp.toPath(), blobFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                blobs.put(sha256, new Blob(size, System.currentTimeMillis()));
+                urls.put(url, new UrlEntry(sha256, result.fileName(), result.validators().etag(), result.validators().lastModified()));
+                evict(sha256);
+                save();
+            }
+            return new Artifact(result.fileName(), sha256, size, blobFile, false, result);
+        } finally {
+            if (temp.exists() && !temp.delete()) temp.deleteOnExit();
+        }
+    }
+
+    /**
+     * @return The total size of all cached files in bytes.
+     */
+    public synchronized long getSize() {
+        load();
+        long size = 0;
+        for (Blob blob : blobs.values()) size += blob.size();
+        return size;
+    }
+
+    /**
+     * Removes all cached files.
+     */
+    public synchronized void clear() {
+        load();
+        for (String sha256 : blobs.keySet()) deleteBlob(sha256);
+        blobs.clear();
+        urls.clear();
+        save();
+    }
+
+    private synchronized UrlEntry lookup(String url) {
+        load();
+        UrlEntry entry = urls.get(url);
+        if (entry == null) return null;
+        Blob blob = blobs.get(entry.sha256());
+        File file = blobFile(entry.sha256());
+        if (blob == null || !file.isFile() || file.length() != blob.size()) {
+            // the file was removed or damaged outside the cache; download it again
+            urls.remove(url);
+            return null;
+        }
+        return entry;
+    }
+
+    // Evicts least recently used files until the cache fits, never the one just stored
+    private void evict(String keep) {
+        long total = 0;
+        for (Blob blob : blobs.values()) total += blob.size();
+        if (total <= maxBytes) return;
+        List<Map.Entry<String, Blob>> byAge = new ArrayList<>(blobs.entrySet());
+        byAge.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsed()));
+        for (Map.Entry<String, Blob> entry : byAge) {
+            if (total <= maxBytes) break;
+            String sha256 = entry.getKey();
+            if (sha256.equals(keep)) continue;
+            deleteBlob(sha256);
+            blobs.remove(sha256);
+            urls.values().removeIf(url -> url.sha256().equals(sha256));
+            total -= entry.getValue().size();
+            LOGGER.fine("Evicted " + sha256 + " from download cache");
+        }
+    }
+
+    private File blobFile(String sha256) {
+        return new File(directory, sha256);
+    }
+
+    private void deleteBlob(String sha256) {
+        try {
+            Files.deleteIfExists(blobFile(sha256).toPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not delete cached file " + sha256 + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            LOGGER.warning("Could not create download cache folder " + directory);
+        }
+        File file = new File(directory, "index.bin");
+        if (!file.isFile()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return;
+            int blobCount = in.readInt();
+            for (int i = 0; i < blobCount; i++) {
+                blobs.put(in.readUTF(), new Blob(in.readLong(), in.readLong()));
+            }
+            int urlCount = in.readInt();
+            for (int i = 0; i < urlCount; i++) {
+                String url = in.readUTF();
+                String sha256 = in.readUTF();
+                String fileName = in.readUTF();
+                String etag = in.readBoolean() ? in.readUTF() : null;
+                String lastModified = in.readBoolean() ? in.readUTF() : null;
+                urls.put(url, new UrlEntry(sha256, fileName, etag, lastModified));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Ignoring unreadable download cache index " + file + ": " + e.getMessage(), e);
+            blobs.clear();
+            urls.clear();
+        }
+    }
+
+    private void save() {
+        File file = new File(directory, "index.bin");
+        File temp = null;
+        try {
+            temp = File.createTempFile("index", ".tmp", directory);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(blobs.size());
+                for (Map.Entry<String, Blob> entry : blobs.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().size());
+                    out.writeLong(entry.getValue().lastUsed());
+                }
+                out.writeInt(urls.size());
+                for (Map.Entry<String, UrlEntry> entry : urls.entrySet()) {
+                    UrlEntry url = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(url.sha256());
+                    out.writeUTF(url.fileName());
+                    out.writeBoolean(url.etag() != null);
+                    if (url.etag() != null) out.writeUTF(url.etag());
+                    out.writeBoolean(url.lastModified() != null);
+                    if (url.lastModified() != null) out.writeUTF(url.lastModified());
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save download cache index to " + file + ": " + e.getMessage(), e);
+            if (temp != null && !temp.delete()) temp.deleteOnExit();
+        }
+    }
+}
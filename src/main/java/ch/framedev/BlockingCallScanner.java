@@ -0,0 +1,565 @@
+package ch.framedev;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds calls to blocking APIs (JDBC, HTTP and sockets, file I/O, waiting) that plugins make on the server thread:
+ * from event handlers of {@code Listener} classes and from tasks handed to the sync methods of the Bukkit scheduler.
+ * Calls are followed through the plugin's own methods up to {@value #MAX_DEPTH} levels deep.
+ * <p>
+ * The scan is static and approximate: a task is recognized when the lambda or object created last before a
+ * scheduler call is the one passed to it, calls are resolved by their declared owner, and relocated copies of
+ * libraries are not recognized as blocking. Jars that reference none of the blocking APIs are dismissed after
+ * reading their constant pools. Results are cached by jar SHA-256 in a file next to config.yml.
+ */
+public class BlockingCallScanner {
+
+    private static final Logger LOGGER = Logger.getLogger(BlockingCallScanner.class.getName());
+
+    private static final int MAGIC = 0x53504d42; // "SPMB"
+    // bump when the rules or the analysis change, so cached results are recomputed
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_CACHED = 2000;
+    private static final int MAX_DEPTH = 4;
+    private static final int MAX_FINDINGS = 100;
+    private static final int MAX_CONCURRENT_READS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    private static final String LISTENER = "org/bukkit/event/Listener";
+    private static final String EVENT_HANDLER = "Lorg/bukkit/event/EventHandler;";
+    private static final String SCHEDULER = "org/bukkit/scheduler/BukkitScheduler";
+    private static final String RUNNABLE = "org/bukkit/scheduler/BukkitRunnable";
+    private static final Set<String> SYNC_METHODS = Set.of("runTask", "runTaskLater", "runTaskTimer",
+            "scheduleSyncDelayedTask", "scheduleSyncRepeatingTask", "callSyncMethod");
+
+    public enum Category {
+        DATABASE, NETWORK, FILE, WAIT
+    }
+
+    public enum Risk {
+        NONE, MEDIUM, HIGH
+    }
+
+    /**
+     * A blocking call reachable from the server thread.
+     *
+     * @param entryPoint The event handler or task, e.g. "com.example.JoinListener.onJoin".
+     * @param context    "event handler" or "sync task".
+     * @param call       The blocking API called, e.g. "java.sql.PreparedStatement.executeQuery".
+     * @param via        The plugin's methods between entry point and call, empty if called directly.
+     */
+    public record Finding(String entryPoint, String context, String call, Category category, List<String> via) {
+        @Override
+        public String toString() {
+            return entryPoint + " (" + context + ") -> " + call + (via.isEmpty() ? "" : " via " + String.join(" -> ", via));
+        }
+    }
+
+    /**
+     * @param sha256   The jar's content hash.
+     * @param classes  Classes read; 0 if the jar was dismissed by its constant pools.
+     * @param findings Blocking calls found, most severe first.
+     * @param error    Why the jar could not be scanned, or null.
+     */
+    public record JarReport(String sha256, int classes, List<Finding> findings, String error) {
+        public Risk getRisk() {
+            Risk risk = Risk.NONE;
+            for (Finding finding : findings) {
+                if (finding.category() == Category.DATABASE || finding.category() == Category.NETWORK) return Risk.HIGH;
+                risk = Risk.MEDIUM;
+            }
+            return risk;
+        }
+
+        /**
+         * @return The text shown in the plugin info area.
+         */
+        public String toText() {
+            if (error != null) return "Main thread blocking calls: not scanned (" + error + ")\n";
+            if (findings.isEmpty()) return "Main thread blocking calls: none found\n";
+            StringBuilder text = new StringBuilder("Main thread blocking calls: ").append(getRisk()).append(" risk\n");
+            for (Finding finding : findings) {
+                text.append(" - [").append(finding.category()).append("] ").append(finding).append("\n");
+            }
+            return text.toString();
+        }
+    }
+
+    /**
+     * @param reports Results by file name.
+     * @return A plain-text summary: one line per plugin, riskiest first, then the findings of risky plugins.
+     */
+    public static String toText(Map<String, JarReport> reports) {
+        List<Map.Entry<String, JarReport>> sorted = new ArrayList<>(reports.entrySet());
+        sorted.sort(Comparator.<Map.Entry<String, JarReport>, Risk>comparing(entry -> entry.getValue().getRisk()).reversed()
+                .thenComparing(Map.Entry::getKey));
+        StringBuilder text = new StringBuilder();
+        long risky = sorted.stream().filter(entry -> entry.getValue().getRisk() != Risk.NONE).count();
+        text.append(risky).append(" of ").append(sorted.size()).append(" plugins call blocking APIs on the main thread\n\n");
+        for (Map.Entry<String, JarReport> entry : sorted) {
+            JarReport report = entry.getValue();
+            text.append(String.format("  %-6s %-40s %s%n", report.error() != null ? "?" : report.getRisk(), entry.getKey(),
+                    report.error() != null ? report.error() : report.findings().size() + " calls"));
+        }
+        for (Map.Entry<String, JarReport> entry : sorted) {
+            if (entry.getValue().findings().isEmpty()) continue;
+            text.append("\n").append(entry.getKey()).append(":\n").append(entry.getValue().toText());
+        }
+        return text.toString();
+    }
+
+    // A blocking API: methods of one owner, by exact name or by prefix when ending in '*'
+    private record Rule(String owner, Category category, String... names) {
+        boolean matches(String name) {
+            for (String candidate : names) {
+                if (candidate.endsWith("*") ? name.startsWith(candidate.substring(0, candidate.length() - 1)) && !name.equals("<init>")
+                        : candidate.equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final List<Rule> RULES = List.of(
+            new Rule("java/sql/DriverManager", Category.DATABASE, "getConnection"),
+            new Rule("javax/sql/DataSource", Category.DATABASE, "getConnection"),
+            new Rule("com/zaxxer/hikari/HikariDataSource", Category.DATABASE, "getConnection"),
+            new Rule("java/sql/Statement", Category.DATABASE, "execute*"),
+            new Rule("java/sql/PreparedStatement", Category.DATABASE, "execute*"),
+            new Rule("java/sql/CallableStatement", Category.DATABASE, "execute*"),
+            new Rule("java/sql/Connection", Category.DATABASE, "commit", "rollback", "setAutoCommit"),
+            new Rule("redis/clients/jedis/Jedis", Category.DATABASE, "*"),
+            new Rule("java/net/URL", Category.NETWORK, "openStream", "getContent"),
+            new Rule("java/net/URLConnection", Category.NETWORK, "connect", "getInputStream", "getOutputStream", "getContent"),
+            new Rule("java/net/HttpURLConnection", Category.NETWORK, "connect", "getInputStream", "getOutputStream", "getResponseCode"),
+            new Rule("javax/net/ssl/HttpsURLConnection", Category.NETWORK, "connect", "getInputStream", "getOutputStream", "getResponseCode"),
+            new Rule("java/net/http/HttpClient", Category.NETWORK, "send"),
+            new Rule("java/net/Socket", Category.NETWORK, "<init>", "connect"),
+            new Rule("java/net/InetAddress", Category.NETWORK, "getByName", "getAllByName", "getLocalHost"),
+            new Rule("okhttp3/Call", Category.NETWORK, "execute"),
+            new Rule("org/apache/http/client/HttpClient", Category.NETWORK, "execute"),
+            new Rule("java/io/FileInputStream", Category.FILE, "<init>"),
+            new Rule("java/io/FileOutputStream", Category.FILE, "<init>"),
+            new Rule("java/io/FileReader", Category.FILE, "<init>"),
+            new Rule("java/io/FileWriter", Category.FILE, "<init>"),
+            new Rule("java/io/RandomAccessFile", Category.FILE, "<init>"),
+            new Rule("java/nio/file/Files", Category.FILE, "read*", "write*", "newBufferedReader", "newBufferedWriter",
+                    "newInputStream", "newOutputStream", "lines", "copy", "move", "delete*", "walk", "list", "createFile"),
+            new Rule("org/bukkit/configuration/file/YamlConfiguration", Category.FILE, "loadConfiguration", "save", "load"),
+            new Rule("org/bukkit/configuration/file/FileConfiguration", Category.FILE, "save", "load"),
+            new Rule("java/lang/Thread", Category.WAIT, "sleep", "join"),
+            new Rule("java/util/concurrent/Future", Category.WAIT, "get"),
+            new Rule("java/util/concurrent/CompletableFuture", Category.WAIT, "get", "join"),
+            new Rule("java/util/concurrent/CountDownLatch", Category.WAIT, "await")
+    );
+
+    private static final Map<String, List<Rule>> RULES_BY_OWNER = new HashMap<>();
+
+    static {
+        for (Rule rule : RULES) RULES_BY_OWNER.computeIfAbsent(rule.owner(), k -> new ArrayList<>()).add(rule);
+    }
+
+    // A class of the jar with its methods by name and descriptor
+    private record ClassInfo(String superName, List<String> interfaces, Map<String, ClassFileReader.Method> methods) {
+    }
+
+    private final File file;
+    private final Map<String, JarReport> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JarReport> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+    private boolean loaded;
+    private boolean dirty;
+
+    /**
+     * @param file The cache file, or null to keep results in memory only.
+     */
+    public BlockingCallScanner(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return The scanner caching next to config.yml.
+     */
+    public static BlockingCallScanner getDefault() {
+        return new BlockingCallScanner(new File(Main.utils.getFilePath(Main.class), "blocking-calls.bin"));
+    }
+
+    /**
+     * @param sha256 A jar's content hash.
+     * @return The cached result for that jar, or null if it has not been scanned.
+     */
+    public synchronized JarReport getCached(String sha256) {
+        load();
+        return sha256 != null ? cache.get(sha256) : null;
+    }
+
+    /**
+     * Scans one local jar, or returns the cached result.
+     *
+     * @param jar    The jar.
+     * @param sha256    Its content hash, or null to compute it.
+     * @param cancelled Polled between classes.
+     */
+    public JarReport scanFile(File jar, String sha256, BooleanSupplier cancelled) throws IOException, InterruptedException {
+        String hash = sha256 != null ? sha256 : PluginHelper.sha256(jar);
+        JarReport cached = getCached(hash);
+        if (cached != null) return cached;
+        JarReport report;
+        try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+            report = scan(hash, ZipEntryReader.of(channel), cancelled);
+        } catch (InternalError e) {
+            // the mapped jar was truncated while it was read, e.g. rewritten in place by another tool
+            throw new IOException(jar.getName() + " changed while it was scanned", e);
+        }
+        store(report);
+        return report;
+    }
+
+    /**
+     * Scans the given plugin files of a local folder in parallel; cached jars are not read again.
+     *
+     * @return Results by file name.
+     */
+    public Map<String, JarReport> scanLocal(File directory, Collection<PluginIndex.Entry> entries, PluginIndexer.ProgressListener listener,
+                                            BooleanSupplier cancelled) throws InterruptedException {
+        return scanAll(entries, entry -> scanFile(new File(directory, entry.fileName()), entry.sha256(), cancelled), listener, cancelled);
+    }
+
+    /**
+     * Scans the given plugin files of a remote folder in parallel. Only jars without a cached result are downloaded,
+     * so entries should carry their hash (see {@link RemoteHelper#scanFolder(String, String, boolean, boolean)}, with hashes).
+     *
+     * @return Results by file name.
+     */
+    public Map<String, JarReport> scanRemote(RemoteHelper helper, String remoteDir, Collection<PluginIndex.Entry> entries,
+                                             PluginIndexer.ProgressListener listener, BooleanSupplier cancelled) throws InterruptedException {
+        return scanAll(entries, entry -> {
+            JarReport cached = getCached(entry.sha256());
+            if (cached != null) return cached;
+            File temp = Files.createTempFile("plugin_", ".jar").toFile();
+            try {
+                helper.downloadFile(RemoteHelper.resolve(remoteDir, entry.fileName()), temp);
+                return scanFile(temp, entry.sha256(), cancelled);
+            } finally {
+                if (!temp.delete()) temp.deleteOnExit();
+            }
+        }, listener, cancelled);
+    }
+
+    @FunctionalInterface
+    private interface JarScan {
+        JarReport scan(PluginIndex.Entry entry) throws Exception;
+    }
+
+    private Map<String, JarReport> scanAll(Collection<PluginIndex.Entry> entries, JarScan scan, PluginIndexer.ProgressListener listener,
+                                           BooleanSupplier cancelled) throws InterruptedException {
+        Map<String, JarReport> results = new ConcurrentHashMap<>();
+        AtomicInteger done = new AtomicInteger();
+        Semaphore permits = new Semaphore(MAX_CONCURRENT_READS);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (PluginIndex.Entry entry : entries) {
+                futures.add(executor.submit(() -> {
+                    if (cancelled.getAsBoolean()) return null;
+                    permits.acquire();
+                    try {
+                        results.put(entry.fileName(), scan.scan(entry));
+                    } catch (InterruptedException e) {
+                        return null;
+                    } catch (Exception e) {
+                        LOGGER.log(Level.FINE, "Cannot scan " + entry.fileName(), e);
+                        results.put(entry.fileName(), new JarReport(entry.sha256(), 0, List.of(), String.valueOf(e.getMessage())));
+                    } finally {
+                        permits.release();
+                    }
+                    if (listener != null) listener.onProgress(done.incrementAndGet(), entries.size());
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    LOGGER.log(Level.WARNING, "Scan failed: " + e.getMessage(), e);
+                }
+            }
+        }
+        save();
+        if (cancelled.getAsBoolean()) throw new InterruptedException("Scan cancelled");
+        return results;
+    }
+
+    /**
+     * Scans one jar without consulting the cache. A first pass checks each class's constant pool and keeps nothing;
+     * only if some class references a blocking API is the jar read again and its methods kept, without the class bytes.
+     *
+     * @param sha256    The jar's hash, recorded in the report.
+     * @param source    The jar.
+     * @param cancelled Polled between classes.
+     */
+    public static JarReport scan(String sha256, ZipEntryReader.Source source, BooleanSupplier cancelled) throws IOException, InterruptedException {
+        List<ZipEntryReader.CentralEntry> entries = new ArrayList<>();
+        for (ZipEntryReader.CentralEntry entry : ZipEntryReader.readCentralDirectory(source)) {
+            String name = entry.name();
+            if (name.endsWith(".class") && !name.startsWith("META-INF/") && !name.endsWith("module-info.class")) entries.add(entry);
+        }
+        boolean relevant = false;
+        for (ZipEntryReader.CentralEntry entry : entries) {
+            if (cancelled.getAsBoolean()) throw new InterruptedException("Scan cancelled");
+            ClassFileReader reader = read(source, entry);
+            if (reader != null && referencesBlockingApi(reader)) {
+                relevant = true;
+                break;
+            }
+        }
+        if (!relevant) return new JarReport(sha256, 0, List.of(), null);
+
+        Map<String, ClassInfo> classes = new HashMap<>();
+        for (ZipEntryReader.CentralEntry entry : entries) {
+            if (cancelled.getAsBoolean()) throw new InterruptedException("Scan cancelled");
+            ClassFileReader reader = read(source, entry);
+            if (reader == null) continue;
+            try {
+                Map<String, ClassFileReader.Method> methods = new HashMap<>();
+                for (ClassFileReader.Method method : reader.methods()) methods.put(method.name() + method.descriptor(), method);
+                classes.put(reader.name(), new ClassInfo(reader.superName(), reader.interfaces(), methods));
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Skipping " + entry.name() + ": " + e.getMessage());
+            }
+        }
+        return new JarReport(sha256, classes.size(), findings(classes), null);
+    }
+
+    private static ClassFileReader read(ZipEntryReader.Source source, ZipEntryReader.CentralEntry entry) {
+        try {
+            return ClassFileReader.of(ZipEntryReader.readEntry(source, entry));
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Skipping " + entry.name() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean referencesBlockingApi(ClassFileReader reader) {
+        for (String owner : RULES_BY_OWNER.keySet()) {
+            if (reader.references(owner)) return true;
+        }
+        return false;
+    }
+
+    private static List<Finding> findings(Map<String, ClassInfo> classes) {
+        // entry points: event handlers and sync tasks, with their context
+        Map<ClassFileReader.MethodRef, String> entryPoints = new LinkedHashMap<>();
+        for (Map.Entry<String, ClassInfo> type : classes.entrySet()) {
+            boolean listener = isA(classes, type.getKey(), LISTENER);
+            for (ClassFileReader.Method method : type.getValue().methods().values()) {
+                if (listener && method.annotations().contains(EVENT_HANDLER)) {
+                    entryPoints.put(new ClassFileReader.MethodRef(type.getKey(), method.name(), method.descriptor()), "event handler");
+                }
+                ClassFileReader.Insn pending = null;
+                for (ClassFileReader.Insn insn : method.code()) {
+                    if (insn.kind() != ClassFileReader.InsnKind.INVOKE) {
+                        pending = insn;
+                        continue;
+                    }
+                    String name = insn.ref().name();
+                    if (!name.startsWith("runTask") && !name.startsWith("schedule") && !SYNC_METHODS.contains(name)) continue;
+                    String owner = insn.ref().owner();
+                    boolean runnable = !owner.equals(SCHEDULER) && isA(classes, owner, RUNNABLE);
+                    if (!owner.equals(SCHEDULER) && !runnable) continue;
+                    if (SYNC_METHODS.contains(name)) {
+                        String task = pending != null && pending.kind() == ClassFileReader.InsnKind.NEW ? pending.ref().owner()
+                                : pending == null && runnable ? owner : null;
+                        if (task != null) {
+                            boolean callable = name.equals("callSyncMethod");
+                            entryPoints.put(new ClassFileReader.MethodRef(task, callable ? "call" : "run",
+                                    callable ? "()Ljava/lang/Object;" : "()V"), "sync task");
+                        } else if (pending != null) {
+                            entryPoints.put(pending.ref(), "sync task");
+                        }
+                    }
+                    pending = null;
+                }
+            }
+        }
+
+        Set<String> seen = new HashSet<>();
+        List<Finding> findings = new ArrayList<>();
+        for (Map.Entry<ClassFileReader.MethodRef, String> entryPoint : entryPoints.entrySet()) {
+            // breadth first through the jar's own methods, remembering how each was reached
+            Map<ClassFileReader.MethodRef, ClassFileReader.MethodRef> parents = new HashMap<>();
+            Map<ClassFileReader.MethodRef, Integer> depths = new HashMap<>();
+            Deque<ClassFileReader.MethodRef> queue = new ArrayDeque<>();
+            ClassFileReader.MethodRef start = entryPoint.getKey();
+            depths.put(start, 0);
+            queue.add(start);
+            while (!queue.isEmpty()) {
+                ClassFileReader.MethodRef current = queue.poll();
+                ClassFileReader.Method method = resolve(classes, current);
+                if (method == null) continue;
+                for (ClassFileReader.Insn insn : method.code()) {
+                    if (insn.kind() != ClassFileReader.InsnKind.INVOKE) continue;
+                    ClassFileReader.MethodRef target = insn.ref();
+                    Rule rule = rule(target);
+                    if (rule != null) {
+                        if (seen.add(start + " " + target) && findings.size() < MAX_FINDINGS) {
+                            findings.add(new Finding(start.toString(), entryPoint.getValue(), target.toString(), rule.category(),
+                                    via(parents, current, start)));
+                        }
+                    } else if (depths.get(current) < MAX_DEPTH && classes.containsKey(target.owner()) && !depths.containsKey(target)) {
+                        depths.put(target, depths.get(current) + 1);
+                        parents.put(target, current);
+                        queue.add(target);
+                    }
+                }
+            }
+        }
+        findings.sort(Comparator.comparing(Finding::category).thenComparing(Finding::entryPoint));
+        return List.copyOf(findings);
+    }
+
+    private static Rule rule(ClassFileReader.MethodRef target) {
+        List<Rule> rules = RULES_BY_OWNER.get(target.owner());
+        if (rules == null) return null;
+        for (Rule rule : rules) {
+            if (rule.matches(target.name())) return rule;
+        }
+        return null;
+    }
+
+    private static List<String> via(Map<ClassFileReader.MethodRef, ClassFileReader.MethodRef> parents, ClassFileReader.MethodRef last,
+                                    ClassFileReader.MethodRef start) {
+        List<String> via = new ArrayList<>();
+        for (ClassFileReader.MethodRef ref = last; ref != null && !ref.equals(start); ref = parents.get(ref)) via.add(0, ref.toString());
+        return via;
+    }
+
+    // The method's declaration in the named class or the nearest superclass in the jar
+    private static ClassFileReader.Method resolve(Map<String, ClassInfo> classes, ClassFileReader.MethodRef ref) {
+        String key = ref.name() + ref.descriptor();
+        for (String owner = ref.owner(); owner != null; ) {
+            ClassInfo info = classes.get(owner);
+            if (info == null) return null;
+            ClassFileReader.Method method = info.methods().get(key);
+            if (method != null) return method;
+            owner = info.superName();
+        }
+        return null;
+    }
+
+    // Whether the class is or extends/implements the given type, as far as the jar shows
+    private static boolean isA(Map<String, ClassInfo> classes, String name, String type) {
+        Set<String> visited = new LinkedHashSet<>();
+        Deque<String> queue = new ArrayDeque<>(List.of(name));
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            if (current.equals(type)) return true;
+            ClassInfo info = classes.get(current);
+            if (info == null || !visited.add(current)) continue;
+            if (info.superName() != null) queue.add(info.superName());
+            queue.addAll(info.interfaces());
+        }
+        return false;
+    }
+
+    private synchronized void store(JarReport report) {
+        if (report.sha256() == null) return;
+        cache.put(report.sha256(), report);
+        dirty = true;
+    }
+
+    private synchronized void load() {
+        if (loaded) return;
+        loaded = true;
+        if (file == null || !file.isFile()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return;
+            for (int count = in.readInt(); count > 0; count--) {
+                String sha256 = in.readUTF();
+                int classCount = in.readInt();
+                List<Finding> findings = new ArrayList<>();
+                for (int n = in.readInt(); n > 0; n--) {
+                    String entryPoint = in.readUTF();
+                    String context = in.readUTF();
+                    String call = in.readUTF();
+                    Category category = Category.values()[in.readByte()];
+                    List<String> via = new ArrayList<>();
+                    for (int v = in.readByte(); v > 0; v--) via.add(in.readUTF());
+                    findings.add(new Finding(entryPoint, context, call, category, List.copyOf(via)));
+                }
+                cache.put(sha256, new JarReport(sha256, classCount, List.copyOf(findings), null));
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Ignoring unreadable scan cache " + file + ": " + e.getMessage(), e);
+            cache.clear();
+        }
+    }
+
+    /**
+     * Writes new results to the cache file, replacing it atomically. Failed scans are not persisted.
+     */
+    public synchronized void save() {
+        if (file == null || !dirty) return;
+        File temp = null;
+        try {
+            temp = File.createTempFile("blocking-calls", ".tmp", file.getAbsoluteFile().getParentFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+                List<JarReport> reports = cache.values().stream().filter(report -> report.error() == null).toList();
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(reports.size());
+                for (JarReport report : reports) {
+                    out.writeUTF(report.sha256());
+                    out.writeInt(report.classes());
+                    out.writeInt(report.findings().size());
+                    for (Finding finding : report.findings()) {
+                        out.writeUTF(finding.entryPoint());
+                        out.writeUTF(finding.context());
+                        out.writeUTF(finding.call());
+                        out.writeByte(finding.category().ordinal());
+                        out.writeByte(finding.via().size());
+                        for (String method : finding.via()) out.writeUTF(method);
+                    }
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save scan cache to " + file + ": " + e.getMessage(), e);
+            if (temp != null && !temp.delete()) temp.deleteOnExit();
+        }
+    }
+}
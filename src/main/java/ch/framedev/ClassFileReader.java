@@ -0,0 +1,351 @@
+package ch.framedev;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads the parts of a class file a call scan needs: the type hierarchy, method annotations and, per method, the
+ * invoked methods, created objects and lambda bodies in instruction order. Everything else is skipped.
+ * <p>
+ * Constant pool strings are decoded only when used, and {@link #references(String)} checks for a class name
+ * without reading any method, so classes that cannot matter are cheap to reject.
+ */
+final class ClassFileReader {
+
+    /**
+     * A method as referenced from bytecode.
+     */
+    record MethodRef(String owner, String name, String descriptor) {
+        @Override
+        public String toString() {
+            return owner.replace('/', '.') + "." + name;
+        }
+    }
+
+    enum InsnKind {
+        /** A method call. */
+        INVOKE,
+        /** A lambda or method reference; the ref is its implementation method. */
+        LAMBDA,
+        /** An object creation; the ref has the class as owner and no name. */
+        NEW
+    }
+
+    record Insn(InsnKind kind, MethodRef ref) {
+    }
+
+    record Method(String name, String descriptor, int access, List<String> annotations, List<Insn> code) {
+    }
+
+    private final byte[] data;
+    // offset of each constant pool entry's tag
+    private final int[] offsets;
+    private final String[] strings;
+    private final int end;
+
+    private ClassFileReader(byte[] data) throws IOException {
+        this.data = data;
+        if (data.length < 10 || u32(0) != 0xCAFEBABEL) throw new IOException("not a class file");
+        int count = u16(8);
+        offsets = new int[count];
+        strings = new String[count];
+        int pos = 10;
+        for (int i = 1; i < count; i++) {
+            offsets[i] = pos;
+            int tag = data[pos] & 0xff;
+            pos += switch (tag) {
+                case 1 -> 3 + u16(pos + 1);
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> 5;
+                case 5, 6 -> 9;
+                case 7, 8, 16, 19, 20 -> 3;
+                case 15 -> 4;
+                default -> throw new IOException("bad constant pool tag " + tag);
+            };
+            if (tag == 5 || tag == 6) i++;
+        }
+        end = pos;
+    }
+
+    static ClassFileReader of(byte[] data) throws IOException {
+        try {
+            return new ClassFileReader(data);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("truncated class file");
+        }
+    }
+
+    /**
+     * @param internalName A class name such as "java/sql/Statement".
+     * @return True if the constant pool names that class, i.e. the class could use it.
+     */
+    boolean references(String internalName) {
+        byte[] wanted = internalName.getBytes(StandardCharsets.ISO_8859_1);
+        for (int i = 1; i < offsets.length; i++) {
+            int pos = offsets[i];
+            if (pos == 0 || data[pos] != 1 || u16(pos + 1) != wanted.length) continue;
+            if (Arrays.equals(data, pos + 3, pos + 3 + wanted.length, wanted, 0, wanted.length)) return true;
+        }
+        return false;
+    }
+
+    String name() {
+        return className(u16(end + 2));
+    }
+
+    String superName() {
+        int index = u16(end + 4);
+        return index == 0 ? null : className(index);
+    }
+
+    List<String> interfaces() {
+        int count = u16(end + 6);
+        List<String> interfaces = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) interfaces.add(className(u16(end + 8 + 2 * i)));
+        return interfaces;
+    }
+
+    /**
+     * @return All methods with their calls; abstract and native methods have no code.
+     */
+    List<Method> methods() throws IOException {
+        try {
+            return readMethods();
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("truncated class file");
+        }
+    }
+
+    private List<Method> readMethods() throws IOException {
+        int pos = end + 8 + 2 * u16(end + 6);
+        pos = skipMembers(pos); // fields
+        int count = u16(pos);
+        pos += 2;
+        int[] codeOffsets = new int[count];
+        List<String[]> signatures = new ArrayList<>(count);
+        List<List<String>> annotations = new ArrayList<>(count);
+        int[] access = new int[count];
+        for (int m = 0; m < count; m++) {
+            access[m] = u16(pos);
+            signatures.add(new String[]{utf8(u16(pos + 2)), utf8(u16(pos + 4))});
+            List<String> methodAnnotations = new ArrayList<>(0);
+            int attributes = u16(pos + 6);
+            pos += 8;
+            for (int a = 0; a < attributes; a++) {
+                String attribute = utf8(u16(pos));
+                int length = (int) u32(pos + 2);
+                if (attribute.equals("Code")) {
+                    codeOffsets[m] = pos + 6;
+                } else if (attribute.equals("RuntimeVisibleAnnotations") || attribute.equals("RuntimeInvisibleAnnotations")) {
+                    int p = pos + 8;
+                    for (int n = u16(pos + 6); n > 0; n--) {
+                        methodAnnotations.add(utf8(u16(p)));
+                        p = skipAnnotation(p);
+                    }
+                }
+                pos += 6 + length;
+            }
+            annotations.add(methodAnnotations);
+        }
+        int[] lambdas = bootstrapLambdas(pos);
+
+        List<Method> methods = new ArrayList<>(count);
+        for (int m = 0; m < count; m++) {
+            List<Insn> code = codeOffsets[m] != 0 ? readCode(codeOffsets[m], lambdas) : List.of();
+            methods.add(new Method(signatures.get(m)[0], signatures.get(m)[1], access[m], annotations.get(m), code));
+        }
+        return methods;
+    }
+
+    private int skipMembers(int pos) {
+        int count = u16(pos);
+        pos += 2;
+        for (int i = 0; i < count; i++) {
+            int attributes = u16(pos + 6);
+            pos += 8;
+            for (int a = 0; a < attributes; a++) pos += 6 + (int) u32(pos + 2);
+        }
+        return pos;
+    }
+
+    // Implementation method handle of each LambdaMetafactory bootstrap entry, 0 for other bootstraps
+    private int[] bootstrapLambdas(int pos) {
+        int attributes = u16(pos);
+        pos += 2;
+        for (int a = 0; a < attributes; a++) {
+            int length = (int) u32(pos + 2);
+            if (utf8(u16(pos)).equals("BootstrapMethods")) {
+                int count = u16(pos + 6);
+                int[] lambdas = new int[count];
+                int p = pos + 8;
+                for (int i = 0; i < count; i++) {
+                    MethodRef bootstrap = handle(u16(p));
+                    int arguments = u16(p + 2);
+                    if (bootstrap != null && bootstrap.owner().equals("java/lang/invoke/LambdaMetafactory") && arguments >= 2
+                            && data[offsets[u16(p + 6)]] == 15) {
+                        lambdas[i] = u16(p + 6);
+                    }
+                    p += 4 + 2 * arguments;
+                }
+                return lambdas;
+            }
+            pos += 6 + length;
+        }
+        return new int[0];
+    }
+
+    private List<Insn> readCode(int codeAttribute, int[] lambdas) throws IOException {
+        int length = (int) u32(codeAttribute + 4);
+        int start = codeAttribute + 8;
+        int limit = start + length;
+        List<Insn> code = new ArrayList<>();
+        int pos = start;
+        while (pos < limit) {
+            int opcode = data[pos] & 0xff;
+            switch (opcode) {
+                case 0xb6, 0xb7, 0xb8, 0xb9 -> code.add(new Insn(InsnKind.INVOKE, member(u16(pos + 1))));
+                case 0xba -> {
+                    int bootstrap = u16(offsets[u16(pos + 1)] + 1);
+                    if (bootstrap < lambdas.length && lambdas[bootstrap] != 0) {
+                        MethodRef target = handle(lambdas[bootstrap]);
+                        if (target != null) code.add(new Insn(InsnKind.LAMBDA, target));
+                    }
+                }
+                case 0xbb -> code.add(new Insn(InsnKind.NEW, new MethodRef(className(u16(pos + 1)), null, null)));
+                default -> {
+                }
+            }
+            pos += instructionLength(opcode, pos, start);
+        }
+        return code;
+    }
+
+    private int instructionLength(int opcode, int pos, int codeStart) throws IOException {
+        switch (opcode) {
+            case 0xaa -> { // tableswitch
+                int p = pos + 1 + ((4 - (pos + 1 - codeStart) % 4) % 4);
+                int low = (int) u32(p + 4);
+                int high = (int) u32(p + 8);
+                return p - pos + 12 + 4 * (high - low + 1);
+            }
+            case 0xab -> { // lookupswitch
+                int p = pos + 1 + ((4 - (pos + 1 - codeStart) % 4) % 4);
+                return p - pos + 8 + 8 * (int) u32(p + 4);
+            }
+            case 0xc4 -> { // wide
+                return (data[pos + 1] & 0xff) == 0x84 ? 6 : 4;
+            }
+            default -> {
+                if (opcode > 0xc9) throw new IOException("bad opcode " + opcode);
+                return LENGTHS[opcode];
+            }
+        }
+    }
+
+    private static final byte[] LENGTHS = new byte[0xca];
+
+    static {
+        Arrays.fill(LENGTHS, (byte) 1);
+        LENGTHS[0x10] = 2; // bipush
+        LENGTHS[0x11] = 3; // sipush
+        LENGTHS[0x12] = 2; // ldc
+        LENGTHS[0x13] = 3;
+        LENGTHS[0x14] = 3;
+        for (int op = 0x15; op <= 0x19; op++) LENGTHS[op] = 2; // loads
+        for (int op = 0x36; op <= 0x3a; op++) LENGTHS[op] = 2; // stores
+        LENGTHS[0x84] = 3; // iinc
+        for (int op = 0x99; op <= 0xa8; op++) LENGTHS[op] = 3; // branches, jsr
+        LENGTHS[0xa9] = 2; // ret
+        for (int op = 0xb2; op <= 0xb8; op++) LENGTHS[op] = 3; // fields, invokes
+        LENGTHS[0xb9] = 5; // invokeinterface
+        LENGTHS[0xba] = 5; // invokedynamic
+        LENGTHS[0xbb] = 3; // new
+        LENGTHS[0xbc] = 2; // newarray
+        LENGTHS[0xbd] = 3; // anewarray
+        LENGTHS[0xc0] = 3; // checkcast
+        LENGTHS[0xc1] = 3; // instanceof
+        LENGTHS[0xc5] = 4; // multianewarray
+        LENGTHS[0xc6] = 3; // ifnull
+        LENGTHS[0xc7] = 3; // ifnonnull
+        LENGTHS[0xc8] = 5; // goto_w
+        LENGTHS[0xc9] = 5; // jsr_w
+    }
+
+    private int skipAnnotation(int pos) {
+        int pairs = u16(pos + 2);
+        pos += 4;
+        for (int i = 0; i < pairs; i++) pos = skipElementValue(pos + 2);
+        return pos;
+    }
+
+    private int skipElementValue(int pos) {
+        return switch ((char) data[pos]) {
+            case 'e' -> pos + 5;
+            case '@' -> skipAnnotation(pos + 1);
+            case '[' -> {
+                int p = pos + 3;
+                for (int n = u16(pos + 1); n > 0; n--) p = skipElementValue(p);
+                yield p;
+            }
+            default -> pos + 3;
+        };
+    }
+
+    // Methodref or InterfaceMethodref
+    private MethodRef member(int index) {
+        int pos = offsets[index];
+        int nameAndType = offsets[u16(pos + 3)];
+        return new MethodRef(className(u16(pos + 1)), utf8(u16(nameAndType + 1)), utf8(u16(nameAndType + 3)));
+    }
+
+    private MethodRef handle(int index) {
+        int pos = offsets[index];
+        if (data[pos] != 15) return null;
+        int kind = data[pos + 1];
+        // 5..9: invokevirtual, invokestatic, invokespecial, newinvokespecial, invokeinterface
+        return kind >= 5 && kind <= 9 ? member(u16(pos + 2)) : null;
+    }
+
+    private String className(int index) {
+        return utf8(u16(offsets[index] + 1));
+    }
+
+    private String utf8(int index) {
+        String value = strings[index];
+        if (value == null) {
+            int pos = offsets[index];
+            int length = u16(pos + 1);
+            boolean ascii = true;
+            for (int i = pos + 3; i < pos + 3 + length; i++) {
+                if (data[i] <= 0) {
+                    ascii = false;
+                    break;
+                }
+            }
+            if (ascii) {
+                value = new String(data, pos + 3, length, StandardCharsets.ISO_8859_1);
+            } else {
+                // modified UTF-8, as DataInput reads it
+                try {
+                    value = new DataInputStream(new ByteArrayInputStream(data, pos + 1, length + 2)).readUTF();
+                } catch (IOException e) {
+                    value = new String(data, pos + 3, length, StandardCharsets.UTF_8);
+                }
+            }
+            strings[index] = value;
+        }
+        return value;
+    }
+
+    private int u16(int pos) {
+        return ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+    }
+
+    private long u32(int pos) {
+        return ((long) u16(pos) << 16) | u16(pos + 2);
+    }
+}
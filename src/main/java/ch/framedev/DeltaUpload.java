@@ -0,0 +1,225 @@
+package ch.framedev;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipException;
+
+/**
+ * Uploads a new version of a jar by sending only what the remote copy does not already contain.
+ * Entries whose compressed data is unchanged (same name, CRC, sizes and method) are copied from the old remote jar;
+ * everything else (headers, changed entries, the central directory) is sent. The new jar is assembled on the server
+ * next to the old one, verified by size and SHA-256, and swapped in atomically.
+ * <p>
+ * Remote checksums come from the old jar's own central directory (the CRC-32 of each entry), read with a few
+ * ranged reads. Assembly needs perl on the server, which is part of every common Linux base system; without it,
+ * or when too little would be saved, the caller falls back to a full upload.
+ */
+public class DeltaUpload {
+
+    private static final Logger LOGGER = Logger.getLogger(DeltaUpload.class.getName());
+
+    // Reads "L <len>" (copy from the literal file) and "C <local header offset> <len>" (copy entry data from the
+    // old jar) lines from stdin and writes the new jar. Arguments: old jar, literal file, output file.
+    private static final String ASSEMBLER = String.join("",
+            "use strict;",
+            "open(my $o,'<:raw',$ARGV[0]) or die \"old: $!\";",
+            "open(my $l,'<:raw',$ARGV[1]) or die \"literal: $!\";",
+            "open(my $w,'>:raw',$ARGV[2]) or die \"out: $!\";",
+            "sub cp{my($f,$n)=@_;my $b;while($n>0){my $r=read($f,$b,$n>1048576?1048576:$n);die \"short read\" unless $r;",
+            "print $w $b or die \"write: $!\";$n-=$r;}}",
+            "while(<STDIN>){my @a=split;if($a[0] eq 'L'){cp($l,$a[1]);}else{",
+            "seek($o,$a[1],0) or die \"seek: $!\";my $h;read($o,$h,30)==30 or die \"header\";",
+            "my($s,$n,$m)=unpack('V x22 v v',$h);die \"bad header\" unless $s==0x04034b50;",
+            "seek($o,$a[1]+30+$n+$m,0) or die \"seek: $!\";cp($o,$a[2]);}}",
+            "close($w) or die \"close: $!\";");
+
+    /**
+     * Outcome of a delta upload.
+     *
+     * @param fileBytes     Size of the new jar.
+     * @param sentBytes     Bytes actually sent, including the assembly instructions.
+     * @param reusedEntries Entries copied from the old remote jar.
+     */
+    public record Result(String fileName, long fileBytes, long sentBytes, int reusedEntries, long millis) {
+        @Override
+        public String toString() {
+            return String.format("%s: sent %.1f of %.1f MB (%d entries reused) in %.1f s", fileName, sentBytes / 1_048_576.0,
+                    fileBytes / 1_048_576.0, reusedEntries, millis / 1000.0);
+        }
+    }
+
+    private sealed interface Segment permits Literal, Copy {
+    }
+
+    // Bytes [offset, offset + length) of the new jar, sent as they are
+    private record Literal(long offset, long length) implements Segment {
+    }
+
+    // Compressed data of the old remote entry whose local header starts at localOffset
+    private record Copy(long localOffset, long length) implements Segment {
+    }
+
+    private final RemoteHelper remoteHelper;
+    private double maxSentRatio = 0.7;
+    private int bufferSize = 256 * 1024;
+
+    public DeltaUpload(RemoteHelper remoteHelper) {
+        this.remoteHelper = remoteHelper;
+    }
+
+    // A delta that would still send more than this share of the file is not worth the assembly step
+    public DeltaUpload setMaxSentRatio(double maxSentRatio) {
+        this.maxSentRatio = maxSentRatio;
+        return this;
+    }
+
+    public DeltaUpload setBufferSize(int bufferSize) {
+        this.bufferSize = Math.max(8 * 1024, bufferSize);
+        return this;
+    }
+
+    /**
+     * Replaces a remote jar with a local one by delta, if the remote file exists and enough of it can be reused.
+     *
+     * @param channel      A channel of the helper's pool.
+     * @param localJar     The new version.
+     * @param remotePath   The remote jar to replace.
+     * @param mtimeSeconds Modification time to give the new remote file, or -1 to leave it.
+     * @param progress     Receives the number of bytes of each write; may be null.
+     * @param cancelled    Polled while sending.
+     * @return The result, or null if a delta is not possible or not worth it and the file should be uploaded in full.
+     * @throws Exception If the delta upload fails after it started; the old remote jar is then left untouched.
+     */
+    public Result upload(ChannelSftp channel, File localJar, String remotePath, long mtimeSeconds, LongConsumer progress,
+                         BooleanSupplier cancelled) throws Exception {
+        long start = System.nanoTime();
+        SftpATTRS attrs;
+        try {
+            attrs = channel.stat(remotePath);
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) return null;
+            throw e;
+        }
+
+        List<Segment> segments;
+        int reused;
+        try (RandomAccessFile file = new RandomAccessFile(localJar, "r")) {
+            Map<String, ZipEntryReader.CentralEntry> remoteEntries = new HashMap<>();
+            for (ZipEntryReader.CentralEntry entry : ZipEntryReader.readCentralDirectory(RemoteHelper.sftpSource(channel, remotePath, attrs.getSize(), null))) {
+                remoteEntries.put(entry.name(), entry);
+            }
+            ZipEntryReader.Source local = ZipEntryReader.positioned(file.getChannel());
+            segments = new ArrayList<>();
+            reused = 0;
+            long position = 0;
+            List<ZipEntryReader.CentralEntry> localEntries = new ArrayList<>(ZipEntryReader.readCentralDirectory(local));
+            localEntries.sort((a, b) -> Long.compare(a.localOffset(), b.localOffset()));
+            for (ZipEntryReader.CentralEntry entry : localEntries) {
+                ZipEntryReader.CentralEntry old = remoteEntries.get(entry.name());
+                if (old == null || entry.compressedSize() == 0 || old.crc() != entry.crc() || old.method() != entry.method()
+                        || old.compressedSize() != entry.compressedSize() || old.size() != entry.size()) {
+                    continue;
+                }
+                long dataOffset = ZipEntryReader.dataOffset(local, entry);
+                if (dataOffset > position) segments.add(new Literal(position, dataOffset - position));
+                segments.add(new Copy(old.localOffset(), entry.compressedSize()));
+                position = dataOffset + entry.compressedSize();
+                reused++;
+            }
+            if (localJar.length() > position) segments.add(new Literal(position, localJar.length() - position));
+        } catch (ZipException e) {
+            LOGGER.log(Level.FINE, "No delta for " + localJar.getName() + ": " + e.getMessage());
+            return null;
+        }
+
+        StringBuilder script = new StringBuilder();
+        long literalBytes = 0;
+        for (Segment segment : segments) {
+            if (segment instanceof Literal literal) {
+                script.append("L ").append(literal.length()).append('\n');
+                literalBytes += literal.length();
+            } else if (segment instanceof Copy copy) {
+                script.append("C ").append(copy.localOffset()).append(' ').append(copy.length()).append('\n');
+            }
+        }
+        byte[] instructions = script.toString().getBytes(StandardCharsets.US_ASCII);
+        long sent = literalBytes + instructions.length;
+        if (sent > localJar.length() * maxSentRatio) {
+            LOGGER.fine("No delta for " + localJar.getName() + ": would send " + sent + " of " + localJar.length() + " bytes");
+            return null;
+        }
+        if (remoteHelper.exec("command -v perl").exitStatus() != 0) {
+            LOGGER.info("No delta for " + localJar.getName() + ": perl is not available on the server");
+            return null;
+        }
+
+        String remoteDir = remotePath.substring(0, remotePath.lastIndexOf('/') + 1);
+        String literalPath = remoteDir + StagedFiles.stagingName(localJar.getName() + ".delta");
+        String stagingPath = remoteDir + StagedFiles.stagingName(localJar.getName());
+        try {
+            sendLiterals(channel, localJar, segments, literalPath, progress, cancelled);
+            RemoteHelper.ExecResult result = remoteHelper.exec("perl -e " + RemoteHelper.shellQuote(ASSEMBLER) + " "
+                    + RemoteHelper.shellQuote(remotePath) + " " + RemoteHelper.shellQuote(literalPath) + " "
+                    + RemoteHelper.shellQuote(stagingPath), instructions);
+            if (result.exitStatus() != 0) {
+                throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "Assembling " + localJar.getName() + " failed: " + result.stderr().trim());
+            }
+            if (mtimeSeconds >= 0) channel.setMtime(stagingPath, (int) mtimeSeconds);
+            // always verified by hash: a wrong offset would otherwise go unnoticed
+            remoteHelper.promote(channel, stagingPath, remotePath, localJar.length(), PluginHelper.sha256(localJar));
+        } catch (Exception e) {
+            removeQuietly(channel, stagingPath);
+            throw e;
+        } finally {
+            removeQuietly(channel, literalPath);
+        }
+        Result result = new Result(localJar.getName(), localJar.length(), sent, reused, (System.nanoTime() - start) / 1_000_000);
+        LOGGER.info("Delta upload " + result);
+        return result;
+    }
+
+    private void sendLiterals(ChannelSftp channel, File localJar, List<Segment> segments, String literalPath,
+                              LongConsumer progress, BooleanSupplier cancelled) throws Exception {
+        byte[] buf = new byte[bufferSize];
+        try (RandomAccessFile file = new RandomAccessFile(localJar, "r");
+             OutputStream out = channel.put(literalPath, ChannelSftp.OVERWRITE)) {
+            for (Segment segment : segments) {
+                if (!(segment instanceof Literal literal)) continue;
+                file.seek(literal.offset());
+                long remaining = literal.length();
+                while (remaining > 0) {
+                    if (cancelled.getAsBoolean()) throw new InterruptedIOException("Upload cancelled");
+                    int len = file.read(buf, 0, (int) Math.min(buf.length, remaining));
+                    if (len < 0) throw new IOException(localJar + " changed during upload");
+                    out.write(buf, 0, len);
+                    remaining -= len;
+                    if (progress != null) progress.accept(len);
+                }
+            }
+        }
+    }
+
+    private static void removeQuietly(ChannelSftp channel, String path) {
+        try {
+            channel.rm(path);
+        } catch (SftpException e) {
+            // already gone, or never written
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package ch.framedev;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Dependency graph of the enabled plugins of a folder, built from depend, softdepend and loadbefore.
+ * It finds what the server would refuse to load (missing hard dependencies, hard cycles, duplicate names), the load
+ * order, the longest chain of plugins that must load one after another, and what disabling a plugin would break.
+ * <p>
+ * Jars are added, replaced and removed one at a time as the index changes; the analysis is recomputed on the next
+ * request after a change, which is linear in the number of plugins and edges.
+ */
+public class DependencyGraph {
+
+    /**
+     * Something that keeps a plugin from loading or makes its load order arbitrary.
+     */
+    public enum ProblemKind {
+        /** The jar has no readable descriptor or no name. */
+        NO_DESCRIPTOR,
+        /** Several enabled jars declare the same plugin name; the server loads only one of them. */
+        DUPLICATE_NAME,
+        /** A hard dependency is not installed or not enabled. */
+        MISSING_DEPENDENCY,
+        /** The plugin is part of a cycle of hard dependencies. */
+        CYCLE,
+        /** A hard dependency exists but cannot load itself. */
+        BROKEN_DEPENDENCY,
+        /** Soft dependencies or loadbefore entries form a cycle; the server breaks it at an arbitrary point. */
+        SOFT_CYCLE
+    }
+
+    public record Problem(ProblemKind kind, String plugin, String detail) {
+        @Override
+        public String toString() {
+            return plugin + ": " + switch (kind) {
+                case NO_DESCRIPTOR -> "no readable plugin.yml";
+                case DUPLICATE_NAME -> "plugin name also used by " + detail;
+                case MISSING_DEPENDENCY -> "missing dependency " + detail;
+                case CYCLE -> "circular dependency " + detail;
+                case BROKEN_DEPENDENCY -> "dependency " + detail + " cannot load";
+                case SOFT_CYCLE -> "soft dependency cycle " + detail;
+            };
+        }
+    }
+
+    /**
+     * @param loadOrder    Loadable plugins in the order the server would load them.
+     * @param criticalPath The longest chain of plugins that must load one after another, by weight.
+     * @param criticalCost Sum of the weights on the critical path.
+     * @param problems     All problems found.
+     * @param unloadable   Plugins the server would refuse to load.
+     */
+    public record Analysis(List<String> loadOrder, List<String> criticalPath, long criticalCost, List<Problem> problems,
+                           Set<String> unloadable) {
+    }
+
+    /**
+     * What disabling a plugin would do.
+     *
+     * @param broken    Plugins that hard-depend on it, directly or through others, and would no longer load.
+     * @param degraded  Loadable plugins that soft-depend on it and would load without it.
+     * @param savedCost Weight of the plugin and of everything it breaks.
+     */
+    public record Impact(String plugin, List<String> broken, List<String> degraded, long savedCost) {
+    }
+
+    // Enabled jars by file name; a null descriptor means the jar has none
+    private final Map<String, PluginDescriptor> jars = new TreeMap<>();
+    private final Map<String, Long> weights = new HashMap<>();
+    private Analysis analysis;
+
+    /**
+     * Adds or replaces a jar. Disabled jars (not ending in .jar) are removed instead, as the server ignores them.
+     */
+    public synchronized void put(String fileName, PluginDescriptor descriptor) {
+        if (!fileName.endsWith(".jar")) {
+            remove(fileName);
+            return;
+        }
+        jars.put(fileName, descriptor);
+        analysis = null;
+    }
+
+    public synchronized void remove(String fileName) {
+        if (jars.containsKey(fileName)) {
+            jars.remove(fileName);
+            analysis = null;
+        }
+    }
+
+    /**
+     * Replaces the graph with the enabled jars of an index.
+     */
+    public synchronized void sync(Collection<PluginIndex.Entry> entries) {
+        jars.clear();
+        for (PluginIndex.Entry entry : entries) {
+            if (entry.fileName().endsWith(".jar")) jars.put(entry.fileName(), entry.descriptor());
+        }
+        analysis = null;
+    }
+
+    public synchronized void clear() {
+        jars.clear();
+        analysis = null;
+    }
+
+    /**
+     * Sets the weight of each plugin, e.g. its measured enable time in milliseconds. Plugins without one weigh 1,
+     * so that without measurements the critical path is the longest chain.
+     *
+     * @param weights Weights by plugin name.
+     */
+    public synchronized void setWeights(Map<String, Long> weights) {
+        this.weights.clear();
+        this.weights.putAll(weights);
+        analysis = null;
+    }
+
+    public synchronized int size() {
+        return jars.size();
+    }
+
+    /**
+     * @return The analysis of the current graph; cached until the next change.
+     */
+    public synchronized Analysis analyze() {
+        if (analysis == null) analysis = compute();
+        return analysis;
+    }
+
+    /**
+     * @param pluginName A plugin name as declared in its descriptor.
+     * @return What disabling that plugin would do, or null if no enabled jar declares it.
+     */
+    public synchronized Impact impactOfDisabling(String pluginName) {
+        Map<String, PluginDescriptor> plugins = plugins(new ArrayList<>());
+        if (!plugins.containsKey(pluginName)) return null;
+        Set<String> unloadable = analyze().unloadable();
+
+        Set<String> broken = new LinkedHashSet<>();
+        Deque<String> queue = new ArrayDeque<>(List.of(pluginName));
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            for (Map.Entry<String, PluginDescriptor> plugin : plugins.entrySet()) {
+                if (plugin.getValue().getDepend().contains(current) && !unloadable.contains(plugin.getKey())
+                        && !plugin.getKey().equals(pluginName) && broken.add(plugin.getKey())) {
+                    queue.add(plugin.getKey());
+                }
+            }
+        }
+        List<String> degraded = new ArrayList<>();
+        for (Map.Entry<String, PluginDescriptor> plugin : plugins.entrySet()) {
+            if (plugin.getValue().getSoftDepend().contains(pluginName) && !broken.contains(plugin.getKey())
+                    && !unloadable.contains(plugin.getKey())) {
+                degraded.add(plugin.getKey());
+            }
+        }
+        long saved = unloadable.contains(pluginName) ? 0 : weight(pluginName);
+        for (String name : broken) saved += weight(name);
+        return new Impact(pluginName, List.copyOf(broken), List.copyOf(degraded), saved);
+    }
+
+    private long weight(String pluginName) {
+        return weights.getOrDefault(pluginName, 1L);
+    }
+
+    // Plugins by name, the first jar in file name order winning; problems of unnamed and duplicate jars are collected
+    private Map<String, PluginDescriptor> plugins(List<Problem> problems) {
+        Map<String, PluginDescriptor> plugins = new TreeMap<>();
+        Map<String, String> files = new HashMap<>();
+        for (Map.Entry<String, PluginDescriptor> jar : jars.entrySet()) {
+            PluginDescriptor descriptor = jar.getValue();
+            if (descriptor == null || descriptor.getName() == null) {
+                problems.add(new Problem(ProblemKind.NO_DESCRIPTOR, jar.getKey(), null));
+            } else if (plugins.containsKey(descriptor.getName())) {
+                problems.add(new Problem(ProblemKind.DUPLICATE_NAME, descriptor.getName(), files.get(descriptor.getName()) + " and " + jar.getKey()));
+            } else {
+                plugins.put(descriptor.getName(), descriptor);
+                files.put(descriptor.getName(), jar.getKey());
+            }
+        }
+        return plugins;
+    }
+
+    private Analysis compute() {
+        List<Problem> problems = new ArrayList<>();
+        Map<String, PluginDescriptor> plugins = plugins(problems);
+
+        Set<String> unloadable = new HashSet<>();
+        for (Map.Entry<String, PluginDescriptor> plugin : plugins.entrySet()) {
+            for (String dependency : plugin.getValue().getDepend()) {
+                if (!plugins.containsKey(dependency)) {
+                    problems.add(new Problem(ProblemKind.MISSING_DEPENDENCY, plugin.getKey(), dependency));
+                    unloadable.add(plugin.getKey());
+                }
+            }
+        }
+        Map<String, List<String>> hardEdges = new TreeMap<>();
+        for (Map.Entry<String, PluginDescriptor> plugin : plugins.entrySet()) {
+            List<String> present = new ArrayList<>();
+            for (String dependency : plugin.getValue().getDepend()) {
+                if (plugins.containsKey(dependency)) present.add(dependency);
+            }
+            hardEdges.put(plugin.getKey(), present);
+        }
+        for (List<String> cycle : cycles(hardEdges)) {
+            for (String name : cycle.subList(0, cycle.size() - 1)) {
+                problems.add(new Problem(ProblemKind.CYCLE, name, String.join(" -> ", cycle)));
+                unloadable.add(name);
+            }
+        }
+        // whatever depends on an unloadable plugin cannot load either
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Map.Entry<String, List<String>> plugin : hardEdges.entrySet()) {
+                if (unloadable.contains(plugin.getKey())) continue;
+                for (String dependency : plugin.getValue()) {
+                    if (unloadable.contains(dependency)) {
+                        problems.add(new Problem(ProblemKind.BROKEN_DEPENDENCY, plugin.getKey(), dependency));
+                        unloadable.add(plugin.getKey());
+                        changed = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        // "must load before" edges between loadable plugins: hard and soft dependencies, and loadbefore reversed
+        Map<String, Set<String>> before = new TreeMap<>();
+        for (String name : plugins.keySet()) {
+            if (!unloadable.contains(name)) before.put(name, new LinkedHashSet<>());
+        }
+        for (Map.Entry<String, Set<String>> plugin : before.entrySet()) {
+            PluginDescriptor descriptor = plugins.get(plugin.getKey());
+            for (String dependency : descriptor.getDepend()) plugin.getValue().add(dependency);
+            for (String dependency : descriptor.getSoftDepend()) {
+                if (before.containsKey(dependency)) plugin.getValue().add(dependency);
+            }
+            for (String later : descriptor.getLoadBefore()) {
+                if (before.containsKey(later)) before.get(later).add(plugin.getKey());
+            }
+        }
+        for (Map.Entry<String, Set<String>> plugin : before.entrySet()) plugin.getValue().remove(plugin.getKey());
+        Map<String, List<String>> softEdges = new TreeMap<>();
+        before.forEach((name, dependencies) -> softEdges.put(name, new ArrayList<>(dependencies)));
+        for (List<String> cycle : cycles(softEdges)) {
+            problems.add(new Problem(ProblemKind.SOFT_CYCLE, cycle.get(0), String.join(" -> ", cycle)));
+        }
+
+        List<String> loadOrder = loadOrder(before, plugins);
+        Map<String, Long> best = new HashMap<>();
+        Map<String, String> previous = new HashMap<>();
+        Map<String, Integer> position = new HashMap<>();
+        for (int i = 0; i < loadOrder.size(); i++) position.put(loadOrder.get(i), i);
+        String last = null;
+        for (String name : loadOrder) {
+            long longest = 0;
+            for (String dependency : before.get(name)) {
+                // edges broken to resolve a soft cycle point forward and do not count
+                if (position.get(dependency) < position.get(name) && best.get(dependency) > longest) {
+                    longest = best.get(dependency);
+                    previous.put(name, dependency);
+                }
+            }
+            best.put(name, longest + weight(name));
+            if (last == null || best.get(name) > best.get(last)) last = name;
+        }
+        List<String> criticalPath = new ArrayList<>();
+        for (String name = last; name != null; name = previous.get(name)) criticalPath.add(0, name);
+
+        return new Analysis(List.copyOf(loadOrder), List.copyOf(criticalPath), last != null ? best.get(last) : 0,
+                List.copyOf(problems), Set.copyOf(unloadable));
+    }
+
+    // Topological order with names as tie-breaker; a soft cycle is broken at its alphabetically first plugin,
+    // whose remaining soft dependencies are then ignored, as the server does
+    private static List<String> loadOrder(Map<String, Set<String>> before, Map<String, PluginDescriptor> plugins) {
+        Map<String, Integer> pending = new HashMap<>();
+        Map<String, List<String>> dependents = new HashMap<>();
+        for (Map.Entry<String, Set<String>> plugin : before.entrySet()) {
+            pending.put(plugin.getKey(), plugin.getValue().size());
+            for (String dependency : plugin.getValue()) dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(plugin.getKey());
+        }
+        PriorityQueue<String> ready = new PriorityQueue<>();
+        pending.forEach((name, count) -> {
+            if (count == 0) ready.add(name);
+        });
+        List<String> order = new ArrayList<>(before.size());
+        Set<String> loaded = new HashSet<>();
+        while (order.size() < before.size()) {
+            if (ready.isEmpty()) {
+                String forced = null;
+                for (String name : before.keySet()) {
+                    if (loaded.contains(name)) continue;
+                    boolean hardReady = plugins.get(name).getDepend().stream().allMatch(loaded::contains);
+                    if (hardReady) {
+                        forced = name;
+                        break;
+                    }
+                    if (forced == null) forced = name;
+                }
+                ready.add(forced);
+                pending.put(forced, 0);
+            }
+            String name = ready.poll();
+            if (!loaded.add(name)) continue;
+            order.add(name);
+            for (String dependent : dependents.getOrDefault(name, List.of())) {
+                if (loaded.contains(dependent)) continue;
+                int count = pending.merge(dependent, -1, Integer::sum);
+                if (count == 0) ready.add(dependent);
+            }
+        }
+        return order;
+    }
+
+    // Strongly connected components with more than one member or a self edge, each as a closed path of names
+    private static List<List<String>> cycles(Map<String, List<String>> edges) {
+        Map<String, Integer> index = new HashMap<>();
+        Map<String, Integer> low = new HashMap<>();
+        Deque<String> stack = new ArrayDeque<>();
+        Set<String> onStack = new HashSet<>();
+        List<List<String>> cycles = new ArrayList<>();
+        int[] counter = {0};
+        for (String start : edges.keySet()) {
+            if (index.containsKey(start)) continue;
+            // iterative Tarjan: frames of (node, next edge)
+            Deque<Map.Entry<String, Integer>> frames = new ArrayDeque<>();
+            frames.push(new AbstractMap.SimpleEntry<>(start, 0));
+            index.put(start, counter[0]);
+            low.put(start, counter[0]++);
+            stack.push(start);
+            onStack.add(start);
+            while (!frames.isEmpty()) {
+                Map.Entry<String, Integer> frame = frames.peek();
+                String node = frame.getKey();
+                List<String> next = edges.getOrDefault(node, List.of());
+                if (frame.getValue() < next.size()) {
+                    String target = next.get(frame.getValue());
+                    frame.setValue(frame.getValue() + 1);
+                    if (!edges.containsKey(target)) continue;
+                    if (!index.containsKey(target)) {
+                        index.put(target, counter[0]);
+                        low.put(target, counter[0]++);
+                        stack.push(target);
+                        onStack.add(target);
+                        frames.push(new AbstractMap.SimpleEntry<>(target, 0));
+                    } else if (onStack.contains(target)) {
+                        low.put(node, Math.min(low.get(node), index.get(target)));
+                    }
+                    continue;
+                }
+                frames.pop();
+                if (!frames.isEmpty()) {
+                    String parent = frames.peek().getKey();
+                    low.put(parent, Math.min(low.get(parent), low.get(node)));
+                }
+                if (low.get(node).equals(index.get(node))) {
+                    List<String> component = new ArrayList<>();
+                    String member;
+                    do {
+                        member = stack.pop();
+                        onStack.remove(member);
+                        component.add(member);
+                    } while (!member.equals(node));
+                    if (component.size() > 1 || edges.get(node).contains(node)) cycles.add(path(component, edges));
+                }
+            }
+        }
+        return cycles;
+    }
+
+    // A readable closed walk through a component, e.g. [A, B, C, A]
+    private static List<String> path(List<String> component, Map<String, List<String>> edges) {
+        Set<String> members = new HashSet<>(component);
+        String start = component.stream().sorted().findFirst().orElseThrow();
+        List<String> path = new ArrayList<>(List.of(start));
+        Set<String> seen = new HashSet<>(path);
+        String current = start;
+        while (true) {
+            String next = null;
+            for (String target : edges.get(current)) {
+                if (target.equals(start) && path.size() > 1 || target.equals(start) && component.size() == 1) {
+                    path.add(start);
+                    return path;
+                }
+                if (members.contains(target) && !seen.contains(target) && next == null) next = target;
+            }
+            if (next == null) {
+                // no simple way back found greedily; list the members instead
+                List<String> sorted = new ArrayList<>(members);
+                sorted.sort(null);
+                sorted.add(sorted.get(0));
+                return sorted;
+            }
+            path.add(next);
+            seen.add(next);
+            current = next;
+        }
+    }
+
+    /**
+     * @return A plain-text report: problems, load order and critical path.
+     */
+    public synchronized String toText() {
+        Analysis result = analyze();
+        StringBuilder text = new StringBuilder();
+        text.append(jars.size()).append(" enabled jars, ").append(result.loadOrder().size()).append(" loadable, ")
+                .append(result.unloadable().size()).append(" would fail to load\n");
+        if (!result.problems().isEmpty()) {
+            text.append("\nProblems:\n");
+            for (Problem problem : result.problems()) text.append("   - ").append(problem).append("\n");
+        }
+        text.append("\nLoad order:\n");
+        for (int i = 0; i < result.loadOrder().size(); i++) {
+            text.append(String.format("  %3d. %s%n", i + 1, result.loadOrder().get(i)));
+        }
+        text.append("\nCritical path (").append(result.criticalCost()).append(weights.isEmpty() ? " plugins" : " ms").append("):\n   ")
+                .append(String.join(" -> ", result.criticalPath())).append("\n");
+        Map<String, Impact> impacts = new LinkedHashMap<>();
+        for (String name : result.loadOrder()) {
+            Impact impact = impactOfDisabling(name);
+            if (!impact.broken().isEmpty()) impacts.put(name, impact);
+        }
+        if (!impacts.isEmpty()) {
+            text.append("\nDisabling would also stop:\n");
+            impacts.forEach((name, impact) -> text.append("   - ").append(name).append(": ").append(String.join(", ", impact.broken())).append("\n"));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,371 @@
+package ch.framedev;
+
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A set of saved remote servers that are managed together. Operations run on all selected servers in parallel,
+ * each server with its own {@link RemoteHelper} and channel pool; a failing server does not stop the others.
+ */
+public class Fleet implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(Fleet.class.getName());
+
+    /**
+     * A saved server. The key file is null for password authentication; passwords are never stored.
+     */
+    public record Target(String name, String host, int port, String username, String pluginPath, String keyFile) {
+
+        static Target of(Map<?, ?> map) {
+            String host = String.valueOf(map.get("host"));
+            Object port = map.get("port");
+            return new Target(map.get("name") != null ? String.valueOf(map.get("name")) : host, host,
+                    port instanceof Number number ? number.intValue() : 22, String.valueOf(map.get("username")),
+                    map.get("plugin-path") != null ? String.valueOf(map.get("plugin-path")) : "/plugins",
+                    map.get("key-file") != null ? String.valueOf(map.get("key-file")) : null);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", name);
+            map.put("host", host);
+            map.put("port", port);
+            map.put("username", username);
+            map.put("plugin-path", pluginPath);
+            if (keyFile != null) map.put("key-file", keyFile);
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The result of an operation on one server. The error is null on success.
+     */
+    public record Outcome<T>(Target target, T value, Exception error, long millis) {
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Work done on one connected server.
+     */
+    @FunctionalInterface
+    public interface Operation<T> {
+        T run(RemoteHelper helper, Target target) throws Exception;
+    }
+
+    /**
+     * Supplies the password for a target without key file; null aborts connecting to it.
+     */
+    @FunctionalInterface
+    public interface PasswordProvider {
+        String password(Target target);
+    }
+
+    /**
+     * One cell of the plugin matrix: the file of a plugin on one server.
+     */
+    public record Cell(String fileName, String version, boolean enabled) {
+        @Override
+        public String toString() {
+            String text = version != null ? version : "?";
+            return enabled ? text : text + " (disabled)";
+        }
+    }
+
+    /**
+     * Plugin by server overview. Rows are plugin names, sorted case-insensitively.
+     */
+    public record Matrix(List<Target> servers, Map<String, Map<Target, Cell>> rows, Map<Target, Exception> errors) {
+
+        /**
+         * @return True if the plugin is missing on some listed server or not everywhere in the same version.
+         */
+        public boolean isInconsistent(String plugin) {
+            Map<Target, Cell> cells = rows.getOrDefault(plugin, Map.of());
+            if (cells.size() < servers.size() - errors.size()) return true;
+            return cells.values().stream().map(Cell::version).distinct().count() > 1;
+        }
+    }
+
+    private final File file;
+    private final List<Target> targets = new CopyOnWriteArrayList<>();
+    private final Map<Target, RemoteHelper> helpers = new ConcurrentHashMap<>();
+    private final Map<Target, Object> connectLocks = new ConcurrentHashMap<>();
+    // Descriptor names by "server/file", so that differently named jars of one plugin share a matrix row
+    private final Map<String, String> pluginNames = new ConcurrentHashMap<>();
+    private volatile PasswordProvider passwordProvider = target -> null;
+    private volatile int parallelism = 8;
+    private volatile int channelsPerServer = 2;
+
+    public Fleet(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return The fleet stored in fleet.yml next to config.yml.
+     */
+    public static Fleet getDefault() {
+        Fleet fleet = new Fleet(new File(Main.utils.getFilePath(Main.class), "fleet.yml"));
+        fleet.load();
+        return fleet;
+    }
+
+    public void setPasswordProvider(PasswordProvider passwordProvider) {
+        this.passwordProvider = passwordProvider;
+    }
+
+    // Servers worked on at the same time
+    public void setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    // SFTP channels per server; takes effect on the next connect
+    public void setChannelsPerServer(int channelsPerServer) {
+        this.channelsPerServer = Math.max(1, channelsPerServer);
+    }
+
+    public List<Target> getTargets() {
+        return Collections.unmodifiableList(targets);
+    }
+
+    public void addTarget(Target target) {
+        targets.add(target);
+        save();
+    }
+
+    public void removeTarget(Target target) {
+        targets.remove(target);
+        RemoteHelper helper = helpers.remove(target);
+        if (helper != null) helper.disconnect();
+        save();
+    }
+
+    public boolean isConnected(Target target) {
+        RemoteHelper helper = helpers.get(target);
+        return helper != null && helper.isConnected();
+    }
+
+    /**
+     * Runs an operation on the given servers in parallel, connecting to them first where needed.
+     *
+     * @param servers   The servers to work on.
+     * @param operation The work to do per server.
+     * @param cancelled Polled before each server is started.
+     * @param onEach    Optional callback for each finished server, called from worker threads.
+     * @return One outcome per server, in the order of the servers.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public <T> List<Outcome<T>> runAll(List<Target> servers, Operation<T> operation, BooleanSupplier cancelled,
+                                       Consumer<Outcome<T>> onEach) throws InterruptedException {
+        Semaphore permits = new Semaphore(parallelism);
+        List<Future<Outcome<T>>> futures = new ArrayList<>(servers.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Target target : servers) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    long start = System.nanoTime();
+                    Outcome<T> outcome;
+                    try {
+                        if (cancelled.getAsBoolean()) throw new InterruptedException("Cancelled");
+                        outcome = new Outcome<>(target, operation.run(connect(target), target), null, (System.nanoTime() - start) / 1_000_000);
+                    } catch (Exception e) {
+                        LOGGER.log(Level.WARNING, target.name() + ": " + e.getMessage());
+                        outcome = new Outcome<>(target, null, e, (System.nanoTime() - start) / 1_000_000);
+                    } finally {
+                        permits.release();
+                    }
+                    if (onEach != null) onEach.accept(outcome);
+                    return outcome;
+                }));
+            }
+            List<Outcome<T>> outcomes = new ArrayList<>(servers.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    outcomes.add(futures.get(i).get());
+                } catch (InterruptedException e) {
+                    executor.shutdownNow();
+                    throw e;
+                } catch (Exception e) {
+                    outcomes.add(new Outcome<>(servers.get(i), null, e, 0));
+                }
+            }
+            return outcomes;
+        }
+    }
+
+    /**
+     * Lists all plugins of the given servers with their versions, read from the jars' descriptors.
+     *
+     * @param servers        The servers to list.
+     * @param disabledSuffix The suffix of disabled plugin files.
+     * @param forceRefresh   Whether to bypass cached folder listings.
+     * @param cancelled      Polled before each server is started.
+     * @return The matrix.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public Matrix matrix(List<Target> servers, String disabledSuffix, boolean forceRefresh, BooleanSupplier cancelled)
+            throws InterruptedException {
+        List<Outcome<List<Cell>>> outcomes = runAll(servers, (helper, target) -> cells(helper, target, disabledSuffix, forceRefresh), cancelled, null);
+        Map<String, Map<Target, Cell>> rows = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Map<Target, Exception> errors = new LinkedHashMap<>();
+        for (Outcome<List<Cell>> outcome : outcomes) {
+            if (!outcome.isSuccess()) {
+                errors.put(outcome.target(), outcome.error());
+                continue;
+            }
+            for (Cell cell : outcome.value()) {
+                String plugin = pluginName(cell.fileName(), disabledSuffix, outcome.target());
+                rows.computeIfAbsent(plugin, k -> new LinkedHashMap<>()).put(outcome.target(), cell);
+            }
+        }
+        return new Matrix(List.copyOf(servers), rows, errors);
+    }
+
+    private String pluginName(String fileName, String disabledSuffix, Target target) {
+        String name = pluginNames.get(target.name() + "/" + fileName);
+        if (name != null) return name;
+        String base = fileName.endsWith(disabledSuffix) ? fileName.substring(0, fileName.length() - disabledSuffix.length()) : fileName;
+        return base.endsWith(".jar") ? base.substring(0, base.length() - 4) : base;
+    }
+
+    private List<Cell> cells(RemoteHelper helper, Target target, String disabledSuffix, boolean forceRefresh) throws Exception {
+        PluginIndex index;
+        try {
+            index = helper.scanFolder(target.pluginPath(), disabledSuffix, false, forceRefresh);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "No remote scan on " + target.name() + ", reading descriptors one by one: " + e.getMessage());
+            return cellsPerFile(helper, target, disabledSuffix, forceRefresh);
+        }
+        List<Cell> cells = new ArrayList<>(index.size());
+        for (PluginIndex.Entry entry : index.entries()) {
+            if (entry.getName() != null) pluginNames.put(target.name() + "/" + entry.fileName(), entry.getName());
+            cells.add(new Cell(entry.fileName(), entry.getVersion(), entry.fileName().endsWith(".jar")));
+        }
+        return cells;
+    }
+
+    // Fallback for servers without the tools of the remote scan: listing plus ranged reads of each descriptor
+    private List<Cell> cellsPerFile(RemoteHelper helper, Target target, String disabledSuffix, boolean forceRefresh) throws Exception {
+        PluginListing listing = helper.getListing(target.pluginPath(), forceRefresh);
+        List<Future<Cell>> futures = new ArrayList<>();
+        // the helper's channel pool bounds how many descriptors are read at once
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (PluginListing.FileInfo info : listing.getFiles()) {
+                String name = info.name();
+                boolean enabled = name.endsWith(".jar");
+                if (!enabled && !name.endsWith(disabledSuffix)) continue;
+                futures.add(executor.submit(() -> {
+                    PluginDescriptor descriptor = null;
+                    try {
+                        descriptor = helper.readDescriptor(RemoteHelper.resolve(target.pluginPath(), name));
+                    } catch (Exception e) {
+                        LOGGER.log(Level.FINE, "No descriptor for " + name + " on " + target.name() + ": " + e.getMessage());
+                    }
+                    if (descriptor != null && descriptor.getName() != null) {
+                        pluginNames.put(target.name() + "/" + name, descriptor.getName());
+                    }
+                    return new Cell(name, descriptor != null ? descriptor.getVersion() : null, enabled);
+                }));
+            }
+            List<Cell> cells = new ArrayList<>(futures.size());
+            for (Future<Cell> future : futures) cells.add(future.get());
+            return cells;
+        }
+    }
+
+    // Connects to a server unless already connected; also used for servers that are not saved in the fleet
+    RemoteHelper connect(Target target) throws Exception {
+        synchronized (connectLocks.computeIfAbsent(target, t -> new Object())) {
+            RemoteHelper helper = helpers.get(target);
+            if (helper != null && helper.isConnected()) return helper;
+            return openHelper(target);
+        }
+    }
+
+    private RemoteHelper openHelper(Target target) throws Exception {
+        RemoteHelper helper = new RemoteHelper();
+        helper.setMaxChannels(channelsPerServer);
+        if (target.keyFile() != null) {
+            helper.connectWithKey(target.host(), target.port(), target.username(), target.keyFile(), null, 10_000);
+        } else {
+            String password = passwordProvider.password(target);
+            if (password == null) throw new IllegalStateException("No password for " + target.name());
+            helper.connect(target.host(), target.port(), target.username(), password, 10_000);
+        }
+        RemoteHelper previous = helpers.put(target, helper);
+        if (previous != null) previous.disconnect();
+        return helper;
+    }
+
+    /**
+     * Disconnects from all servers.
+     */
+    @Override
+    public void close() {
+        for (RemoteHelper helper : helpers.values()) helper.disconnect();
+        helpers.clear();
+    }
+
+    private void load() {
+        if (!file.isFile()) return;
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            Object root = new Yaml().load(reader);
+            if (root instanceof Map<?, ?> map && map.get("targets") instanceof List<?> list) {
+                for (Object item : list) {
+                    if (item instanceof Map<?, ?> target && target.get("host") != null) targets.add(Target.of(target));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not read fleet file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void save() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Target target : targets) list.add(target.toMap());
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        File temp = null;
+        try {
+            temp = File.createTempFile("fleet", ".tmp", file.getAbsoluteFile().getParentFile());
+            try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+                new Yaml(options).dump(Map.of("targets", list), writer);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save fleet file " + file + ": " + e.getMessage(), e);
+            if (temp != null && !temp.delete()) temp.deleteOnExit();
+        }
+    }
+}
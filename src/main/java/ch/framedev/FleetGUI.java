@@ -0,0 +1,354 @@
+package ch.framedev;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import javax.swing.border.TitledBorder;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Window for managing a fleet of remote servers: a list of saved servers and a plugin by server version matrix.
+ * Install, enable, disable and uninstall run on all selected servers in parallel.
+ */
+public class FleetGUI extends JFrame {
+
+    private static final Color INCONSISTENT_COLOR = new Color(255, 243, 205);
+
+    private final Fleet fleet = Fleet.getDefault();
+    private final TaskExecutor taskExecutor = new TaskExecutor();
+    private final String disabledSuffix = Main.config.getString("suffix-for-disabled-plugins", ".disabled");
+    // Passwords are kept for this window only, so each server is asked for at most once
+    private final Map<String, String> passwords = new ConcurrentHashMap<>();
+
+    private final DefaultListModel<Fleet.Target> serverModel = new DefaultListModel<>();
+    private final JList<Fleet.Target> serverList = new JList<>(serverModel);
+    private final MatrixModel matrixModel = new MatrixModel();
+    private final JTable matrixTable = new JTable(matrixModel);
+    private final JLabel statusLabel = new JLabel("Ready");
+    private final JProgressBar progressBar = new JProgressBar(0, 100);
+
+    public FleetGUI() {
+        setTitle("Spigot Plugin Manager - Fleet");
+        setSize(1000, 600);
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        setLocationRelativeTo(null);
+
+        fleet.setParallelism(Main.config.getInt("fleet-parallelism", 8));
+        fleet.setChannelsPerServer(Main.config.getInt("fleet-channels-per-server", 2));
+        fleet.setPasswordProvider(this::askPassword);
+        fleet.getTargets().forEach(serverModel::addElement);
+
+        JPanel root = new JPanel(new BorderLayout(8, 8));
+        root.setBorder(new EmptyBorder(10, 10, 10, 10));
+
+        serverList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        JScrollPane serverScroll = new JScrollPane(serverList);
+        serverScroll.setBorder(new TitledBorder("Servers (none selected = all)"));
+        serverScroll.setPreferredSize(new Dimension(220, 0));
+
+        matrixTable.setAutoCreateRowSorter(true);
+        matrixTable.setFillsViewportHeight(true);
+        matrixTable.setDefaultRenderer(Object.class, new DefaultTableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
+                Component c = super.getTableCellRendererComponent(table, value == null ? "-" : value, isSelected, hasFocus, row, column);
+                if (!isSelected) {
+                    String plugin = matrixModel.getPlugin(table.convertRowIndexToModel(row));
+                    c.setBackground(matrixModel.isInconsistent(plugin) ? INCONSISTENT_COLOR : table.getBackground());
+                }
+                return c;
+            }
+        });
+        JScrollPane matrixScroll = new JScrollPane(matrixTable);
+        matrixScroll.setBorder(new TitledBorder("Plugins by server (highlighted: missing or different versions)"));
+
+        JPanel buttonBar = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 0));
+        JButton addButton = new JButton("Add Server...");
+        JButton removeButton = new JButton("Remove Server");
+        JButton refreshButton = new JButton("Refresh");
+        JButton installButton = new JButton("Install...");
+        JButton enableButton = new JButton("Enable");
+        JButton disableButton = new JButton("Disable");
+        JButton uninstallButton = new JButton("Uninstall");
+        buttonBar.add(addButton);
+        buttonBar.add(removeButton);
+        buttonBar.add(refreshButton);
+        buttonBar.add(new JSeparator(SwingConstants.VERTICAL));
+        buttonBar.add(installButton);
+        buttonBar.add(enableButton);
+        buttonBar.add(disableButton);
+        buttonBar.add(uninstallButton);
+
+        JPanel statusBar = new JPanel(new BorderLayout(8, 0));
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(e -> taskExecutor.cancelAll());
+        progressBar.setPreferredSize(new Dimension(180, 16));
+        statusBar.add(statusLabel, BorderLayout.CENTER);
+        JPanel statusRight = new JPanel(new FlowLayout(FlowLayout.RIGHT, 6, 0));
+        statusRight.add(progressBar);
+        statusRight.add(cancelButton);
+        statusBar.add(statusRight, BorderLayout.EAST);
+        taskExecutor.addListener(task -> SwingUtilities.invokeLater(() -> {
+            List<TaskExecutor.Task<?>> running = taskExecutor.getRunningTasks();
+            cancelButton.setEnabled(!running.isEmpty());
+            if (running.isEmpty()) {
+                statusLabel.setText("Ready");
+                progressBar.setIndeterminate(false);
+                progressBar.setValue(0);
+                return;
+            }
+            TaskExecutor.Task<?> current = running.get(0);
+            statusLabel.setText(current.getMessage() != null ? current.getName() + ": " + current.getMessage() : current.getName());
+            progressBar.setIndeterminate(current.getProgress() < 0);
+            if (current.getProgress() >= 0) progressBar.setValue(current.getProgress());
+        }));
+        cancelButton.setEnabled(false);
+
+        root.add(buttonBar, BorderLayout.NORTH);
+        root.add(serverScroll, BorderLayout.WEST);
+        root.add(matrixScroll, BorderLayout.CENTER);
+        root.add(statusBar, BorderLayout.SOUTH);
+        setContentPane(root);
+
+        addButton.addActionListener(e -> addServer());
+        removeButton.addActionListener(e -> {
+            for (Fleet.Target target : serverList.getSelectedValuesList()) {
+                fleet.removeTarget(target);
+                serverModel.removeElement(target);
+            }
+        });
+        refreshButton.addActionListener(e -> refresh(true));
+        installButton.addActionListener(e -> install());
+        enableButton.addActionListener(e -> runOnSelectedPlugins("Enabling", (helper, target, cell) -> {
+            if (!cell.enabled()) helper.enablePlugin(target.pluginPath(), cell.fileName(), disabledSuffix);
+        }));
+        disableButton.addActionListener(e -> runOnSelectedPlugins("Disabling", (helper, target, cell) -> {
+            if (cell.enabled()) helper.disablePlugin(target.pluginPath(), cell.fileName(), disabledSuffix);
+        }));
+        uninstallButton.addActionListener(e -> {
+            if (JOptionPane.showConfirmDialog(this, "Uninstall the selected plugins from " + selectedServers().size() + " server(s)?",
+                    "Confirm", JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) return;
+            runOnSelectedPlugins("Uninstalling", (helper, target, cell) -> helper.uninstallPlugin(target.pluginPath(), cell.fileName()));
+        });
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                taskExecutor.shutdown();
+                fleet.close();
+            }
+        });
+    }
+
+    public void display() {
+        SwingUtilities.invokeLater(() -> {
+            setVisible(true);
+            if (!serverModel.isEmpty()) refresh(false);
+        });
+    }
+
+    private void addServer() {
+        JTextField nameField = new JTextField();
+        JTextField hostField = new JTextField();
+        JTextField portField = new JTextField("22");
+        JTextField userField = new JTextField();
+        JTextField pathField = new JTextField("/plugins");
+        JTextField keyField = new JTextField();
+        Object[] inputs = {
+                "Name:", nameField,
+                "Host:", hostField,
+                "Port:", portField,
+                "Username:", userField,
+                "Remote plugin path:", pathField,
+                "Private key file (empty for password):", keyField
+        };
+        if (JOptionPane.showConfirmDialog(this, inputs, "Add Server", JOptionPane.OK_CANCEL_OPTION) != JOptionPane.OK_OPTION) return;
+        try {
+            String host = hostField.getText().trim();
+            String user = userField.getText().trim();
+            String path = pathField.getText().trim();
+            if (host.isEmpty() || user.isEmpty() || path.isEmpty()) throw new IllegalArgumentException("Missing fields");
+            String name = nameField.getText().trim().isEmpty() ? host : nameField.getText().trim();
+            for (Fleet.Target existing : fleet.getTargets()) {
+                if (existing.name().equals(name)) throw new IllegalArgumentException("A server named " + name + " already exists");
+            }
+            String key = keyField.getText().trim();
+            Fleet.Target target = new Fleet.Target(name, host, Integer.parseInt(portField.getText().trim()), user, path,
+                    key.isEmpty() ? null : key);
+            fleet.addTarget(target);
+            serverModel.addElement(target);
+        } catch (Exception ex) {
+            showError("Invalid server: " + ex.getMessage());
+        }
+    }
+
+    // Called from worker threads; blocks until the user answered
+    private String askPassword(Fleet.Target target) {
+        String key = target.username() + "@" + target.host() + ":" + target.port();
+        String known = passwords.get(key);
+        if (known != null) return known;
+        synchronized (passwords) {
+            known = passwords.get(key);
+            if (known != null) return known;
+            String[] result = new String[1];
+            try {
+                SwingUtilities.invokeAndWait(() -> {
+                    JPasswordField passField = new JPasswordField();
+                    if (JOptionPane.showConfirmDialog(this, new Object[]{"Password for " + key + ":", passField},
+                            "Connect " + target.name(), JOptionPane.OK_CANCEL_OPTION) == JOptionPane.OK_OPTION) {
+                        result[0] = new String(passField.getPassword());
+                    }
+                });
+            } catch (Exception e) {
+                return null;
+            }
+            if (result[0] != null) passwords.put(key, result[0]);
+            return result[0];
+        }
+    }
+
+    private List<Fleet.Target> selectedServers() {
+        List<Fleet.Target> selected = serverList.getSelectedValuesList();
+        return selected.isEmpty() ? new ArrayList<>(fleet.getTargets()) : selected;
+    }
+
+    private void refresh(boolean force) {
+        List<Fleet.Target> servers = new ArrayList<>(fleet.getTargets());
+        if (servers.isEmpty()) return;
+        taskExecutor.<Fleet.Matrix>submit("Listing " + servers.size() + " server(s)", task -> {
+            return fleet.matrix(servers, disabledSuffix, force, task::isCancelled);
+        }, matrix -> {
+            matrixModel.setMatrix(matrix);
+            if (!matrix.errors().isEmpty()) {
+                StringBuilder builder = new StringBuilder("Some servers could not be listed:\n");
+                matrix.errors().forEach((target, error) -> builder.append(" - ").append(target.name()).append(": ")
+                        .append(error.getMessage()).append("\n"));
+                showError(builder.toString());
+            }
+        }, ex -> showError("Failed to list servers: " + ex.getMessage()));
+    }
+
+    private void install() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setMultiSelectionEnabled(true);
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        List<File> files = List.of(fileChooser.getSelectedFiles());
+        if (files.isEmpty()) return;
+        List<Fleet.Target> servers = selectedServers();
+        runOnServers("Installing " + files.size() + " plugin(s)", servers, (helper, target) -> {
+            List<TransferEngine.Item> items = new ArrayList<>();
+            for (File file : files) items.add(TransferEngine.Item.upload(file, target.pluginPath()));
+            TransferEngine.BatchResult batch = PluginManagerGUI.newTransferEngine(helper).run(items, null, () -> false);
+            if (!batch.getFailures().isEmpty()) {
+                TransferEngine.FileResult failure = batch.getFailures().get(0);
+                throw new Exception(failure.item().getName() + ": " + failure.error().getMessage());
+            }
+            return batch.toString();
+        });
+    }
+
+    @FunctionalInterface
+    private interface CellOperation {
+        void run(RemoteHelper helper, Fleet.Target target, Fleet.Cell cell) throws Exception;
+    }
+
+    private void runOnSelectedPlugins(String verb, CellOperation operation) {
+        Fleet.Matrix matrix = matrixModel.matrix;
+        int[] rows = matrixTable.getSelectedRows();
+        if (matrix == null || rows.length == 0) {
+            JOptionPane.showMessageDialog(this, "Select plugins in the table first.", "Info", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        List<String> plugins = new ArrayList<>();
+        for (int row : rows) plugins.add(matrixModel.getPlugin(matrixTable.convertRowIndexToModel(row)));
+        runOnServers(verb + " " + plugins.size() + " plugin(s)", selectedServers(), (helper, target) -> {
+            int changed = 0;
+            for (String plugin : plugins) {
+                Fleet.Cell cell = matrix.rows().getOrDefault(plugin, Map.of()).get(target);
+                if (cell == null) continue;
+                operation.run(helper, target, cell);
+                changed++;
+            }
+            return changed + " file(s)";
+        });
+    }
+
+    private void runOnServers(String title, List<Fleet.Target> servers, Fleet.Operation<String> operation) {
+        taskExecutor.<List<Fleet.Outcome<String>>>submit(title + " on " + servers.size() + " server(s)", task -> {
+            int[] done = {0};
+            return fleet.runAll(servers, operation, task::isCancelled, outcome -> {
+                synchronized (done) {
+                    task.setProgress(++done[0], servers.size());
+                }
+            });
+        }, outcomes -> {
+            StringBuilder failures = new StringBuilder();
+            int succeeded = 0;
+            for (Fleet.Outcome<String> outcome : outcomes) {
+                if (outcome.isSuccess()) succeeded++;
+                else failures.append(" - ").append(outcome.target().name()).append(": ").append(outcome.error().getMessage()).append("\n");
+            }
+            refresh(false);
+            if (failures.isEmpty()) {
+                JOptionPane.showMessageDialog(this, title + ": done on " + succeeded + " server(s)");
+            } else {
+                showError(title + ": done on " + succeeded + " of " + outcomes.size() + " server(s)\n" + failures);
+            }
+        }, ex -> showError(title + " failed: " + ex.getMessage()));
+    }
+
+    private void showError(String message) {
+        JOptionPane.showMessageDialog(this, message, "Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    private static final class MatrixModel extends AbstractTableModel {
+        private Fleet.Matrix matrix;
+        private List<String> plugins = List.of();
+
+        void setMatrix(Fleet.Matrix matrix) {
+            this.matrix = matrix;
+            this.plugins = new ArrayList<>(matrix.rows().keySet());
+            fireTableStructureChanged();
+        }
+
+        String getPlugin(int row) {
+            return plugins.get(row);
+        }
+
+        boolean isInconsistent(String plugin) {
+            return matrix != null && matrix.isInconsistent(plugin);
+        }
+
+        @Override
+        public int getRowCount() {
+            return plugins.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return matrix == null ? 1 : matrix.servers().size() + 1;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            if (column == 0) return "Plugin";
+            Fleet.Target target = matrix.servers().get(column - 1);
+            return matrix.errors().containsKey(target) ? target.name() + " (error)" : target.name();
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            String plugin = plugins.get(row);
+            if (column == 0) return plugin;
+            return matrix.rows().get(plugin).get(matrix.servers().get(column - 1));
+        }
+    }
+}
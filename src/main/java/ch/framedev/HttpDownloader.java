@@ -0,0 +1,359 @@
+package ch.framedev;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streams a plugin download straight into its destination (a local file or a remote SFTP stream) without an
+ * intermediate temp copy. Uses HTTP/2 where the server supports it, enforces connect and idle timeouts, and resumes
+ * interrupted downloads with Range requests guarded by If-Range; without a validator to send there, an interrupted
+ * download is restarted instead.
+ */
+public class HttpDownloader {
+
+    private static final Logger LOGGER = Logger.getLogger(HttpDownloader.class.getName());
+
+    private static final Pattern CONTENT_DISPOSITION_FILENAME = Pattern.compile("filename\\*?=(?:UTF-8'')?\"?([^\";]+)\"?", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Where the downloaded bytes go.
+     */
+    public interface Destination {
+        /**
+         * Opens the destination for writing.
+         *
+         * @param offset 0 to start over (truncating), otherwise the number of bytes already written, to append after.
+         */
+        OutputStream open(long offset) throws IOException;
+    }
+
+    /**
+     * Chooses the destination once the file name is known from the response.
+     */
+    @FunctionalInterface
+    public interface DestinationFactory {
+        Destination create(String fileName) throws IOException;
+    }
+
+    /**
+     * Receives download progress; total is -1 if the server did not send a length.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(long bytesDone, long bytesTotal);
+    }
+
+    /**
+     * Validators of a previously downloaded copy, sent as If-None-Match / If-Modified-Since. Either may be null.
+     */
+    public record Validators(String etag, String lastModified) {
+        public static final Validators NONE = new Validators(null, null);
+    }
+
+    /**
+     * Outcome of a download. If notModified is true, the server confirmed the caller's copy and nothing was written.
+     * The validators are those of the response, for revalidating later.
+     */
+    public record Result(String fileName, long bytes, long millis, int resumes, HttpClient.Version version,
+                         Validators validators, boolean notModified) {
+        @Override
+        public String toString() {
+            if (notModified) return "not modified";
+            return String.format("%s: %.1f MB in %.1f s over %s%s", fileName, bytes / 1_048_576.0, millis / 1000.0,
+                    version == HttpClient.Version.HTTP_2 ? "HTTP/2" : "HTTP/1.1", resumes > 0 ? ", resumed " + resumes + "x" : "");
+        }
+    }
+
+    private final HttpClient client;
+    private Duration requestTimeout = Duration.ofSeconds(30);
+    private Duration idleTimeout = Duration.ofSeconds(30);
+    private int maxResumes = 3;
+    private int bufferSize = 256 * 1024;
+
+    public HttpDownloader() {
+        this(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(15))
+                .build());
+    }
+
+    public HttpDownloader(HttpClient client) {
+        this.client = client;
+    }
+
+    // Maximum time to wait for response headers
+    public HttpDownloader setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+        return this;
+    }
+
+    // Maximum time without receiving any body bytes before the attempt is aborted (and resumed)
+    public HttpDownloader setIdleTimeout(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        return this;
+    }
+
+    public HttpDownloader setMaxResumes(int maxResumes) {
+        this.maxResumes = Math.max(0, maxResumes);
+        return this;
+    }
+
+    public HttpDownloader setBufferSize(int bufferSize) {
+        this.bufferSize = Math.max(8 * 1024, bufferSize);
+        return this;
+    }
+
+    /**
+     * Writes to a local file, appending when resuming.
+     *
+     * @param file The target file.
+     * @return The destination.
+     */
+    public static Destination toFile(File file) {
+        return offset -> new FileOutputStream(file, offset > 0);
+    }
+
+    /**
+     * Wraps a destination so that everything written to it is hashed. A restart from offset 0 resets the digest, so
+     * after a resumed download it still covers exactly the bytes of the file.
+     *
+     * @param destination The destination.
+     * @param digest      The digest to update.
+     * @return The hashing destination.
+     */
+    public static Destination hashing(Destination destination, MessageDigest digest) {
+        return offset -> {
+            if (offset == 0) digest.reset();
+            return new DigestOutputStream(destination.open(offset), digest);
+        };
+    }
+
+    /**
+     * Downloads the given URI into the destination chosen by the factory.
+     *
+     * @see #download(URI, Validators, DestinationFactory, ProgressListener, BooleanSupplier)
+     */
+    public Result download(URI uri, DestinationFactory destinations, ProgressListener listener, BooleanSupplier cancelled)
+            throws IOException, InterruptedException {
+        return download(uri, Validators.NONE, destinations, listener, cancelled);
+    }
+
+    /**
+     * Downloads the given URI into the destination chosen by the factory, unless the server reports that the copy
+     * described by the given validators is still current.
+     *
+     * @param uri          The URL to download.
+     * @param conditions   Validators of an existing copy, or {@link Validators#NONE}.
+     * @param destinations Chooses the destination from the file name of the response.
+     * @param listener     Optional progress listener.
+     * @param cancelled    Polled while copying; returning true aborts the download.
+     * @return The download result.
+     * @throws IOException          If the download fails after all resume attempts.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public Result download(URI uri, Validators conditions, DestinationFactory destinations, ProgressListener listener,
+                           BooleanSupplier cancelled) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        long written = 0;
+        long total = -1;
+        String validator = null;
+        Validators validators = Validators.NONE;
+        String fileName = null;
+        Destination destination = null;
+        HttpClient.Version version = null;
+        int resumes = 0;
+
+        while (true) {
+            HttpRequest.Builder request = HttpRequest.newBuilder(uri).timeout(requestTimeout).GET();
+            if (written > 0) {
+                request.header("Range", "bytes=" + written + "-");
+                request.header("If-Range", validator);
+            } else if (destination == null) {
+                if (conditions.etag() != null) request.header("If-None-Match", conditions.etag());
+                if (conditions.lastModified() != null) request.header("If-Modified-Since", conditions.lastModified());
+            }
+            HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            int status = response.statusCode();
+            version = response.version();
+            if (status == 304 && destination == null) {
+                response.body().close();
+                return new Result(null, 0, (System.nanoTime() - start) / 1_000_000, 0, version, conditions, true);
+            }
+            if (status != 200 && status != 206) {
+                response.body().close();
+                throw new IOException("HTTP " + status + " for " + uri);
+            }
+            HttpHeaders headers = response.headers();
+            if (status == 206 && rangeStart(headers) != written) {
+                // a range other than the one asked for would be appended at the wrong offset
+                response.body().close();
+                if (cancelled.getAsBoolean() || resumes >= maxResumes) throw new IOException("Server sent an unexpected range for " + uri);
+                resumes++;
+                LOGGER.warning("Server sent an unexpected range for " + uri + ", restarting download");
+                written = 0;
+                continue;
+            }
+            if (written > 0 && status == 200) {
+                // server ignored the range or the file changed: start over
+                LOGGER.info("Server does not support resuming " + uri + ", restarting download");
+                written = 0;
+            }
+            if (destination == null) {
+                fileName = fileName(uri, headers);
+                destination = destinations.create(fileName);
+            }
+            if (status == 200) {
+                total = headers.firstValueAsLong("Content-Length").orElse(-1);
+                // a full response describes the file now being written, which may differ from an earlier attempt
+                validators = new Validators(headers.firstValue("ETag").orElse(null), headers.firstValue("Last-Modified").orElse(null));
+                // If-Range needs a strong validator
+                validator = validators.etag() != null && !validators.etag().startsWith("W/") ? validators.etag() : validators.lastModified();
+            }
+
+            try (InputStream in = response.body(); OutputStream out = destination.open(written)) {
+                written = copy(in, out, written, total, listener, cancelled);
+                Result result = new Result(fileName, written, (System.nanoTime() - start) / 1_000_000, resumes, version, validators, false);
+                LOGGER.info("Downloaded " + result);
+                return result;
+            } catch (PartialDownloadException e) {
+                written = e.written;
+                if (cancelled.getAsBoolean() || resumes >= maxResumes) throw (IOException) e.getCause();
+                resumes++;
+                if (validator == null) {
+                    // without If-Range a file that changed in between would be spliced from two versions
+                    LOGGER.log(Level.WARNING, "Download of " + uri + " interrupted at " + written + " bytes, restarting: " + e.getCause().getMessage());
+                    written = 0;
+                } else {
+                    LOGGER.log(Level.WARNING, "Download of " + uri + " interrupted at " + written + " bytes, resuming: " + e.getCause().getMessage());
+                }
+            }
+        }
+    }
+
+    // First byte of a "Content-Range: bytes first-last/length" header, or -1 if it is missing or malformed
+    static long rangeStart(HttpHeaders headers) {
+        String range = headers.firstValue("Content-Range").orElse("").trim();
+        if (!range.regionMatches(true, 0, "bytes ", 0, 6)) return -1;
+        int dash = range.indexOf('-', 6);
+        if (dash < 0) return -1;
+        try {
+            return Long.parseLong(range.substring(6, dash).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private long copy(InputStream in, OutputStream out, long written, long total, ProgressListener listener, BooleanSupplier cancelled)
+            throws IOException {
+        Watchdog watchdog = new Watchdog(in, idleTimeout);
+        try {
+            byte[] buf = new byte[bufferSize];
+            int len;
+            while (true) {
+                try {
+                    len = in.read(buf);
+                } catch (IOException e) {
+                    throw new PartialDownloadException(written, watchdog.fired ? new IOException("No data received for " + idleTimeout.toSeconds() + " s", e) : e);
+                }
+                if (len == -1) break;
+                if (cancelled.getAsBoolean()) throw new InterruptedIOException("Download cancelled");
+                watchdog.touch();
+                out.write(buf, 0, len);
+                written += len;
+                if (listener != null) listener.onProgress(written, total);
+            }
+            if (total >= 0 && written < total) {
+                throw new PartialDownloadException(written, new IOException("Connection closed after " + written + " of " + total + " bytes"));
+            }
+            return written;
+        } finally {
+            watchdog.stop();
+        }
+    }
+
+    /**
+     * Derives the file name from Content-Disposition, falling back to the last path segment of the URI.
+     */
+    static String fileName(URI uri, HttpHeaders headers) {
+        Optional<String> disposition = headers.firstValue("Content-Disposition");
+        if (disposition.isPresent()) {
+            Matcher matcher = CONTENT_DISPOSITION_FILENAME.matcher(disposition.get());
+            if (matcher.find()) {
+                String name = sanitize(URLDecoder.decode(matcher.group(1), StandardCharsets.UTF_8));
+                if (!name.isEmpty()) return name;
+            }
+        }
+        String path = uri.getPath() != null ? uri.getPath() : "";
+        String name = sanitize(path.substring(path.lastIndexOf('/') + 1));
+        return name.isEmpty() ? "plugin.jar" : name;
+    }
+
+    private static String sanitize(String name) {
+        String base = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1).trim();
+        return base.equals(".") || base.equals("..") ? "" : base;
+    }
+
+    // Carries how far a failed attempt got, so the next attempt can resume from there
+    private static final class PartialDownloadException extends IOException {
+        private final long written;
+
+        PartialDownloadException(long written, IOException cause) {
+            super(cause.getMessage(), cause);
+            this.written = written;
+        }
+    }
+
+    // Closes the body stream when no data arrives for the idle timeout, which unblocks the reading thread
+    private static final class Watchdog {
+        private final Thread thread;
+        private volatile long lastActivity = System.nanoTime();
+        private volatile boolean fired;
+
+        Watchdog(InputStream in, Duration idleTimeout) {
+            long timeoutNanos = idleTimeout.toNanos();
+            thread = Thread.ofVirtual().start(() -> {
+                try {
+                    while (true) {
+                        Thread.sleep(Math.min(1000, Math.max(1, idleTimeout.toMillis())));
+                        if (System.nanoTime() - lastActivity > timeoutNanos) {
+                            fired = true;
+                            in.close();
+                            return;
+                        }
+                    }
+                } catch (InterruptedException | IOException e) {
+                    // stopped
+                }
+            });
+        }
+
+        void touch() {
+            lastActivity = System.nanoTime();
+        }
+
+        void stop() {
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ch.framedev;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes maps, collections, strings, numbers and booleans as JSON, for the command-line output.
+ */
+public final class JsonWriter {
+
+    private JsonWriter() {
+    }
+
+    /**
+     * @param value  The value to write; maps need string keys, anything unknown is written as its string form.
+     * @param pretty Whether to indent nested values by two spaces.
+     * @return The JSON text.
+     */
+    public static String write(Object value, boolean pretty) {
+        StringBuilder out = new StringBuilder();
+        write(out, value, pretty ? 0 : -1);
+        return out.toString();
+    }
+
+    private static void write(StringBuilder out, Object value, int indent) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof Boolean || value instanceof Integer || value instanceof Long) {
+            out.append(value);
+        } else if (value instanceof Number number) {
+            double d = number.doubleValue();
+            out.append(Double.isFinite(d) ? String.valueOf(d) : "null");
+        } else if (value instanceof Map<?, ?> map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!first) out.append(',');
+                first = false;
+                newline(out, indent >= 0 ? indent + 1 : -1);
+                string(out, String.valueOf(entry.getKey()));
+                out.append(indent >= 0 ? ": " : ":");
+                write(out, entry.getValue(), indent >= 0 ? indent + 1 : -1);
+            }
+            if (!map.isEmpty()) newline(out, indent);
+            out.append('}');
+        } else if (value instanceof Collection<?> collection) {
+            out.append('[');
+            boolean first = true;
+            for (Object item : collection) {
+                if (!first) out.append(',');
+                first = false;
+                newline(out, indent >= 0 ? indent + 1 : -1);
+                write(out, item, indent >= 0 ? indent + 1 : -1);
+            }
+            if (!collection.isEmpty()) newline(out, indent);
+            out.append(']');
+        } else {
+            string(out, value.toString());
+        }
+    }
+
+    private static void newline(StringBuilder out, int indent) {
+        if (indent < 0) return;
+        out.append('\n');
+        out.append("  ".repeat(indent));
+    }
+
+    private static void string(StringBuilder out, String s) {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> out.append("\\\"");
+                case '\\' -> out.append("\\\\");
+                case '\n' -> out.append("\\n");
+                case '\r' -> out.append("\\r");
+                case '\t' -> out.append("\\t");
+                default -> {
+                    if (c < 0x20) out.append(String.format("\\u%04x", (int) c));
+                    else out.append(c);
+                }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -15,6 +15,11 @@ public class Main {
         // Setup configuration
         setupConfig();
 
+        // Arguments run the headless command-line mode instead of the GUI
+        if (args.length > 0) {
+            System.exit(new PluginManagerCLI(config.getString("suffix-for-disabled-plugins", ".disabled")).run(args, System.out));
+        }
+
         // Check if Desktop is supported
         if (!Desktop.isDesktopSupported()) {
             System.err.println("Desktop is not supported on this system.");
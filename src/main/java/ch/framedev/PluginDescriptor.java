@@ -0,0 +1,183 @@
+package ch.framedev;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, typed view of a plugin.yml file, or of a paper-plugin.yml whose server dependencies are mapped to
+ * depend, softdepend and loadbefore.
+ * Instances are created once per jar by {@link PluginHelper#getDescriptor(java.io.File)} and shared via its cache.
+ */
+public final class PluginDescriptor {
+
+    /**
+     * The plugin.yml keys a descriptor reads; everything else (e.g. permissions) need not be parsed.
+     */
+    public static final Set<String> KEYS = Set.of("name", "version", "main", "description", "api-version",
+            "authors", "author", "depend", "softdepend", "loadbefore", "commands", "dependencies");
+
+    private final String name;
+    private final String version;
+    private final String mainClass;
+    private final String description;
+    private final String apiVersion;
+    private final List<String> authors;
+    private final List<String> depend;
+    private final List<String> softDepend;
+    private final List<String> loadBefore;
+    private final Map<String, Object> commands;
+
+    private PluginDescriptor(Map<String, Object> yml) {
+        this.name = asString(yml.get("name"));
+        this.version = asString(yml.get("version"));
+        this.mainClass = asString(yml.get("main"));
+        this.description = asString(yml.get("description"));
+        this.apiVersion = asString(yml.get("api-version"));
+        List<String> authorList = new ArrayList<>(asStringList(yml.get("authors")));
+        if (authorList.isEmpty()) {
+            authorList.addAll(asStringList(yml.get("author")));
+        }
+        this.authors = Collections.unmodifiableList(authorList);
+        List<String> dependList = new ArrayList<>(asStringList(yml.get("depend")));
+        List<String> softDependList = new ArrayList<>(asStringList(yml.get("softdepend")));
+        List<String> loadBeforeList = new ArrayList<>(asStringList(yml.get("loadbefore")));
+        addPaperDependencies(yml.get("dependencies"), dependList, softDependList, loadBeforeList);
+        this.depend = Collections.unmodifiableList(dependList);
+        this.softDepend = Collections.unmodifiableList(softDependList);
+        this.loadBefore = Collections.unmodifiableList(loadBeforeList);
+        this.commands = asMap(yml.get("commands"));
+    }
+
+    // paper-plugin.yml: dependencies: {server: {Name: {load: BEFORE|AFTER|OMIT, required: true|false}}};
+    // load: AFTER means the dependency loads after this plugin, which is what loadbefore says in plugin.yml
+    private static void addPaperDependencies(Object dependencies, List<String> depend, List<String> softDepend, List<String> loadBefore) {
+        if (!(dependencies instanceof Map<?, ?> sections) || !(sections.get("server") instanceof Map<?, ?> server)) {
+            return;
+        }
+        for (Map.Entry<?, ?> entry : server.entrySet()) {
+            String plugin = String.valueOf(entry.getKey());
+            Map<?, ?> options = entry.getValue() instanceof Map<?, ?> map ? map : Map.of();
+            if ("AFTER".equalsIgnoreCase(String.valueOf(options.get("load")))) {
+                loadBefore.add(plugin);
+            } else if (Boolean.FALSE.equals(options.get("required"))) {
+                softDepend.add(plugin);
+            } else {
+                depend.add(plugin);
+            }
+        }
+    }
+
+    /**
+     * Creates a descriptor from the parsed contents of a plugin.yml file.
+     *
+     * @param yml The parsed plugin.yml.
+     * @return The descriptor, or null if yml is null.
+     */
+    public static PluginDescriptor of(Map<String, Object> yml) {
+        if (yml == null) {
+            return null;
+        }
+        return new PluginDescriptor(yml);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getMainClass() {
+        return mainClass;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return The raw api-version string (e.g. "1.20"), or null if not declared.
+     */
+    public String getApiVersion() {
+        return apiVersion;
+    }
+
+    public List<String> getAuthors() {
+        return authors;
+    }
+
+    public List<String> getDepend() {
+        return depend;
+    }
+
+    public List<String> getSoftDepend() {
+        return softDepend;
+    }
+
+    public List<String> getLoadBefore() {
+        return loadBefore;
+    }
+
+    public Map<String, Object> getCommands() {
+        return commands;
+    }
+
+    /**
+     * Returns the descriptor as a plugin.yml-shaped map, e.g. for persisting it. {@link #of(Map)} restores it.
+     *
+     * @return A new map with only the keys this descriptor holds.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        putIfPresent(map, "name", name);
+        putIfPresent(map, "version", version);
+        putIfPresent(map, "main", mainClass);
+        putIfPresent(map, "description", description);
+        putIfPresent(map, "api-version", apiVersion);
+        if (!authors.isEmpty()) map.put("authors", authors);
+        if (!depend.isEmpty()) map.put("depend", depend);
+        if (!softDepend.isEmpty()) map.put("softdepend", softDepend);
+        if (!loadBefore.isEmpty()) map.put("loadbefore", loadBefore);
+        if (!commands.isEmpty()) map.put("commands", commands);
+        return map;
+    }
+
+    private static void putIfPresent(Map<String, Object> map, String key, Object value) {
+        if (value != null) map.put(key, value);
+    }
+
+    private static String asString(Object value) {
+        return value != null ? String.valueOf(value) : null;
+    }
+
+    private static List<String> asStringList(Object value) {
+        if (value instanceof List<?> list) {
+            List<String> result = new ArrayList<>(list.size());
+            for (Object o : list) {
+                if (o != null) result.add(String.valueOf(o));
+            }
+            return Collections.unmodifiableList(result);
+        } else if (value != null) {
+            return List.of(String.valueOf(value));
+        }
+        return List.of();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>((Map<String, Object>) map));
+        }
+        return Map.of();
+    }
+
+    @Override
+    public String toString() {
+        return "PluginDescriptor{name=" + name + ", version=" + version + ", main=" + mainClass + "}";
+    }
+}
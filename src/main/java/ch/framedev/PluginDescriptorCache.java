@@ -0,0 +1,129 @@
+package ch.framedev;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU cache of parsed plugin descriptors.
+ * Entries are keyed by absolute path, size and last-modified time, so a replaced jar is never served stale.
+ * Remote jars use a connection-qualified path so they never collide with local files.
+ */
+public class PluginDescriptorCache {
+
+    /**
+     * Loads a descriptor on a cache miss.
+     */
+    @FunctionalInterface
+    public interface Loader {
+        PluginDescriptor load() throws IOException;
+    }
+
+    private final int maxEntries;
+    private final Map<Key, PluginDescriptor> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public PluginDescriptorCache(int maxEntries) {
+        if (maxEntries <= 0) throw new IllegalArgumentException("maxEntries must be positive");
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PluginDescriptor> eldest) {
+                return size() > PluginDescriptorCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached descriptor for the given file, loading it with the given loader on a miss.
+     * Null results are not cached.
+     *
+     * @param file   The plugin file.
+     * @param loader The function used to parse the file on a miss.
+     * @return The descriptor, or null if the loader returned null.
+     */
+    public PluginDescriptor get(File file, Function<File, PluginDescriptor> loader) {
+        Key key = Key.of(file);
+        PluginDescriptor cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+        return store(key, loader.apply(file));
+    }
+
+    /**
+     * Returns the cached descriptor for the given path and file attributes, loading it with the given loader on a miss.
+     * Null results are not cached.
+     *
+     * @param path         The (possibly remote) path identifying the jar.
+     * @param size         The size of the jar in bytes.
+     * @param lastModified The last-modified time of the jar in milliseconds.
+     * @param loader       The loader used on a miss.
+     * @return The descriptor, or null if the loader returned null.
+     * @throws IOException If the loader fails.
+     */
+    public PluginDescriptor get(String path, long size, long lastModified, Loader loader) throws IOException {
+        Key key = new Key(path, size, lastModified);
+        PluginDescriptor cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+        return store(key, loader.load());
+    }
+
+    private PluginDescriptor lookup(Key key) {
+        synchronized (entries) {
+            PluginDescriptor cached = entries.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private PluginDescriptor store(Key key, PluginDescriptor loaded) {
+        if (loaded != null) {
+            synchronized (entries) {
+                entries.put(key, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "PluginDescriptorCache{size=" + size() + "/" + maxEntries + ", hits=" + hits.get() + ", misses=" + misses.get() + "}";
+    }
+
+    private record Key(String path, long size, long lastModified) {
+        static Key of(File file) {
+            return new Key(file.getAbsolutePath(), file.length(), file.lastModified());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package ch.framedev;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches a local plugin folder and reports coalesced file changes.
+ * Events are collected until the folder has been quiet for a short time (or a maximum delay passed),
+ * so a server unpacking many jars produces one batch instead of hundreds of refreshes.
+ */
+public class PluginFolderWatcher implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(PluginFolderWatcher.class.getName());
+
+    /**
+     * One batch of changes. A rename shows up as the old name in removed and the new name in changed.
+     *
+     * @param changed  Regular files that were created or modified.
+     * @param removed  Names that no longer exist.
+     * @param overflow True if events were lost and the folder must be listed again.
+     */
+    public record Changes(Set<String> changed, Set<String> removed, boolean overflow) {
+    }
+
+    private final Path directory;
+    private final long quietMillis;
+    private final long maxDelayMillis;
+    private final Consumer<Changes> listener;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    /**
+     * Creates and starts a watcher.
+     *
+     * @param directory   The folder to watch.
+     * @param quietMillis How long the folder must be quiet before a batch is delivered.
+     * @param listener    Receives each batch on the watcher thread.
+     * @throws IOException If the folder cannot be watched.
+     */
+    public PluginFolderWatcher(Path directory, long quietMillis, Consumer<Changes> listener) throws IOException {
+        this.directory = directory;
+        this.quietMillis = quietMillis;
+        this.maxDelayMillis = Math.max(quietMillis * 10, 2000);
+        this.listener = listener;
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        this.thread = new Thread(this::run, "plugin-folder-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<String> touched = new LinkedHashSet<>();
+                boolean overflow = drain(key, touched);
+                long deadline = System.currentTimeMillis() + maxDelayMillis;
+                // keep collecting while the burst lasts
+                while (System.currentTimeMillis() < deadline) {
+                    key = watchService.poll(quietMillis, TimeUnit.MILLISECONDS);
+                    if (key == null) break;
+                    overflow |= drain(key, touched);
+                }
+                deliver(touched, overflow);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private boolean drain(WatchKey key, Set<String> touched) {
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else if (event.context() instanceof Path path) {
+                touched.add(path.getFileName().toString());
+            }
+        }
+        if (!key.reset()) {
+            LOGGER.warning("Plugin folder is no longer accessible: " + directory);
+            overflow = true;
+        }
+        return overflow;
+    }
+
+    private void deliver(Set<String> touched, boolean overflow) {
+        Set<String> changed = new HashSet<>();
+        Set<String> removed = new HashSet<>();
+        for (String name : touched) {
+            // hidden files are staged installs that show up under their final name once complete
+            if (name.startsWith(".")) continue;
+            Path path = directory.resolve(name);
+            if (Files.isRegularFile(path)) changed.add(name);
+            else if (!Files.exists(path)) removed.add(name);
+        }
+        if (changed.isEmpty() && removed.isEmpty() && !overflow) return;
+        try {
+            listener.accept(new Changes(changed, removed, overflow));
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Folder change listener failed: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Closing watch service failed", e);
+        }
+    }
+}
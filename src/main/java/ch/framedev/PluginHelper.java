@@ -1,10 +1,19 @@
 package ch.framedev;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.jar.JarFile;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -14,23 +23,69 @@ import org.yaml.snakeyaml.Yaml;
 
 public class PluginHelper {
 
+    public static final String PLUGIN_YML = "plugin.yml";
+    public static final String PAPER_PLUGIN_YML = "paper-plugin.yml";
+
+    /**
+     * Descriptor files a plugin jar may contain, in the order they are preferred.
+     */
+    public static final List<String> DESCRIPTOR_FILES = List.of(PLUGIN_YML, PAPER_PLUGIN_YML);
+
     private static final Logger LOGGER = Logger.getLogger(PluginHelper.class.getName());
 
+    // Parsed descriptors keyed by path, size and mtime
+    private static final PluginDescriptorCache DESCRIPTOR_CACHE = new PluginDescriptorCache(512);
+
+    // Full loads (the fallback of the key-selective parser) reuse one Yaml per thread instead of building one per file
+    private static final ThreadLocal<Yaml> YAML = ThreadLocal.withInitial(Yaml::new);
+
     /**
-     * Reads the plugin.yml file from the given plugin JAR file and returns its contents as a Map.
+     * Reads the plugin.yml (or paper-plugin.yml) file from the given plugin JAR file and returns the requested
+     * top-level keys as a Map. The jar is read directly through its central directory; JarFile is only used for
+     * archives that reader does not support.
      *
      * @param pluginFile The plugin JAR file.
+     * @param keys       The top-level keys to read, or null for all of them.
      * @return A Map representing the contents of plugin.yml, or null if an error occurs.
      */
-    private static Map<String, Object> getPluginYml(File pluginFile) {
+    private static Map<String, Object> getPluginYml(File pluginFile, Set<String> keys) {
+        byte[] yml = null;
+        boolean read = false;
+        try {
+            yml = readDescriptorFile(pluginFile);
+            read = true;
+        } catch (IOException | RuntimeException | InternalError e) {
+            // unsupported or unusual archive layout (zip64, truncated or odd central directory): let JarFile try;
+            // a mapped jar that is truncated while it is read surfaces as InternalError
+            LOGGER.fine("Reading " + pluginFile.getName() + " with JarFile: " + e);
+        }
+        if (read) {
+            // a YAML error would be the same through JarFile, so it is not retried
+            try {
+                return yml != null ? loadYml(yml, keys) : null;
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Error parsing plugin.yml from " + pluginFile.getName() + ": " + e.getMessage(), e);
+                return null;
+            }
+        }
         try (JarFile jarFile = new JarFile(pluginFile)) {
-            ZipEntry entry = jarFile.getEntry("plugin.yml");
+            ZipEntry entry = jarFile.getEntry(PLUGIN_YML);
+            if (entry == null) {
+                entry = jarFile.getEntry(PAPER_PLUGIN_YML);
+            }
             if (entry == null) {
                 return null;
             }
+            if (keys != null) {
+                // streamed straight from the jar; only documents the selective parser cannot handle are read again
+                try (InputStream inputStream = jarFile.getInputStream(entry)) {
+                    return PluginYmlParser.parse(inputStream, keys);
+                } catch (PluginYmlParser.UnsupportedDocumentException e) {
+                    LOGGER.fine("Loading plugin.yml of " + pluginFile.getName() + " in full: " + e.getMessage());
+                }
+            }
             try (InputStream inputStream = jarFile.getInputStream(entry)) {
-                Yaml yaml = new Yaml();
-                return yaml.load(inputStream);
+                return loadYml(inputStream);
             }
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Error reading plugin.yml from " + pluginFile.getName() + ": " + e.getMessage(), e);
@@ -38,6 +93,69 @@ public class PluginHelper {
         }
     }
 
+    // Maps the jar and reads only its end-of-central-directory record, the directory up to the descriptor and the
+    // descriptor itself; no manifest or signature handling as with JarFile
+    private static byte[] readDescriptorFile(File pluginFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(pluginFile.toPath(), StandardOpenOption.READ)) {
+            return ZipEntryReader.readEntry(ZipEntryReader.of(channel), DESCRIPTOR_FILES);
+        }
+    }
+
+    /**
+     * Parses plugin.yml contents that were read by other means, e.g. from a remote jar.
+     *
+     * @param pluginYml The raw plugin.yml bytes.
+     * @return The plugin descriptor, or null if the contents are not a YAML mapping.
+     */
+    public static PluginDescriptor parseDescriptor(byte[] pluginYml) {
+        try {
+            return PluginDescriptor.of(loadYml(pluginYml, PluginDescriptor.KEYS));
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Error parsing plugin.yml: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private static Map<String, Object> loadYml(byte[] pluginYml, Set<String> keys) {
+        if (keys == null) {
+            return loadYml(new ByteArrayInputStream(pluginYml));
+        }
+        try {
+            return PluginYmlParser.parse(new ByteArrayInputStream(pluginYml), keys);
+        } catch (PluginYmlParser.UnsupportedDocumentException e) {
+            LOGGER.fine("Loading plugin.yml in full: " + e.getMessage());
+            return loadYml(new ByteArrayInputStream(pluginYml));
+        }
+    }
+
+    private static Map<String, Object> loadYml(InputStream inputStream) {
+        Object loaded = YAML.get().load(inputStream);
+        if (!(loaded instanceof Map)) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> map = (Map<String, Object>) loaded;
+        return map;
+    }
+
+    /**
+     * Returns the parsed descriptor of the given plugin JAR file.
+     * The plugin.yml is read and parsed at most once per jar version; later calls are served from the cache.
+     *
+     * @param pluginFile The plugin JAR file.
+     * @return The plugin descriptor, or null if the file has no readable plugin.yml.
+     */
+    public static PluginDescriptor getDescriptor(File pluginFile) {
+        return DESCRIPTOR_CACHE.get(pluginFile, file -> PluginDescriptor.of(getPluginYml(file, PluginDescriptor.KEYS)));
+    }
+
+    /**
+     * @return The shared descriptor cache, e.g. to inspect its hit/miss counters.
+     */
+    public static PluginDescriptorCache getDescriptorCache() {
+        return DESCRIPTOR_CACHE;
+    }
+
     /**
      * Retrieves the name of the plugin from its plugin.yml file.
      *
@@ -45,11 +163,8 @@ public class PluginHelper {
      * @return The name of the plugin, or null if not found.
      */
     public static String getPluginName(File pluginFile) {
-        Map<String, Object> pluginYml = getPluginYml(pluginFile);
-        if (pluginYml != null) {
-            return (String) pluginYml.get("name");
-        }
-        return null;
+        PluginDescriptor descriptor = getDescriptor(pluginFile);
+        return descriptor != null ? descriptor.getName() : null;
     }
 
     /**
@@ -59,11 +174,8 @@ public class PluginHelper {
      * @return The version of the plugin, or null if not found.
      */
     public static String getPluginVersion(File pluginFile) {
-        Map<String, Object> pluginYml = getPluginYml(pluginFile);
-        if (pluginYml != null) {
-            return (String) pluginYml.get("version");
-        }
-        return null;
+        PluginDescriptor descriptor = getDescriptor(pluginFile);
+        return descriptor != null ? descriptor.getVersion() : null;
     }
 
     /**
@@ -73,11 +185,8 @@ public class PluginHelper {
      * @return The description of the plugin, or null if not found.
      */
     public static String getPluginDescription(File pluginFile) {
-        Map<String, Object> pluginYml = getPluginYml(pluginFile);
-        if (pluginYml != null) {
-            return (String) pluginYml.get("description");
-        }
-        return null;
+        PluginDescriptor descriptor = getDescriptor(pluginFile);
+        return descriptor != null ? descriptor.getDescription() : null;
     }
 
     /**
@@ -86,14 +195,9 @@ public class PluginHelper {
      * @param pluginFile The plugin JAR file.
      * @return A Map of command names to their definitions.
      */
-    @SuppressWarnings("unchecked")
     public static Map<String, Object> getCommands(File pluginFile) {
-        Map<String, Object> commands = new HashMap<>();
-        Map<String, Object> pluginYml = getPluginYml(pluginFile);
-        if (pluginYml != null && pluginYml.containsKey("commands")) {
-            commands = (Map<String, Object>) pluginYml.get("commands");
-        }
-        return commands;
+        PluginDescriptor descriptor = getDescriptor(pluginFile);
+        return descriptor != null ? descriptor.getCommands() : new HashMap<>();
     }
 
     /**
@@ -102,21 +206,9 @@ public class PluginHelper {
      * @param pluginFile The plugin JAR file.
      * @return A List of authors.
      */
-    @SuppressWarnings("unchecked")
     public static List<String> getPluginAuthors(File pluginFile) {
-        Map<String, Object> pluginYml = getPluginYml(pluginFile);
-        if (pluginYml != null && pluginYml.containsKey("authors")) {
-            Object authorsObj = pluginYml.get("authors");
-            if (authorsObj instanceof List) {
-                return (List<String>) authorsObj;
-            } else if (authorsObj instanceof String) {
-                return List.of((String) authorsObj);
-            }
-        } else if (pluginYml != null && pluginYml.containsKey("author")) {
-            String author = (String) pluginYml.get("author");
-            return List.of(author);
-        }
-        return List.of();
+        PluginDescriptor descriptor = getDescriptor(pluginFile);
+        return descriptor != null ? descriptor.getAuthors() : List.of();
     }
 
     /**
@@ -126,11 +218,8 @@ public class PluginHelper {
      * @return The API version of the plugin, or 0.0 if not found.
      */
     public static double getPluginAPIVersion(File pluginFile) {
-        Map<String, Object> pluginYml = getPluginYml(pluginFile);
-        if (pluginYml != null) {
-            return (double) pluginYml.get("api-version");
-        }
-        return 0.0;
+        PluginDescriptor descriptor = getDescriptor(pluginFile);
+        return descriptor != null ? parseApiVersion(descriptor.getApiVersion()) : 0.0;
     }
 
     /**
@@ -140,10 +229,46 @@ public class PluginHelper {
      * @return The main class of the plugin, or null if not found.
      */
     public static String getPluginMainClass(File pluginFile) {
-        Map<String, Object> pluginYml = getPluginYml(pluginFile);
-        if (pluginYml != null) {
-            return (String) pluginYml.get("main");
+        PluginDescriptor descriptor = getDescriptor(pluginFile);
+        return descriptor != null ? descriptor.getMainClass() : null;
+    }
+
+    /**
+     * Parses an api-version string such as "1.20" into a double.
+     *
+     * @param apiVersion The raw api-version.
+     * @return The parsed value, or 0.0 if it is missing or not numeric.
+     */
+    static double parseApiVersion(String apiVersion) {
+        if (apiVersion == null) {
+            return 0.0;
+        }
+        try {
+            return Double.parseDouble(apiVersion);
+        } catch (NumberFormatException e) {
+            return 0.0;
+        }
+    }
+
+    /**
+     * Computes the SHA-256 hash of a file.
+     *
+     * @param file The file to hash.
+     * @return The lower-case hex encoded hash.
+     * @throws IOException If the file cannot be read.
+     */
+    public static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buf = new byte[64 * 1024];
+            int len;
+            while ((len = in.read(buf)) != -1) digest.update(buf, 0, len);
         }
-        return null;
+        return HexFormat.of().formatHex(digest.digest());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,118 @@
+package ch.framedev;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory metadata index of a plugin folder, keyed by file name.
+ * Lets the lists show plugin names and versions and sort without touching the jars again.
+ */
+public class PluginIndex {
+
+    /**
+     * Indexed metadata of one plugin file. The descriptor is null if the file has no readable plugin.yml.
+     * The SHA-256 content hash is hex encoded, or null if it has not been computed.
+     */
+    public record Entry(String fileName, long size, long lastModified, String sha256, PluginDescriptor descriptor) {
+
+        public String getName() {
+            return descriptor != null ? descriptor.getName() : null;
+        }
+
+        public String getVersion() {
+            return descriptor != null ? descriptor.getVersion() : null;
+        }
+
+        /**
+         * @return "Name Version" if known, otherwise the file name.
+         */
+        public String getDisplayName() {
+            String name = getName();
+            if (name == null) return fileName;
+            String version = getVersion();
+            return version != null ? name + " " + version : name;
+        }
+
+        /**
+         * @param file The file on disk.
+         * @return True if this entry still describes the given file.
+         */
+        public boolean matches(File file) {
+            return size == file.length() && lastModified == file.lastModified();
+        }
+
+        /**
+         * @param lastModified The new last-modified time.
+         * @return A copy of this entry with the given last-modified time.
+         */
+        public Entry withLastModified(long lastModified) {
+            return new Entry(fileName, size, lastModified, sha256, descriptor);
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public Entry get(String fileName) {
+        return entries.get(fileName);
+    }
+
+    public void put(Entry entry) {
+        entries.put(entry.fileName(), entry);
+    }
+
+    public void remove(String fileName) {
+        entries.remove(fileName);
+    }
+
+    /**
+     * Moves an entry to a new file name, e.g. after a plugin was enabled or disabled by renaming it.
+     *
+     * @param oldName The current file name.
+     * @param newName The new file name.
+     */
+    public void rename(String oldName, String newName) {
+        Entry entry = entries.remove(oldName);
+        if (entry != null) {
+            entries.put(newName, new Entry(newName, entry.size(), entry.lastModified(), entry.sha256(), entry.descriptor()));
+        }
+    }
+
+    /**
+     * Removes every entry whose file name is not in the given set.
+     *
+     * @param fileNames The file names that still exist.
+     */
+    public void retainAll(Set<String> fileNames) {
+        entries.keySet().retainAll(fileNames);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Collection<Entry> entries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * @param fileNames File names to look up.
+     * @return The entries found for the given names, in the same order.
+     */
+    public List<Entry> entriesFor(List<String> fileNames) {
+        List<Entry> result = new ArrayList<>(fileNames.size());
+        for (String fileName : fileNames) {
+            Entry entry = entries.get(fileName);
+            if (entry != null) result.add(entry);
+        }
+        return result;
+    }
+}
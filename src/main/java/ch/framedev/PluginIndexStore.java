@@ -0,0 +1,190 @@
+package ch.framedev;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persists a {@link PluginIndex} in a compact binary file next to config.yml, so the lists can show plugin
+ * names and versions on startup before the folder has been re-validated.
+ * The file holds the index of a single plugin folder; loading it for another folder yields nothing.
+ */
+public class PluginIndexStore {
+
+    private static final Logger LOGGER = Logger.getLogger(PluginIndexStore.class.getName());
+
+    private static final int MAGIC = 0x53504d49; // "SPMI"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_LIST = 2;
+    private static final byte TYPE_MAP = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_BOOLEAN = 6;
+
+    private final File file;
+
+    public PluginIndexStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return The store next to config.yml.
+     */
+    public static PluginIndexStore getDefault() {
+        return new PluginIndexStore(new File(Main.utils.getFilePath(Main.class), "plugin-index.bin"));
+    }
+
+    /**
+     * Loads the stored entries of the given folder into the index.
+     *
+     * @param directory The plugin folder the index belongs to.
+     * @param index     The index to fill.
+     * @return The number of entries loaded; 0 if there is no stored index for this folder or it is unreadable.
+     */
+    public int load(File directory, PluginIndex index) {
+        if (!file.isFile()) return 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return 0;
+            if (!directory.getAbsolutePath().equals(in.readUTF())) return 0;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String fileName = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                String sha256 = in.readBoolean() ? in.readUTF() : null;
+                PluginDescriptor descriptor = null;
+                if (in.readBoolean()) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> map = (Map<String, Object>) readValue(in);
+                    descriptor = PluginDescriptor.of(map);
+                }
+                index.put(new PluginIndex.Entry(fileName, size, lastModified, sha256, descriptor));
+            }
+            return count;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Ignoring unreadable plugin index " + file + ": " + e.getMessage(), e);
+            index.clear();
+            return 0;
+        }
+    }
+
+    /**
+     * Writes the index of the given folder, replacing the previous file atomically.
+     *
+     * @param directory The plugin folder the index belongs to.
+     * @param index     The index to write.
+     */
+    public void save(File directory, PluginIndex index) {
+        File temp = null;
+        try {
+            temp = File.createTempFile("plugin-index", ".tmp", file.getAbsoluteFile().getParentFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+                List<PluginIndex.Entry> entries = new ArrayList<>(index.entries());
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(directory.getAbsolutePath());
+                out.writeInt(entries.size());
+                for (PluginIndex.Entry entry : entries) {
+                    out.writeUTF(entry.fileName());
+                    out.writeLong(entry.size());
+                    out.writeLong(entry.lastModified());
+                    out.writeBoolean(entry.sha256() != null);
+                    if (entry.sha256() != null) out.writeUTF(entry.sha256());
+                    out.writeBoolean(entry.descriptor() != null);
+                    if (entry.descriptor() != null) writeValue(out, entry.descriptor().toMap());
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not save plugin index to " + file + ": " + e.getMessage(), e);
+            if (temp != null && !temp.delete()) temp.deleteOnExit();
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof Map<?, ?> map) {
+            out.writeByte(TYPE_MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                out.writeUTF(String.valueOf(e.getKey()));
+                writeValue(out, e.getValue());
+            }
+        } else if (value instanceof List<?> list) {
+            out.writeByte(TYPE_LIST);
+            out.writeInt(list.size());
+            for (Object o : list) writeValue(out, o);
+        } else if (value instanceof Integer || value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Number number) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(number.doubleValue());
+        } else if (value instanceof Boolean bool) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean(bool);
+        } else {
+            out.writeByte(TYPE_STRING);
+            writeLongString(out, String.valueOf(value));
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return readLongString(in);
+            case TYPE_LIST: {
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) list.add(readValue(in));
+                return list;
+            }
+            case TYPE_MAP: {
+                int size = in.readInt();
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) map.put(in.readUTF(), readValue(in));
+                return map;
+            }
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            default:
+                throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    // writeUTF is limited to 64 KB, descriptions and usages are not
+    private static void writeLongString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readLongString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,149 @@
+package ch.framedev;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Scans every plugin jar (enabled or disabled) in a folder in parallel and fills a {@link PluginIndex}.
+ * Files whose size and mtime did not change since the last scan are not read again.
+ */
+public class PluginIndexer {
+
+    private static final Logger LOGGER = Logger.getLogger(PluginIndexer.class.getName());
+
+    // Bounds the number of jars open at the same time; virtual threads themselves are cheap
+    private static final int MAX_CONCURRENT_READS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * Receives progress updates from worker threads.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(int done, int total);
+    }
+
+    /**
+     * Metrics of one scan.
+     *
+     * @param files          Plugin files found in the folder.
+     * @param read           Files whose plugin.yml had to be read.
+     * @param failed         Read files without a readable plugin.yml.
+     * @param changed        Whether the index differs from before the scan.
+     * @param durationMillis Wall-clock time of the scan.
+     */
+    public record ScanResult(int files, int read, int failed, boolean changed, long durationMillis) {
+        @Override
+        public String toString() {
+            return "Indexed " + files + " plugins in " + durationMillis + " ms (" + read + " read, " + failed + " without plugin.yml)";
+        }
+    }
+
+    private PluginIndexer() {
+    }
+
+    /**
+     * @param name           A file name.
+     * @param disabledSuffix The suffix used for disabled plugins.
+     * @return True if the file name denotes an enabled or disabled plugin jar.
+     */
+    public static boolean isPluginFile(String name, String disabledSuffix) {
+        return !name.startsWith(".") && (name.endsWith(".jar") || name.endsWith(disabledSuffix));
+    }
+
+    /**
+     * Scans the given folder and updates the index in place.
+     *
+     * @param directory      The plugin folder.
+     * @param disabledSuffix The suffix used for disabled plugins.
+     * @param index          The index to update.
+     * @param listener       Optional progress listener.
+     * @return The scan metrics.
+     * @throws InterruptedException If the scan was cancelled.
+     */
+    public static ScanResult scan(File directory, String disabledSuffix, PluginIndex index, ProgressListener listener) throws InterruptedException {
+        long start = System.nanoTime();
+        File[] files = directory.listFiles(file -> file.isFile() && isPluginFile(file.getName(), disabledSuffix));
+        if (files == null) files = new File[0];
+
+        Set<String> names = new HashSet<>();
+        List<File> toRead = new ArrayList<>();
+        int before = index.size();
+        for (File file : files) {
+            names.add(file.getName());
+            PluginIndex.Entry existing = index.get(file.getName());
+            if (existing == null || !existing.matches(file)) toRead.add(file);
+        }
+        index.retainAll(names);
+
+        int total = files.length;
+        AtomicInteger done = new AtomicInteger(total - toRead.size());
+        AtomicInteger failed = new AtomicInteger();
+        if (listener != null) listener.onProgress(done.get(), total);
+
+        Semaphore permits = new Semaphore(MAX_CONCURRENT_READS);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(toRead.size());
+            for (File file : toRead) {
+                futures.add(executor.submit(() -> {
+                    PluginIndex.Entry entry;
+                    permits.acquire();
+                    try {
+                        entry = readEntry(file, index.get(file.getName()));
+                    } finally {
+                        permits.release();
+                    }
+                    index.put(entry);
+                    if (entry.descriptor() == null) failed.incrementAndGet();
+                    int d = done.incrementAndGet();
+                    if (listener != null) listener.onProgress(d, total);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    executor.shutdownNow();
+                    throw e;
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Indexing failed: " + e.getMessage(), e);
+                }
+            }
+        }
+
+        boolean changed = !toRead.isEmpty() || index.size() != before;
+        ScanResult result = new ScanResult(total, toRead.size(), failed.get(), changed, (System.nanoTime() - start) / 1_000_000);
+        LOGGER.info(result + " in " + directory.getAbsolutePath());
+        return result;
+    }
+
+    /**
+     * Reads the index entry of a single file.
+     * If only the mtime changed and the content hash still matches the previous entry, the previous metadata is kept.
+     *
+     * @param file     The plugin file.
+     * @param previous The previous entry for this file, or null.
+     * @return The entry, with a null descriptor if the file has no readable plugin.yml.
+     * @throws IOException If the file cannot be hashed.
+     */
+    public static PluginIndex.Entry readEntry(File file, PluginIndex.Entry previous) throws IOException {
+        long size = file.length();
+        long lastModified = file.lastModified();
+        String sha256 = PluginHelper.sha256(file);
+        if (previous != null && previous.size() == size && sha256.equals(previous.sha256())) {
+            return previous.withLastModified(lastModified);
+        }
+        return new PluginIndex.Entry(file.getName(), size, lastModified, sha256, PluginHelper.getDescriptor(file));
+    }
+}
@@ -0,0 +1,77 @@
+package ch.framedev;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the text shown in the plugin info area. Kept apart from the GUI so it can run headless.
+ */
+final class PluginInfoText {
+
+    private PluginInfoText() {
+    }
+
+    /**
+     * Build the plugin info text for the given plugin file
+     */
+    static String writePluginInfoFromFile(File pluginFile) {
+        PluginDescriptor descriptor = PluginHelper.getDescriptor(pluginFile);
+        if (descriptor == null) {
+            return "No plugin.yml found in " + pluginFile.getName();
+        }
+        return formatPluginInfo(descriptor);
+    }
+
+    /**
+     * Build the plugin info text for the given descriptor
+     */
+    @SuppressWarnings("unchecked")
+    static String formatPluginInfo(PluginDescriptor descriptor) {
+        String name = descriptor.getName();
+        String version = descriptor.getVersion();
+        String mainClass = descriptor.getMainClass();
+        String description = descriptor.getDescription();
+        Map<String, Object> commands = descriptor.getCommands();
+        List<String> authors = descriptor.getAuthors();
+        String apiVersion = descriptor.getApiVersion();
+        StringBuilder infoBuilder = new StringBuilder();
+        infoBuilder.append("Name: ").append(name != null ? name : "Unknown").append("\n");
+        infoBuilder.append("Version: ").append(version != null ? version : "Unknown").append("\n\n");
+        infoBuilder.append("Main Class: ").append(mainClass != null ? mainClass : "Unknown").append("\n\n");
+        infoBuilder.append("Description:\n").append(description != null ? description : "No description available").append("\n\n");
+        infoBuilder.append("API Version: ").append(apiVersion != null ? apiVersion : "Unknown").append("\n");
+        infoBuilder.append("\nCommands:\n");
+        if (commands != null && !commands.isEmpty()) {
+            for (String cmd : commands.keySet()) {
+                infoBuilder.append(" - ").append(cmd).append("\n");
+                if (commands.get(cmd) instanceof Map) {
+                    Map<String, Object> cmdDetails = (Map<String, Object>) commands.get(cmd);
+                    if (cmdDetails.containsKey("description")) {
+                        infoBuilder.append("     Description: ").append(cmdDetails.get("description")).append("\n");
+                    }
+                    if (cmdDetails.containsKey("usage")) {
+                        infoBuilder.append("     Usage: ").append(cmdDetails.get("usage")).append("\n");
+                    }
+                    if (cmdDetails.containsKey("aliases")) {
+                        infoBuilder.append("     Aliases: ").append(cmdDetails.get("aliases")).append("\n");
+                    }
+                    if (cmdDetails.containsKey("permission")) {
+                        infoBuilder.append("     Permission: ").append(cmdDetails.get("permission")).append("\n");
+                    }
+                }
+            }
+        } else {
+            infoBuilder.append("No commands available\n");
+        }
+        infoBuilder.append("\nAuthors:\n");
+        if (!authors.isEmpty()) {
+            for (String author : authors) {
+                infoBuilder.append(" - ").append(author).append("\n");
+            }
+        } else {
+            infoBuilder.append("No authors available\n");
+        }
+        return infoBuilder.toString();
+    }
+}
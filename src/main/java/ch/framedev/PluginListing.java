@@ -0,0 +1,135 @@
+package ch.framedev;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of one plugin folder listing, local or remote.
+ * Both the "available" and the "installed" views are derived from the same snapshot, so a refresh lists the folder once.
+ */
+public final class PluginListing {
+
+    /**
+     * A listed file. The last-modified time is in milliseconds.
+     */
+    public record FileInfo(String name, long size, long lastModified) {
+    }
+
+    private final Map<String, FileInfo> files;
+    private final long directoryModified;
+    private final long createdAt;
+
+    public PluginListing(Collection<FileInfo> files, long directoryModified) {
+        this(toMap(files), directoryModified, System.currentTimeMillis());
+    }
+
+    private PluginListing(Map<String, FileInfo> files, long directoryModified, long createdAt) {
+        this.files = Collections.unmodifiableMap(files);
+        this.directoryModified = directoryModified;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Lists a local folder.
+     *
+     * @param directory The plugin folder.
+     * @return The listing of all regular files in the folder, without hidden files such as staged installs.
+     */
+    public static PluginListing ofLocal(File directory) {
+        List<FileInfo> infos = new ArrayList<>();
+        File[] listed = directory.listFiles();
+        if (listed != null) {
+            for (File file : listed) {
+                if (!file.isDirectory() && !file.getName().startsWith(".")) infos.add(new FileInfo(file.getName(), file.length(), file.lastModified()));
+            }
+        }
+        return new PluginListing(infos, directory.lastModified());
+    }
+
+    /**
+     * @return All listed file names.
+     */
+    public List<String> getAvailable() {
+        return new ArrayList<>(files.keySet());
+    }
+
+    /**
+     * @return The names of enabled plugin jars.
+     */
+    public List<String> getInstalled() {
+        List<String> installed = new ArrayList<>();
+        for (String name : files.keySet()) {
+            if (name.endsWith(".jar")) installed.add(name);
+        }
+        return installed;
+    }
+
+    public FileInfo get(String name) {
+        return files.get(name);
+    }
+
+    public Collection<FileInfo> getFiles() {
+        return files.values();
+    }
+
+    /**
+     * @return The last-modified time of the folder itself when it was listed, in milliseconds.
+     */
+    public long getDirectoryModified() {
+        return directoryModified;
+    }
+
+    /**
+     * @param ttlMillis The time to live.
+     * @return True if this snapshot is younger than the given time to live.
+     */
+    public boolean isFresh(long ttlMillis) {
+        return System.currentTimeMillis() - createdAt < ttlMillis;
+    }
+
+    /**
+     * @return A copy of this snapshot that counts as freshly listed, e.g. after the folder mtime was found unchanged.
+     */
+    public PluginListing touched() {
+        return new PluginListing(files, directoryModified, System.currentTimeMillis());
+    }
+
+    // Mutations we made ourselves are applied to the snapshot instead of listing the folder again
+
+    /**
+     * @param directoryModified The folder mtime read after the mutation.
+     * @return A copy of this snapshot that revalidates against the given folder mtime.
+     */
+    public PluginListing withDirectoryModified(long directoryModified) {
+        return new PluginListing(files, directoryModified, createdAt);
+    }
+
+    public PluginListing withFile(FileInfo info) {
+        Map<String, FileInfo> copy = new LinkedHashMap<>(files);
+        copy.put(info.name(), info);
+        return new PluginListing(copy, directoryModified, createdAt);
+    }
+
+    public PluginListing without(String name) {
+        Map<String, FileInfo> copy = new LinkedHashMap<>(files);
+        copy.remove(name);
+        return new PluginListing(copy, directoryModified, createdAt);
+    }
+
+    public PluginListing renamed(String oldName, String newName) {
+        FileInfo old = files.get(oldName);
+        if (old == null) return this;
+        return without(oldName).withFile(new FileInfo(newName, old.size(), old.lastModified()));
+    }
+
+    private static Map<String, FileInfo> toMap(Collection<FileInfo> files) {
+        Map<String, FileInfo> map = new LinkedHashMap<>();
+        for (FileInfo info : files) map.put(info.name(), info);
+        return map;
+    }
+}
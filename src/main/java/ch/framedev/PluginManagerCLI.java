@@ -0,0 +1,557 @@
+package ch.framedev;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Headless command-line mode. Runs one command on one or more plugin folders (local, remote or saved fleet servers)
+ * in parallel and prints the result as JSON. Never touches AWT or Swing, so it works on servers without a display.
+ */
+public class PluginManagerCLI {
+
+    private static final String USAGE = """
+            Usage: <command> [arguments] [options]
+
+            Commands:
+              list                       List plugins with name, version and state
+              info <file>...             Show the descriptor of plugin files (in the targets, or local jar paths)
+              install <jar|url>...       Install jars or downloads (staged, verified, delta uploads where possible)
+              enable <file>...           Enable disabled plugin files
+              disable <file>...          Disable plugin jars
+              uninstall <file>...        Delete plugin files
+              sync <jar|dir>...          Install only the jars that differ from the target's copy
+              export                     Full inventory with descriptors and SHA-256
+              libraries                  Libraries shaded by more than one enabled plugin
+
+            Targets (repeatable; default: the last local plugin folder of the GUI):
+              --dir <path>               Local plugin folder
+              --remote user@host[:port]/path
+                                         Remote plugin folder over SFTP
+              --server <name>            Saved fleet server
+              --fleet                    All saved fleet servers
+
+            Options:
+              --key <file>               Private key for --remote targets
+              --password-env <var>       Environment variable holding the SSH password (default SPM_PASSWORD)
+              --parallel <n>             Targets worked on at the same time (default 8)
+              --dry-run                  sync: only report what would be installed
+              --pretty                   Indent the JSON output
+              --verbose                  Log progress to stderr
+            """;
+
+    private static final Logger LOGGER = Logger.getLogger(PluginManagerCLI.class.getName());
+
+    /**
+     * A plugin folder to work on: local when dir is set, remote otherwise.
+     */
+    private record Target(String label, File dir, Fleet.Target remote) {
+    }
+
+    /**
+     * Wrong usage; reported with exit code 2.
+     */
+    private static final class UsageException extends Exception {
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    private final String disabledSuffix;
+    private final List<Target> targets = new ArrayList<>();
+    private final List<String> arguments = new ArrayList<>();
+    private String command;
+    private String keyFile;
+    private String passwordEnv = "SPM_PASSWORD";
+    private int parallelism = 8;
+    private boolean dryRun;
+    private boolean pretty;
+    private boolean verbose;
+    private boolean targetsWereDefaulted;
+    private Fleet fleet;
+
+    public PluginManagerCLI(String disabledSuffix) {
+        this.disabledSuffix = disabledSuffix;
+    }
+
+    /**
+     * Runs a command line and prints the JSON result to standard output.
+     *
+     * @param args The arguments.
+     * @param out  Where to print the result.
+     * @return The exit code: 0 if all targets succeeded, 1 if any failed, 2 on wrong usage.
+     */
+    public int run(String[] args, PrintStream out) {
+        try {
+            parse(args);
+        } catch (UsageException e) {
+            System.err.println(e.getMessage());
+            System.err.println();
+            System.err.print(USAGE);
+            return 2;
+        }
+        if (!verbose) Logger.getLogger("").setLevel(Level.WARNING);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("command", command);
+        boolean ok;
+        try {
+            if (command.equals("info") && targetsWereDefaulted && allExistingFiles(arguments)) {
+                // plain jar paths: describe the files themselves
+                List<Object> files = new ArrayList<>();
+                for (String path : arguments) files.add(describe(new File(path), true));
+                result.put("files", files);
+                ok = true;
+            } else {
+                List<Map<String, Object>> outcomes = runTargets();
+                result.put("targets", outcomes);
+                ok = outcomes.stream().allMatch(outcome -> Boolean.TRUE.equals(outcome.get("ok")));
+            }
+        } catch (Exception e) {
+            result.put("error", String.valueOf(e.getMessage()));
+            ok = false;
+        } finally {
+            if (fleet != null) fleet.close();
+        }
+        result.put("ok", ok);
+        out.println(JsonWriter.write(result, pretty));
+        return ok ? 0 : 1;
+    }
+
+    private void parse(String[] args) throws UsageException {
+        if (args.length == 0 || args[0].equals("--help") || args[0].equals("help")) throw new UsageException("No command given");
+        command = args[0];
+        if (!List.of("list", "info", "install", "enable", "disable", "uninstall", "sync", "export", "libraries").contains(command)) {
+            throw new UsageException("Unknown command: " + command);
+        }
+        List<String> serverNames = new ArrayList<>();
+        List<String> remoteSpecs = new ArrayList<>();
+        boolean allServers = false;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--dir" -> {
+                    File dir = new File(value(args, ++i, arg));
+                    targets.add(new Target(dir.getAbsolutePath(), dir, null));
+                }
+                case "--remote" -> remoteSpecs.add(value(args, ++i, arg));
+                case "--server" -> serverNames.add(value(args, ++i, arg));
+                case "--fleet" -> allServers = true;
+                case "--key" -> keyFile = value(args, ++i, arg);
+                case "--password-env" -> passwordEnv = value(args, ++i, arg);
+                case "--parallel" -> {
+                    try {
+                        parallelism = Math.max(1, Integer.parseInt(value(args, ++i, arg)));
+                    } catch (NumberFormatException e) {
+                        throw new UsageException("--parallel needs a number");
+                    }
+                }
+                case "--dry-run" -> dryRun = true;
+                case "--pretty" -> pretty = true;
+                case "--verbose" -> verbose = true;
+                default -> {
+                    if (arg.startsWith("--")) throw new UsageException("Unknown option: " + arg);
+                    arguments.add(arg);
+                }
+            }
+        }
+        for (String spec : remoteSpecs) targets.add(new Target(spec, null, parseRemote(spec)));
+        if (allServers || !serverNames.isEmpty()) {
+            fleet = Fleet.getDefault();
+            for (Fleet.Target target : fleet.getTargets()) {
+                if (allServers || serverNames.remove(target.name())) targets.add(new Target(target.name(), null, target));
+            }
+            if (!serverNames.isEmpty()) throw new UsageException("Unknown fleet server(s): " + serverNames);
+        }
+        if (targets.isEmpty()) {
+            targetsWereDefaulted = true;
+            String dir = Main.config.getString("plugin-directory", null);
+            if (dir != null) targets.add(new Target(dir, new File(dir), null));
+            else if (!command.equals("info")) throw new UsageException("No target given and no plugin folder configured");
+        }
+        boolean needsArguments = !List.of("list", "export", "libraries").contains(command);
+        if (needsArguments && arguments.isEmpty()) throw new UsageException(command + " needs at least one argument");
+        if (!needsArguments && !arguments.isEmpty()) throw new UsageException(command + " takes no arguments");
+    }
+
+    private static String value(String[] args, int index, String option) throws UsageException {
+        if (index >= args.length) throw new UsageException(option + " needs a value");
+        return args[index];
+    }
+
+    private Fleet.Target parseRemote(String spec) throws UsageException {
+        int at = spec.indexOf('@');
+        int slash = spec.indexOf('/', Math.max(at, 0));
+        if (at <= 0 || slash < 0) throw new UsageException("Remote must look like user@host[:port]/path: " + spec);
+        String hostPort = spec.substring(at + 1, slash);
+        int colon = hostPort.indexOf(':');
+        int port = 22;
+        if (colon >= 0) {
+            try {
+                port = Integer.parseInt(hostPort.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                throw new UsageException("Invalid port in " + spec);
+            }
+            hostPort = hostPort.substring(0, colon);
+        }
+        return new Fleet.Target(spec, hostPort, port, spec.substring(0, at), spec.substring(slash), keyFile);
+    }
+
+    private static boolean allExistingFiles(List<String> paths) {
+        return paths.stream().allMatch(path -> new File(path).isFile());
+    }
+
+    @FunctionalInterface
+    private interface TargetCall {
+        Object call(Target target, RemoteHelper helper) throws Exception;
+    }
+
+    private List<Map<String, Object>> runTargets() throws Exception {
+        List<File> sources = command.equals("install") || command.equals("sync") ? resolveSources() : List.of();
+        TargetCall call = switch (command) {
+            case "list" -> (target, helper) -> list(target, helper, false);
+            case "export" -> (target, helper) -> list(target, helper, true);
+            case "info" -> this::info;
+            case "libraries" -> this::libraries;
+            case "install" -> (target, helper) -> install(target, helper, sources);
+            case "sync" -> (target, helper) -> sync(target, helper, sources);
+            default -> this::changeState;
+        };
+        if (fleet == null && targets.stream().anyMatch(target -> target.remote() != null)) {
+            fleet = new Fleet(null);
+        }
+        if (fleet != null) {
+            String password = System.getenv(passwordEnv);
+            fleet.setPasswordProvider(target -> password);
+        }
+
+        Semaphore permits = new Semaphore(parallelism);
+        List<Future<Map<String, Object>>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Target target : targets) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    long start = System.nanoTime();
+                    Map<String, Object> outcome = new LinkedHashMap<>();
+                    outcome.put("target", target.label());
+                    try {
+                        RemoteHelper helper = target.remote() != null ? fleet.connect(target.remote()) : null;
+                        if (target.dir() != null && !target.dir().isDirectory()) throw new IOException("Not a directory: " + target.dir());
+                        Object value = call.call(target, helper);
+                        outcome.put("ok", !(value instanceof Map<?, ?> map && Boolean.FALSE.equals(map.get("ok"))));
+                        outcome.put("result", value);
+                    } catch (Exception e) {
+                        LOGGER.log(Level.FINE, target.label() + " failed", e);
+                        outcome.put("ok", false);
+                        outcome.put("error", String.valueOf(e.getMessage()));
+                    } finally {
+                        permits.release();
+                    }
+                    outcome.put("millis", (System.nanoTime() - start) / 1_000_000);
+                    return outcome;
+                }));
+            }
+            List<Map<String, Object>> outcomes = new ArrayList<>();
+            for (Future<Map<String, Object>> future : futures) outcomes.add(future.get());
+            return outcomes;
+        }
+    }
+
+    // Local paths as given (directories expand to their jars); URLs are downloaded once for all targets
+    private List<File> resolveSources() throws Exception {
+        List<File> files = new ArrayList<>();
+        ArtifactCache cache = null;
+        for (String argument : arguments) {
+            if (argument.startsWith("http://") || argument.startsWith("https://")) {
+                if (cache == null) cache = ArtifactCache.getDefault();
+                ArtifactCache.Artifact artifact = cache.fetch(new HttpDownloader(), new URI(argument), null, () -> false);
+                // a named link so the install keeps the file name from the server
+                File named = new File(Files.createTempDirectory("spm").toFile(), artifact.fileName());
+                named.deleteOnExit();
+                named.getParentFile().deleteOnExit();
+                try (InputStream in = Files.newInputStream(artifact.file().toPath())) {
+                    Files.copy(in, named.toPath());
+                }
+                files.add(named);
+                continue;
+            }
+            File file = new File(argument);
+            if (file.isDirectory()) {
+                File[] jars = file.listFiles((dir, name) -> name.endsWith(".jar") && !name.startsWith("."));
+                if (jars != null) files.addAll(List.of(jars));
+            } else if (file.isFile()) {
+                files.add(file);
+            } else {
+                throw new IOException("No such file: " + argument);
+            }
+        }
+        return files;
+    }
+
+    private Object list(Target target, RemoteHelper helper, boolean full) throws Exception {
+        if (helper != null) {
+            try {
+                return list(helper.scanFolder(target.remote().pluginPath(), disabledSuffix, full, false), full);
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "No remote scan on " + target.label() + ", reading descriptors one by one", e);
+            }
+        }
+        List<String> names = new ArrayList<>();
+        PluginListing listing = helper != null ? helper.getListing(target.remote().pluginPath(), true) : PluginListing.ofLocal(target.dir());
+        for (PluginListing.FileInfo info : listing.getFiles()) {
+            if (PluginIndexer.isPluginFile(info.name(), disabledSuffix)) names.add(info.name());
+        }
+        names.sort(String.CASE_INSENSITIVE_ORDER);
+        Map<String, String> remoteHashes = full && helper != null ? helper.remoteSha256(target.remote().pluginPath(), names) : Map.of();
+
+        List<Future<Map<String, Object>>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String name : names) {
+                PluginListing.FileInfo info = listing.get(name);
+                futures.add(executor.submit(() -> {
+                    Map<String, Object> plugin = new LinkedHashMap<>();
+                    plugin.put("file", name);
+                    plugin.put("enabled", name.endsWith(".jar"));
+                    plugin.put("size", info.size());
+                    plugin.put("lastModified", info.lastModified());
+                    PluginDescriptor descriptor = null;
+                    try {
+                        descriptor = helper != null
+                                ? helper.readDescriptor(RemoteHelper.resolve(target.remote().pluginPath(), name))
+                                : PluginHelper.getDescriptor(new File(target.dir(), name));
+                    } catch (Exception e) {
+                        plugin.put("error", String.valueOf(e.getMessage()));
+                    }
+                    plugin.put("name", descriptor != null ? descriptor.getName() : null);
+                    plugin.put("version", descriptor != null ? descriptor.getVersion() : null);
+                    if (full) {
+                        plugin.put("sha256", helper != null ? remoteHashes.get(name) : PluginHelper.sha256(new File(target.dir(), name)));
+                        plugin.put("descriptor", descriptor != null ? descriptor.toMap() : null);
+                    }
+                    return plugin;
+                }));
+            }
+            List<Object> plugins = new ArrayList<>();
+            for (Future<Map<String, Object>> future : futures) plugins.add(future.get());
+            return plugins;
+        }
+    }
+
+    // Remote folders scanned in one round trip already carry everything list and export show
+    private static Object list(PluginIndex index, boolean full) {
+        List<PluginIndex.Entry> entries = new ArrayList<>(index.entries());
+        entries.sort((a, b) -> String.CASE_INSENSITIVE_ORDER.compare(a.fileName(), b.fileName()));
+        List<Object> plugins = new ArrayList<>();
+        for (PluginIndex.Entry entry : entries) {
+            Map<String, Object> plugin = new LinkedHashMap<>();
+            plugin.put("file", entry.fileName());
+            plugin.put("enabled", entry.fileName().endsWith(".jar"));
+            plugin.put("size", entry.size());
+            plugin.put("lastModified", entry.lastModified());
+            plugin.put("name", entry.getName());
+            plugin.put("version", entry.getVersion());
+            if (full) {
+                plugin.put("sha256", entry.sha256());
+                plugin.put("descriptor", entry.descriptor() != null ? entry.descriptor().toMap() : null);
+            }
+            plugins.add(plugin);
+        }
+        return plugins;
+    }
+
+    private Object libraries(Target target, RemoteHelper helper) throws Exception {
+        ShadedLibraryAnalyzer analyzer = new ShadedLibraryAnalyzer(Main.config.getInt("library-package-depth", 3));
+        ShadedLibraryAnalyzer.Report report = helper != null
+                ? analyzer.analyzeRemote(helper, target.remote().pluginPath(), null, () -> false)
+                : analyzer.analyzeLocal(target.dir(), null, () -> false);
+        List<Object> libraries = new ArrayList<>();
+        for (ShadedLibraryAnalyzer.Library library : report.libraries()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("library", library.name());
+            entry.put("classes", library.classes());
+            entry.put("versions", library.versions());
+            entry.put("wastedBytes", library.wastedBytes());
+            List<Object> copies = new ArrayList<>();
+            for (ShadedLibraryAnalyzer.Copy copy : library.copies()) {
+                copies.add(Map.of("file", copy.fileName(), "classes", copy.classes(), "bytes", copy.bytes()));
+            }
+            entry.put("plugins", copies);
+            libraries.add(entry);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("jars", report.jars());
+        result.put("classes", report.classes());
+        result.put("classBytes", report.classBytes());
+        result.put("wastedBytes", report.getWastedBytes());
+        result.put("libraries", libraries);
+        result.put("errors", report.errors());
+        return result;
+    }
+
+    private Object info(Target target, RemoteHelper helper) throws Exception {
+        List<Object> files = new ArrayList<>();
+        for (String name : arguments) {
+            if (helper != null) {
+                PluginDescriptor descriptor = helper.readDescriptor(RemoteHelper.resolve(target.remote().pluginPath(), name));
+                Map<String, Object> file = new LinkedHashMap<>();
+                file.put("file", name);
+                file.put("descriptor", descriptor != null ? descriptor.toMap() : null);
+                files.add(file);
+            } else {
+                files.add(describe(new File(target.dir(), name), false));
+            }
+        }
+        return files;
+    }
+
+    private static Map<String, Object> describe(File file, boolean withPath) throws IOException {
+        if (!file.isFile()) throw new IOException("No such file: " + file.getName());
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("file", withPath ? file.getPath() : file.getName());
+        result.put("size", file.length());
+        result.put("sha256", PluginHelper.sha256(file));
+        PluginDescriptor descriptor = PluginHelper.getDescriptor(file);
+        result.put("descriptor", descriptor != null ? descriptor.toMap() : null);
+        return result;
+    }
+
+    private Object install(Target target, RemoteHelper helper, List<File> sources) throws Exception {
+        if (helper != null) {
+            List<TransferEngine.Item> items = new ArrayList<>();
+            for (File file : sources) items.add(TransferEngine.Item.upload(file, target.remote().pluginPath()));
+            return batchResult(transferEngine(helper).run(items, null, () -> false));
+        }
+        List<Object> files = new ArrayList<>();
+        for (File source : sources) {
+            try (InputStream in = Files.newInputStream(source.toPath())) {
+                StagedFiles.copy(in, new File(target.dir(), source.getName()), source.length(), 256 * 1024, null, () -> false);
+            }
+            files.add(source.getName());
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("installed", files);
+        return result;
+    }
+
+    private Object sync(Target target, RemoteHelper helper, List<File> sources) throws Exception {
+        List<String> changed = new ArrayList<>();
+        List<String> unchanged = new ArrayList<>();
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (helper != null) {
+            RemoteSync sync = new RemoteSync(helper);
+            RemoteSync.Plan plan = sync.plan(sources, target.remote().pluginPath());
+            plan.changed().forEach(file -> changed.add(file.getName()));
+            plan.unchanged().forEach(file -> unchanged.add(file.getName()));
+            if (!dryRun && !plan.changed().isEmpty()) {
+                result.put("transfer", batchResult(sync.run(plan, transferEngine(helper), null, () -> false).batch()));
+            }
+        } else {
+            List<File> toCopy = new ArrayList<>();
+            for (File source : sources) {
+                File existing = new File(target.dir(), source.getName());
+                if (existing.isFile() && existing.length() == source.length()
+                        && PluginHelper.sha256(existing).equals(PluginHelper.sha256(source))) {
+                    unchanged.add(source.getName());
+                } else {
+                    changed.add(source.getName());
+                    toCopy.add(source);
+                }
+            }
+            if (!dryRun) install(target, null, toCopy);
+        }
+        result.put(dryRun ? "wouldInstall" : "installed", changed);
+        result.put("unchanged", unchanged);
+        if (result.get("transfer") instanceof Map<?, ?> transfer) result.put("ok", transfer.get("ok"));
+        return result;
+    }
+
+    // enable, disable and uninstall; each file is reported on its own
+    private Object changeState(Target target, RemoteHelper helper) {
+        List<Object> files = new ArrayList<>();
+        boolean ok = true;
+        for (String name : arguments) {
+            Map<String, Object> file = new LinkedHashMap<>();
+            file.put("file", name);
+            try {
+                if (helper != null) {
+                    String path = target.remote().pluginPath();
+                    switch (command) {
+                        case "enable" -> helper.enablePlugin(path, name, disabledSuffix);
+                        case "disable" -> helper.disablePlugin(path, name, disabledSuffix);
+                        default -> helper.uninstallPlugin(path, name);
+                    }
+                } else {
+                    changeLocalState(target.dir(), name);
+                }
+                file.put("ok", true);
+            } catch (Exception e) {
+                ok = false;
+                file.put("ok", false);
+                file.put("error", String.valueOf(e.getMessage()));
+            }
+            files.add(file);
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("ok", ok);
+        result.put("files", files);
+        return result;
+    }
+
+    private void changeLocalState(File dir, String name) throws IOException {
+        File file = new File(dir, name);
+        if (!file.isFile()) throw new IOException("No such file: " + name);
+        switch (command) {
+            case "enable" -> {
+                if (!name.endsWith(disabledSuffix)) throw new IllegalArgumentException("File does not use disabled suffix");
+                rename(file, new File(dir, name.substring(0, name.length() - disabledSuffix.length())));
+            }
+            case "disable" -> {
+                if (!name.endsWith(".jar")) throw new IllegalArgumentException("Expected .jar file");
+                rename(file, new File(dir, name + disabledSuffix));
+            }
+            default -> Files.delete(file.toPath());
+        }
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        if (!from.renameTo(to)) throw new IOException("Could not rename " + from.getName() + " to " + to.getName());
+    }
+
+    private static TransferEngine transferEngine(RemoteHelper helper) {
+        return new TransferEngine(helper)
+                .setBufferSize(Main.config.getInt("transfer-buffer-kb", 256) * 1024)
+                .setBulkRequests(Main.config.getInt("transfer-bulk-requests", 32))
+                .setDeltaUploads(Main.config.getBoolean("delta-uploads", true));
+    }
+
+    private static Map<String, Object> batchResult(TransferEngine.BatchResult batch) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        List<Object> files = new ArrayList<>();
+        for (TransferEngine.FileResult file : batch.files()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("file", file.item().getName());
+            entry.put("ok", file.isSuccess());
+            entry.put("bytes", file.bytes());
+            if (!file.isSuccess()) entry.put("error", String.valueOf(file.error().getMessage()));
+            files.add(entry);
+        }
+        result.put("ok", batch.getFailures().isEmpty());
+        result.put("files", files);
+        result.put("bytes", batch.bytes());
+        result.put("millis", batch.millis());
+        return result;
+    }
+}
@@ -1,17 +1,40 @@
 package ch.framedev;
 
+import ch.framedev.TaskExecutor.Task;
+
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.TitledBorder;
 import javax.swing.event.ListSelectionEvent;
+import com.jcraft.jsch.SftpProgressMonitor;
+
 import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.security.MessageDigest;
 import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.ZipException;
 
 public class PluginManagerGUI extends JFrame {
 
@@ -43,6 +66,37 @@ public class PluginManagerGUI extends JFrame {
     // Plugin info display area
     private final JTextArea infoArea;
 
+    // Background work (listing, transfers, remote calls) runs here, never on the event thread
+    private final TaskExecutor taskExecutor = new TaskExecutor();
+    // Downloaded jars by content hash; null if disabled with download-cache-mb: 0
+    private final ArtifactCache artifactCache = Main.config.getInt("download-cache-mb", 512) > 0 ? ArtifactCache.getDefault() : null;
+    private final JLabel statusLabel;
+    private final JProgressBar progressBar;
+    private final JButton cancelTaskButton;
+    private Task<?> infoTask;
+
+    // Metadata of the local plugin folder, filled in the background after each listing
+    private final PluginIndex pluginIndex = new PluginIndex();
+    private final PluginIndexStore pluginIndexStore = PluginIndexStore.getDefault();
+    private Task<?> indexTask;
+    // Metadata of the remote folder from the helper's last scan; it follows our own renames and deletions
+    private PluginIndex remoteIndex = new PluginIndex();
+    // Enabled plugins of the current folder, local or remote, kept in step with the index
+    private final DependencyGraph dependencyGraph = new DependencyGraph();
+    // Startup time per plugin from the server's latest.log; each profiler only reads what was appended since
+    private StartupProfiler localProfiler = new StartupProfiler();
+    private StartupProfiler remoteProfiler = new StartupProfiler();
+    // The remote log is read automatically once per connection, later only from the Tools menu
+    private boolean remoteStartupRead;
+    private Map<String, Long> startupMillis = Map.of();
+    private Map<String, Integer> startupRanks = Map.of();
+    // Main thread blocking calls per jar, cached by content hash
+    private final BlockingCallScanner blockingCallScanner = BlockingCallScanner.getDefault();
+    private boolean sortByPluginName = false;
+
+    // Applies create/delete/rename events of the local folder to the lists without rescanning it
+    private PluginFolderWatcher folderWatcher;
+
     public PluginManagerGUI() {
         setTitle("Spigot Plugin Manager");
         setSize(900, 600);
@@ -58,17 +112,18 @@ public class PluginManagerGUI extends JFrame {
 
         this.availablePluginsList = new JList<>(availableModel);
         this.installedPluginsList = new JList<>(installedModel);
-        availablePluginsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        installedPluginsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        availablePluginsList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        installedPluginsList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        availablePluginsList.setCellRenderer(new PluginListCellRenderer());
+        installedPluginsList.setCellRenderer(new PluginListCellRenderer());
 
         if (Main.config.containsKey("plugin-directory") && Main.config.getBoolean("start-with-latest-folder", true)) {
             this.pluginDirectory = new File(Main.config.getString("plugin-directory"));
             if (!this.pluginDirectory.isDirectory()) {
+                this.pluginDirectory = null;
                 this.selectedDirLabel = new JLabel("No directory selected", SwingConstants.CENTER);
             } else {
                 this.selectedDirLabel = new JLabel("Selected Directory: " + this.pluginDirectory.getAbsolutePath(), SwingConstants.CENTER);
-                loadAvailablePlugins();
-                loadInstalledPlugins();
             }
         } else {
             this.selectedDirLabel = new JLabel("No directory selected", SwingConstants.CENTER);
@@ -122,18 +177,48 @@ public class PluginManagerGUI extends JFrame {
         buttonBar.add(uninstallButton);
         buttonBar.add(refreshButton);
 
+        // Status bar for background tasks
+        statusLabel = new JLabel(" ");
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setVisible(false);
+        cancelTaskButton = new JButton("Cancel");
+        cancelTaskButton.setVisible(false);
+        cancelTaskButton.addActionListener(e -> taskExecutor.cancelAll());
+        JPanel statusBar = new JPanel(new BorderLayout(8, 0));
+        statusBar.setBorder(new EmptyBorder(2, 8, 4, 8));
+        statusBar.add(statusLabel, BorderLayout.CENTER);
+        JPanel statusRight = new JPanel(new FlowLayout(FlowLayout.RIGHT, 4, 0));
+        statusRight.add(progressBar);
+        statusRight.add(cancelTaskButton);
+        statusBar.add(statusRight, BorderLayout.EAST);
+        taskExecutor.addListener(task -> updateStatusBar());
+
+        JPanel bottomPanel = new JPanel(new BorderLayout());
+        bottomPanel.add(buttonBar, BorderLayout.CENTER);
+        bottomPanel.add(statusBar, BorderLayout.SOUTH);
+
         // Root layout
         setLayout(new BorderLayout());
         add(topPanel, BorderLayout.NORTH);
         add(mainSplit, BorderLayout.CENTER);
-        add(buttonBar, BorderLayout.SOUTH);
+        add(bottomPanel, BorderLayout.SOUTH);
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                taskExecutor.shutdown();
+                stopWatching();
+                if (remoteHelper != null) remoteHelper.disconnect();
+            }
+        });
 
         // Selection listeners to update button state
         availablePluginsList.addListSelectionListener(this::onSelectionChanged);
         installedPluginsList.addListSelectionListener(this::onSelectionChanged);
 
-        // Initial button state update
+        // Initial button state update and listing
         updateButtons();
+        refreshPlugins();
 
         // First run welcome message and setup
         if (!Main.config.containsKey("first-run")) {
@@ -154,273 +239,351 @@ public class PluginManagerGUI extends JFrame {
     }
 
     /**
-     * Update the plugin info area based on selection
+     * Update the plugin info area based on selection.
+     * The plugin file is read in the background; a newer selection cancels the previous lookup.
      */
     private void updatePluginInfo() {
+        if (infoTask != null) {
+            infoTask.cancel();
+            infoTask = null;
+        }
         String selected = availablePluginsList.getSelectedValue();
         if (selected == null) {
             infoArea.setText("");
             return;
         }
 
-        try {
-            if (remoteMode) {
-                if (remoteHelper == null || !remoteHelper.isConnected() || remotePluginPath == null) {
-                    infoArea.setText("Remote not connected");
-                    return;
-                }
-                // download temporarily
-                File temp = Files.createTempFile("plugin_", ".jar").toFile();
-                try {
-                    String remotePath = remotePluginPath.endsWith("/") ? remotePluginPath + selected : remotePluginPath + "/" + selected;
-                    remoteHelper.downloadFile(remotePath, temp);
-                    writePluginInfoFromFile(temp);
-                } finally {
-                    if(!temp.delete()) {
-                        temp.deleteOnExit();
-                    }
-                }
-            } else {
-                if (pluginDirectory == null) {
-                    infoArea.setText("");
-                    return;
-                }
-                File pluginFile = new File(pluginDirectory, selected);
-                if (pluginFile.exists() && (selected.endsWith(".jar") || selected.endsWith(DISABLED_SUFFIX))) {
-                    writePluginInfoFromFile(pluginFile);
-                } else {
-                    infoArea.setText("Not a plugin file");
-                }
+        if (remoteMode) {
+            if (remoteHelper == null || !remoteHelper.isConnected() || remotePluginPath == null) {
+                infoArea.setText("Remote not connected");
+                return;
             }
-        } catch (Exception ex) {
-            infoArea.setText("Failed to read plugin info: " + ex.getMessage());
-        }
-    }
-
-    /**
-     * Write plugin info to the info area from the given plugin file
-     */
-    @SuppressWarnings("unchecked")
-    private void writePluginInfoFromFile(File pluginFile) {
-        String name = PluginHelper.getPluginName(pluginFile);
-        String version = PluginHelper.getPluginVersion(pluginFile);
-        String mainClass = PluginHelper.getPluginMainClass(pluginFile);
-        String description = PluginHelper.getPluginDescription(pluginFile);
-        Map<String, Object> commands = PluginHelper.getCommands(pluginFile);
-        List<String> authors = PluginHelper.getPluginAuthors(pluginFile);
-        double apiVersion = PluginHelper.getPluginAPIVersion(pluginFile);
-        StringBuilder infoBuilder = new StringBuilder();
-        infoBuilder.append("Name: ").append(name != null ? name : "Unknown").append("\n");
-        infoBuilder.append("Version: ").append(version != null ? version : "Unknown").append("\n\n");
-        infoBuilder.append("Main Class: ").append(mainClass != null ? mainClass : "Unknown").append("\n\n");
-        infoBuilder.append("Description:\n").append(description != null ? description : "No description available").append("\n\n");
-        infoBuilder.append("API Version: ").append(apiVersion != 0.0 ? apiVersion : "Unknown").append("\n");
-        infoBuilder.append("\nCommands:\n");
-        if (commands != null && !commands.isEmpty()) {
-            for (String cmd : commands.keySet()) {
-                infoBuilder.append(" - ").append(cmd).append("\n");
-                if (commands.get(cmd) instanceof Map) {
-                    Map<String, Object> cmdDetails = (Map<String, Object>) commands.get(cmd);
-                    if (cmdDetails.containsKey("description")) {
-                        infoBuilder.append("     Description: ").append(cmdDetails.get("description")).append("\n");
-                    }
-                    if (cmdDetails.containsKey("usage")) {
-                        infoBuilder.append("     Usage: ").append(cmdDetails.get("usage")).append("\n");
-                    }
-                    if (cmdDetails.containsKey("aliases")) {
-                        infoBuilder.append("     Aliases: ").append(cmdDetails.get("aliases")).append("\n");
-                    }
-                    if (cmdDetails.containsKey("permission")) {
-                        infoBuilder.append("     Permission: ").append(cmdDetails.get("permission")).append("\n");
+            RemoteHelper helper = remoteHelper;
+            String remotePath = remotePluginPath.endsWith("/") ? remotePluginPath + selected : remotePluginPath + "/" + selected;
+            infoArea.setText("Loading plugin info...");
+            infoTask = taskExecutor.submit("Reading " + selected, task -> {
+                try {
+                    PluginDescriptor descriptor = helper.readDescriptor(remotePath);
+                    if (descriptor == null) return "No plugin.yml found in " + selected;
+                    PluginIndex.Entry entry = remoteIndex.get(selected);
+                    BlockingCallScanner.JarReport report = entry != null ? blockingCallScanner.getCached(entry.sha256()) : null;
+                    return PluginInfoText.formatPluginInfo(descriptor) + "\n" + (report != null ? report.toText()
+                            : "Main thread blocking calls: not scanned yet (Tools > Scan for Blocking Calls)\n");
+                } catch (ZipException ex) {
+                    // unusual archive layout, fall back to reading the whole jar
+                    task.checkCancelled();
+                    File temp = Files.createTempFile("plugin_", ".jar").toFile();
+                    try {
+                        helper.downloadFile(remotePath, temp, monitorFor(task));
+                        return PluginInfoText.writePluginInfoFromFile(temp);
+                    } finally {
+                        if (!temp.delete()) {
+                            temp.deleteOnExit();
+                        }
                     }
                 }
-            }
+            }, infoArea::setText, ex -> infoArea.setText("Failed to read plugin info: " + ex.getMessage()));
         } else {
-            infoBuilder.append("No commands available\n");
-        }
-        infoBuilder.append("\nAuthors:\n");
-        if (!authors.isEmpty()) {
-            for (String author : authors) {
-                infoBuilder.append(" - ").append(author).append("\n");
+            if (pluginDirectory == null) {
+                infoArea.setText("");
+                return;
             }
-        } else {
-            infoBuilder.append("No authors available\n");
+            File pluginFile = new File(pluginDirectory, selected);
+            if (!selected.endsWith(".jar") && !selected.endsWith(DISABLED_SUFFIX)) {
+                infoArea.setText("Not a plugin file");
+                return;
+            }
+            infoTask = taskExecutor.submit("Reading " + selected, task -> {
+                if (!pluginFile.exists()) return "Not a plugin file";
+                String info = PluginInfoText.writePluginInfoFromFile(pluginFile);
+                PluginIndex.Entry entry = pluginIndex.get(selected);
+                BlockingCallScanner.JarReport report = entry != null ? blockingCallScanner.getCached(entry.sha256()) : null;
+                // the folder scan after indexing fills the cache and refreshes this text
+                return info + "\n" + (report != null ? report.toText() : "Main thread blocking calls: not scanned yet\n");
+            }, infoArea::setText, ex -> infoArea.setText("Failed to read plugin info: " + ex.getMessage()));
         }
-        infoArea.setText(infoBuilder.toString());
     }
 
     /**
      * Update button states based on current selection
      */
     private void updateButtons() {
-        String avail = (availablePluginsList != null) ? availablePluginsList.getSelectedValue() : null;
-        String inst = (installedPluginsList != null) ? installedPluginsList.getSelectedValue() : null;
+        List<String> avail = (availablePluginsList != null) ? availablePluginsList.getSelectedValuesList() : List.of();
+        List<String> inst = (installedPluginsList != null) ? installedPluginsList.getSelectedValuesList() : List.of();
 
-        if (enableButton != null) enableButton.setEnabled(avail != null && avail.endsWith(DISABLED_SUFFIX));
-        if (disableButton != null) disableButton.setEnabled(avail != null && avail.endsWith(".jar"));
-        if (uninstallButton != null) uninstallButton.setEnabled(inst != null);
+        if (enableButton != null) enableButton.setEnabled(avail.stream().anyMatch(name -> name.endsWith(DISABLED_SUFFIX)));
+        if (disableButton != null) disableButton.setEnabled(avail.stream().anyMatch(name -> name.endsWith(".jar")));
+        if (uninstallButton != null) uninstallButton.setEnabled(!inst.isEmpty());
     }
 
     /**
-     * Setup action listeners for buttons
+     * Setup action listeners for buttons.
+     * Validation and dialogs stay on the event thread; file and remote I/O is handed to the task executor.
      */
     private void setupActions() {
         installButton.addActionListener(e -> {
             JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setMultiSelectionEnabled(true);
             int returnValue = fileChooser.showOpenDialog(this);
             if (returnValue == JFileChooser.APPROVE_OPTION) {
-                File selectedFile = fileChooser.getSelectedFile();
-                if (selectedFile != null) {
-                    try {
-                        if (remoteMode) {
-                            if (remoteHelper == null || !remoteHelper.isConnected()) {
-                                JOptionPane.showMessageDialog(this, "Not connected to remote.", "Error", JOptionPane.ERROR_MESSAGE);
-                                return;
-                            }
-                            remoteHelper.installPlugin(selectedFile, remotePluginPath);
-                        } else {
-                            if (pluginDirectory == null) {
-                                JOptionPane.showMessageDialog(this, "No local plugin directory selected.", "Error", JOptionPane.ERROR_MESSAGE);
-                                return;
-                            }
-                            File destFile = new File(pluginDirectory, selectedFile.getName());
-                            Files.copy(selectedFile.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                        }
-                        loadAvailablePlugins();
-                        loadInstalledPlugins();
-                        JOptionPane.showMessageDialog(this, "Plugin installed: " + selectedFile.getName());
-                    } catch (Exception ex) {
-                        JOptionPane.showMessageDialog(this, "Failed to install plugin: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                    }
-                }
-            }
-        });
-
-        installFromURLButton.addActionListener(e -> {
-            String url = JOptionPane.showInputDialog(this, "Enter Plugin URL:");
-            if (url != null && !url.trim().isEmpty()) {
-                try {
-                    // download locally first
-                    File temp = Files.createTempFile("download_plugin_", ".jar").toFile();
-                    try (InputStream in = new URI(url).toURL().openStream()) {
-                        Files.copy(in, temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                    }
+                List<File> selectedFiles = List.of(fileChooser.getSelectedFiles());
+                if (!selectedFiles.isEmpty()) {
+                    String title = selectedFiles.size() == 1 ? "Installing " + selectedFiles.get(0).getName() : "Installing " + selectedFiles.size() + " plugins";
+                    String done = selectedFiles.size() == 1 ? "Plugin installed: " + selectedFiles.get(0).getName() : selectedFiles.size() + " plugins installed";
                     if (remoteMode) {
                         if (remoteHelper == null || !remoteHelper.isConnected()) {
                             JOptionPane.showMessageDialog(this, "Not connected to remote.", "Error", JOptionPane.ERROR_MESSAGE);
-                            if(!temp.delete()) {
-                                temp.deleteOnExit();
-                            }
                             return;
                         }
-                        remoteHelper.installPlugin(temp, remotePluginPath);
+                        RemoteHelper helper = remoteHelper;
+                        String path = remotePluginPath;
+                        taskExecutor.<TransferEngine.BatchResult>submit(title, task -> {
+                            List<TransferEngine.Item> items = new ArrayList<>();
+                            for (File file : selectedFiles) items.add(TransferEngine.Item.upload(file, path));
+                            return newTransferEngine(helper).run(items,
+                                    (bytes, total, files, fileCount) -> task.setProgress(bytes, total), task::isCancelled);
+                        }, batch -> onTransferDone(done, "Failed to install plugin", batch),
+                                ex -> showError("Failed to install plugin: " + ex.getMessage()));
                     } else {
                         if (pluginDirectory == null) {
                             JOptionPane.showMessageDialog(this, "No local plugin directory selected.", "Error", JOptionPane.ERROR_MESSAGE);
-                            if(!temp.delete()) {
-                                temp.deleteOnExit();
-                            }
                             return;
                         }
-                        String fileName = url.substring(url.lastIndexOf('/') + 1);
-                        File destFile = new File(pluginDirectory, fileName);
-                        Files.copy(temp.toPath(), destFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                    }
-                    if(!temp.delete()) {
-                        temp.deleteOnExit();
+                        File directory = pluginDirectory;
+                        long totalBytes = selectedFiles.stream().mapToLong(File::length).sum();
+                        taskExecutor.submit(title, task -> {
+                            long[] copied = {0};
+                            for (File selectedFile : selectedFiles) {
+                                File destFile = new File(directory, selectedFile.getName());
+                                // staged: the server never sees a half-copied jar
+                                try (InputStream in = Files.newInputStream(selectedFile.toPath())) {
+                                    StagedFiles.copy(in, destFile, selectedFile.length(), 256 * 1024, n -> {
+                                        copied[0] += n;
+                                        task.setProgress(copied[0], totalBytes);
+                                    }, task::isCancelled);
+                                }
+                            }
+                            return null;
+                        }, result -> onActionDone(done),
+                                ex -> showError("Failed to install plugin: " + ex.getMessage()));
                     }
-                    loadAvailablePlugins();
-                    loadInstalledPlugins();
-                    JOptionPane.showMessageDialog(this, "Plugin installed from URL");
-                } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(this, "Failed to install plugin from URL: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
                 }
             }
         });
 
-        enableButton.addActionListener(e -> {
-            String selected = availablePluginsList.getSelectedValue();
-            if (selected != null) {
-                try {
-                    if (remoteMode) {
-                        if (remoteHelper == null || !remoteHelper.isConnected()) {
-                            JOptionPane.showMessageDialog(this, "Not connected to remote.", "Error", JOptionPane.ERROR_MESSAGE);
-                            return;
+        installFromURLButton.addActionListener(e -> {
+            String url = JOptionPane.showInputDialog(this, "Enter Plugin URL:");
+            if (url != null && !url.trim().isEmpty()) {
+                if (remoteMode && (remoteHelper == null || !remoteHelper.isConnected())) {
+                    JOptionPane.showMessageDialog(this, "Not connected to remote.", "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                if (!remoteMode && pluginDirectory == null) {
+                    JOptionPane.showMessageDialog(this, "No local plugin directory selected.", "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                boolean remote = remoteMode;
+                RemoteHelper helper = remoteHelper;
+                String path = remotePluginPath;
+                File directory = pluginDirectory;
+                taskExecutor.<String>submit("Downloading " + url, task -> {
+                    HttpDownloader downloader = new HttpDownloader()
+                            .setBufferSize(Main.config.getInt("transfer-buffer-kb", 256) * 1024)
+                            .setIdleTimeout(Duration.ofSeconds(Main.config.getInt("download-idle-timeout-seconds", 30)));
+                    URI uri = new URI(url.trim());
+                    HttpDownloader.ProgressListener progress = task::setProgress;
+                    if (artifactCache != null) {
+                        // unchanged artifacts are revalidated and served from disk
+                        ArtifactCache.Artifact artifact = artifactCache.fetch(downloader, uri, progress, task::isCancelled);
+                        task.checkCancelled();
+                        if (remote) {
+                            helper.uploadFile(artifact.file(), path, artifact.fileName(), monitorFor(task));
+                        } else {
+                            // the blob was hashed while downloading, so it is installed without reading it again
+                            StagedFiles.install(artifact.file(), new File(directory, artifact.fileName()), artifact.size());
                         }
-                        if (!selected.endsWith(DISABLED_SUFFIX)) return;
-                        remoteHelper.enablePlugin(remotePluginPath, selected, DISABLED_SUFFIX);
-                    } else {
-                        if (pluginDirectory == null) return;
-                        if (!selected.endsWith(DISABLED_SUFFIX)) return;
-                        File disabledFile = new File(pluginDirectory, selected);
-                        String restoredName = selected.replaceFirst(DISABLED_SUFFIX + "$", "");
-                        File pluginFile = new File(pluginDirectory, restoredName);
-                        if (!disabledFile.renameTo(pluginFile)) throw new Exception("rename failed");
+                        return artifact.toString();
                     }
-                    loadAvailablePlugins();
-                    loadInstalledPlugins();
-                    JOptionPane.showMessageDialog(this, "Plugin enabled: " + selected);
-                } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(this, "Failed to enable plugin: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                }
+                    // without a cache the file is written straight to its destination
+                    if (remote) {
+                        return helper.uploadFromUrl(downloader, uri, path, progress, task::isCancelled).toString();
+                    }
+                    MessageDigest digest = StagedFiles.newDigest();
+                    File[] staging = new File[1];
+                    try {
+                        HttpDownloader.Result result = downloader.download(uri, fileName -> {
+                            staging[0] = StagedFiles.stagingFile(new File(directory, fileName));
+                            return HttpDownloader.hashing(HttpDownloader.toFile(staging[0]), digest);
+                        }, progress, task::isCancelled);
+                        StagedFiles.promote(staging[0], new File(directory, result.fileName()), result.bytes(),
+                                HexFormat.of().formatHex(digest.digest()));
+                        return result.toString();
+                    } finally {
+                        if (staging[0] != null && staging[0].exists() && !staging[0].delete()) staging[0].deleteOnExit();
+                    }
+                }, result -> onActionDone("Plugin installed from URL: " + result),
+                        ex -> showError("Failed to install plugin from URL: " + ex.getMessage()));
             }
         });
 
+        enableButton.addActionListener(e -> {
+            String suffix = DISABLED_SUFFIX;
+            List<String> selected = availablePluginsList.getSelectedValuesList().stream()
+                    .filter(name -> name.endsWith(suffix)).toList();
+            runBatch("Enabling", "enabled", "enable", selected,
+                    (helper, path, name) -> helper.enablePlugin(path, name, suffix),
+                    (directory, name) -> {
+                        File disabledFile = new File(directory, name);
+                        File pluginFile = new File(directory, name.substring(0, name.length() - suffix.length()));
+                        if (!disabledFile.renameTo(pluginFile)) throw new Exception("rename failed");
+                    });
+        });
+
         disableButton.addActionListener(e -> {
-            String selected = availablePluginsList.getSelectedValue();
-            if (selected != null) {
-                try {
-                    if (remoteMode) {
-                        if (remoteHelper == null || !remoteHelper.isConnected()) {
-                            JOptionPane.showMessageDialog(this, "Not connected to remote.", "Error", JOptionPane.ERROR_MESSAGE);
-                            return;
-                        }
-                        if (!selected.endsWith(".jar")) return;
-                        remoteHelper.disablePlugin(remotePluginPath, selected, DISABLED_SUFFIX);
-                    } else {
-                        if (pluginDirectory == null) return;
-                        if (!selected.endsWith(".jar")) return;
-                        File pluginFile = new File(pluginDirectory, selected);
-                        File disabledFile = new File(pluginDirectory, selected + DISABLED_SUFFIX);
+            String suffix = DISABLED_SUFFIX;
+            List<String> selected = availablePluginsList.getSelectedValuesList().stream()
+                    .filter(name -> name.endsWith(".jar")).toList();
+            runBatch("Disabling", "disabled", "disable", selected,
+                    (helper, path, name) -> helper.disablePlugin(path, name, suffix),
+                    (directory, name) -> {
+                        File pluginFile = new File(directory, name);
+                        File disabledFile = new File(directory, name + suffix);
                         if (!pluginFile.renameTo(disabledFile)) throw new Exception("rename failed");
-                    }
-                    loadAvailablePlugins();
-                    loadInstalledPlugins();
-                    JOptionPane.showMessageDialog(this, "Plugin disabled: " + selected);
-                } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(this, "Failed to disable plugin: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                }
-            }
+                    });
         });
 
-        uninstallButton.addActionListener(e -> {
-            String selected = installedPluginsList.getSelectedValue();
-            if (selected != null) {
-                try {
-                    if (remoteMode) {
-                        if (remoteHelper == null || !remoteHelper.isConnected()) {
-                            JOptionPane.showMessageDialog(this, "Not connected to remote.", "Error", JOptionPane.ERROR_MESSAGE);
-                            return;
-                        }
-                        remoteHelper.uninstallPlugin(remotePluginPath, selected);
-                    } else {
-                        if (pluginDirectory == null) return;
-                        File pluginFile = new File(pluginDirectory, selected);
-                        if (!pluginFile.delete()) throw new Exception("delete failed");
+        uninstallButton.addActionListener(e -> runBatch("Uninstalling", "uninstalled", "uninstall",
+                installedPluginsList.getSelectedValuesList(),
+                RemoteHelper::uninstallPlugin,
+                (directory, name) -> {
+                    if (!new File(directory, name).delete()) throw new Exception("delete failed");
+                }));
+
+        refreshButton.addActionListener(e -> refreshPlugins(true));
+    }
+
+    /**
+     * Refresh the lists and confirm a finished action.
+     * Local changes are picked up by the folder watcher, so only remote actions need a new listing.
+     */
+    private void onActionDone(String message) {
+        if (remoteMode || folderWatcher == null) refreshPlugins();
+        JOptionPane.showMessageDialog(this, message);
+    }
+
+    @FunctionalInterface
+    private interface RemoteOperation {
+        void apply(RemoteHelper helper, String remoteDir, String name) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface LocalOperation {
+        void apply(File directory, String name) throws Exception;
+    }
+
+    /**
+     * Apply an operation to every selected plugin in one background task, then refresh once and show one summary.
+     * Remote operations run concurrently over the pooled channels.
+     */
+    private void runBatch(String title, String pastTense, String verb, List<String> names, RemoteOperation remoteOperation, LocalOperation localOperation) {
+        if (names.isEmpty()) return;
+        boolean remote = remoteMode;
+        RemoteHelper helper = remoteHelper;
+        String path = remotePluginPath;
+        File directory = pluginDirectory;
+        if (remote && (helper == null || !helper.isConnected())) {
+            JOptionPane.showMessageDialog(this, "Not connected to remote.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (!remote && directory == null) return;
+        String taskName = names.size() == 1 ? title + " " + names.get(0) : title + " " + names.size() + " plugins";
+        taskExecutor.<Map<String, String>>submit(taskName, task -> {
+            Map<String, String> failures = new ConcurrentHashMap<>();
+            AtomicInteger done = new AtomicInteger();
+            if (remote) {
+                Semaphore permits = new Semaphore(helper.getMaxChannels());
+                try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                    for (String name : names) {
+                        executor.submit(() -> {
+                            permits.acquire();
+                            try {
+                                if (!task.isCancelled()) remoteOperation.apply(helper, path, name);
+                            } catch (Exception ex) {
+                                failures.put(name, String.valueOf(ex.getMessage()));
+                            } finally {
+                                permits.release();
+                                task.setProgress(done.incrementAndGet(), names.size());
+                            }
+                            return null;
+                        });
                     }
-                    loadAvailablePlugins();
-                    loadInstalledPlugins();
-                    JOptionPane.showMessageDialog(this, "Plugin uninstalled: " + selected);
-                } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(this, "Failed to uninstall plugin: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            } else {
+                for (String name : names) {
+                    task.checkCancelled();
+                    try {
+                        localOperation.apply(directory, name);
+                    } catch (Exception ex) {
+                        failures.put(name, String.valueOf(ex.getMessage()));
+                    }
+                    task.setProgress(done.incrementAndGet(), names.size());
                 }
             }
-        });
+            return failures;
+        }, failures -> {
+            if (remoteMode || folderWatcher == null) refreshPlugins();
+            int succeeded = names.size() - failures.size();
+            if (failures.isEmpty()) {
+                JOptionPane.showMessageDialog(this, names.size() == 1 ? "Plugin " + pastTense + ": " + names.get(0) : succeeded + " plugins " + pastTense);
+                return;
+            }
+            StringBuilder builder = new StringBuilder("Failed to " + verb + " " + failures.size() + " of " + names.size() + " plugins:\n");
+            failures.forEach((name, message) -> builder.append(" - ").append(name).append(": ").append(message).append("\n"));
+            showError(builder.toString());
+        }, ex -> showError("Failed to " + verb + " plugins: " + ex.getMessage()));
+    }
 
-        refreshButton.addActionListener(e -> {
-            loadAvailablePlugins();
-            loadInstalledPlugins();
-        });
+    /**
+     * Summarize a finished transfer batch, listing failed files if there were any
+     */
+    private void onTransferDone(String message, String failureMessage, TransferEngine.BatchResult batch) {
+        List<TransferEngine.FileResult> failures = batch.getFailures();
+        if (remoteMode) refreshPlugins();
+        if (failures.isEmpty()) {
+            JOptionPane.showMessageDialog(this, message + "\n" + batch);
+            return;
+        }
+        StringBuilder builder = new StringBuilder(failureMessage).append(" (").append(batch).append("):\n");
+        for (TransferEngine.FileResult failure : failures) {
+            builder.append(" - ").append(failure.item().getName()).append(": ").append(failure.error().getMessage()).append("\n");
+        }
+        showError(builder.toString());
+    }
+
+    static TransferEngine newTransferEngine(RemoteHelper helper) {
+        return new TransferEngine(helper)
+                .setBufferSize(Main.config.getInt("transfer-buffer-kb", 256) * 1024)
+                .setBulkRequests(Main.config.getInt("transfer-bulk-requests", 32))
+                .setDeltaUploads(Main.config.getBoolean("delta-uploads", true));
+    }
+
+    private void showReport(String title, String text) {
+        JTextArea area = new JTextArea(text, 25, 90);
+        area.setEditable(false);
+        area.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        area.setCaretPosition(0);
+        JOptionPane.showMessageDialog(this, new JScrollPane(area), title, JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private String describeImpact(DependencyGraph.Impact impact) {
+        return "Disabling " + impact.plugin() + ":\n"
+                + "   Also stops:    " + (impact.broken().isEmpty() ? "-" : String.join(", ", impact.broken())) + "\n"
+                + "   Loads without: " + (impact.degraded().isEmpty() ? "-" : String.join(", ", impact.degraded())) + "\n"
+                + (startupMillis.isEmpty() ? "   Plugins fewer: " + impact.savedCost() : "   Startup saved: about " + impact.savedCost() + " ms") + "\n";
+    }
+
+    private void showError(String message) {
+        JOptionPane.showMessageDialog(this, message, "Error", JOptionPane.ERROR_MESSAGE);
     }
 
     /**
@@ -445,10 +608,15 @@ public class PluginManagerGUI extends JFrame {
                     // turn off remote mode when selecting local folder
                     remoteMode = false;
                     if (remoteHelper != null) remoteHelper.disconnect();
+                    remoteHelper = null;
+                    stopWatching();
                     this.pluginDirectory = selectedDirectory;
+                    pluginIndex.clear();
+                    dependencyGraph.clear();
+                    localProfiler = new StartupProfiler();
+                    applyStartupReport(null);
                     this.selectedDirLabel.setText("Selected Directory: " + selectedDirectory.getAbsolutePath());
-                    loadAvailablePlugins();
-                    loadInstalledPlugins();
+                    refreshPlugins();
                     Main.config.set("plugin-directory", selectedDirectory.getAbsolutePath());
                     Main.config.save();
                 } else {
@@ -476,35 +644,52 @@ public class PluginManagerGUI extends JFrame {
             };
             int result = JOptionPane.showConfirmDialog(this, inputs, "Connect Remote", JOptionPane.OK_CANCEL_OPTION);
             if (result == JOptionPane.OK_OPTION) {
+                String host = hostField.getText().trim();
+                String user = userField.getText().trim();
+                String pass = new String(passField.getPassword());
+                String path = pathField.getText().trim();
+                int port;
                 try {
-                    String host = hostField.getText().trim();
-                    int port = Integer.parseInt(portField.getText().trim());
-                    String user = userField.getText().trim();
-                    String pass = new String(passField.getPassword());
-                    String path = pathField.getText().trim();
+                    port = Integer.parseInt(portField.getText().trim());
                     if (host.isEmpty() || user.isEmpty() || path.isEmpty())
                         throw new IllegalArgumentException("Missing fields");
+                } catch (Exception ex) {
+                    showError("Failed to connect: " + ex.getMessage());
+                    return;
+                }
 
-                    if (remoteHelper != null) remoteHelper.disconnect();
-                    remoteHelper = new RemoteHelper();
-                    remoteHelper.connect(host, port, user, pass, 10000);
+                if (remoteHelper != null) remoteHelper.disconnect();
+                remoteHelper = null;
+                remoteMode = false;
+                RemoteHelper helper = new RemoteHelper();
+                helper.setListingTtlMillis(Main.config.getInt("remote-listing-ttl-seconds", 30) * 1000L);
+                helper.setMaxChannels(Main.config.getInt("remote-channels", 4));
+                helper.setVerifyHash(Main.config.getBoolean("verify-install-hash", true));
+                taskExecutor.<RemoteHelper>submit("Connecting to " + host, task -> {
+                    helper.connect(host, port, user, pass, 10000);
+                    return helper;
+                }, connected -> {
+                    stopWatching();
+                    remoteHelper = connected;
                     remoteMode = true;
+                    remoteIndex = new PluginIndex();
+                    dependencyGraph.clear();
+                    remoteProfiler = new StartupProfiler();
+                    remoteStartupRead = false;
+                    applyStartupReport(null);
                     remotePluginPath = path;
                     remoteConnectionLabel = user + "@" + host + ":" + path;
                     this.selectedDirLabel.setText("Remote: " + remoteConnectionLabel);
-                    loadAvailablePlugins();
-                    loadInstalledPlugins();
+                    refreshPlugins();
                     Main.config.set("last-remote-host", host);
                     Main.config.set("last-remote-port", port);
                     Main.config.set("last-remote-username", user);
                     Main.config.set("last-remote-plugin-path", path);
                     Main.config.save();
-                } catch (Exception ex) {
-                    JOptionPane.showMessageDialog(this, "Failed to connect: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                    remoteMode = false;
-                    if (remoteHelper != null) remoteHelper.disconnect();
-                    remoteHelper = null;
-                }
+                }, ex -> {
+                    helper.disconnect();
+                    showError("Failed to connect: " + ex.getMessage());
+                });
             }
         });
 
@@ -513,14 +698,89 @@ public class PluginManagerGUI extends JFrame {
                 remoteHelper.disconnect();
                 remoteHelper = null;
             }
+            if (indexTask != null) indexTask.cancel();
+            indexTask = null;
             remoteMode = false;
             remotePluginPath = null;
             remoteConnectionLabel = null;
+            // nothing of the disconnected server may stay in the lists, the info panel or the reports
+            remoteIndex = new PluginIndex();
+            dependencyGraph.clear();
+            remoteProfiler = new StartupProfiler();
+            remoteStartupRead = false;
+            applyStartupReport(null);
             this.selectedDirLabel.setText("No directory selected");
             availableModel.clear();
             installedModel.clear();
         });
 
+        JMenuItem backupRemoteItem = new JMenuItem("Backup Remote Plugins...");
+        backupRemoteItem.addActionListener(e -> {
+            if (!remoteMode || remoteHelper == null || !remoteHelper.isConnected()) {
+                JOptionPane.showMessageDialog(this, "Not connected to remote.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+            if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION || fileChooser.getSelectedFile() == null) return;
+            File target = fileChooser.getSelectedFile();
+            RemoteHelper helper = remoteHelper;
+            String path = remotePluginPath;
+            taskExecutor.<TransferEngine.BatchResult>submit("Backing up remote plugins", task -> {
+                if (!target.isDirectory() && !target.mkdirs()) throw new Exception("Cannot create " + target);
+                List<TransferEngine.Item> items = new ArrayList<>();
+                for (PluginListing.FileInfo info : helper.getListing(path, true).getFiles()) {
+                    items.add(TransferEngine.Item.download(RemoteHelper.resolve(path, info.name()), new File(target, info.name()), info.size()));
+                }
+                return newTransferEngine(helper).run(items,
+                        (bytes, total, files, fileCount) -> task.setProgress(bytes, total), task::isCancelled);
+            }, batch -> onTransferDone("Backup written to " + target.getAbsolutePath(), "Backup incomplete", batch),
+                    ex -> showError("Failed to back up plugins: " + ex.getMessage()));
+        });
+
+        JMenuItem syncRemoteItem = new JMenuItem("Sync Plugins to Remote...");
+        syncRemoteItem.addActionListener(e -> {
+            if (!remoteMode || remoteHelper == null || !remoteHelper.isConnected()) {
+                JOptionPane.showMessageDialog(this, "Not connected to remote.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+            fileChooser.setMultiSelectionEnabled(true);
+            if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+            List<File> jars = new ArrayList<>();
+            for (File selected : fileChooser.getSelectedFiles()) {
+                File[] children = selected.isDirectory() ? selected.listFiles((dir, name) -> name.endsWith(".jar")) : new File[]{selected};
+                if (children != null) Collections.addAll(jars, children);
+            }
+            if (jars.isEmpty()) return;
+            RemoteHelper helper = remoteHelper;
+            String path = remotePluginPath;
+            taskExecutor.<RemoteSync.Result>submit("Syncing " + jars.size() + " plugin(s)", task -> {
+                RemoteSync sync = new RemoteSync(helper);
+                task.setMessage("Comparing with remote");
+                RemoteSync.Plan plan = sync.plan(jars, path);
+                task.checkCancelled();
+                return sync.run(plan, newTransferEngine(helper),
+                        (bytes, total, files, fileCount) -> task.setProgress(bytes, total), task::isCancelled);
+            }, result -> onTransferDone("Sync finished: " + result.plan().unchanged().size() + " already up to date",
+                    "Sync incomplete", result.batch()),
+                    ex -> showError("Failed to sync plugins: " + ex.getMessage()));
+        });
+
+        JMenuItem fleetItem = new JMenuItem("Fleet...");
+        fleetItem.addActionListener(e -> new FleetGUI().display());
+
+        JMenuItem remoteStatusItem = new JMenuItem("Remote Status");
+        remoteStatusItem.addActionListener(e -> {
+            SftpChannelPool.Metrics metrics = remoteHelper != null ? remoteHelper.getPoolMetrics() : null;
+            if (metrics == null) {
+                JOptionPane.showMessageDialog(this, "Not connected to remote.", "Remote Status", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            JOptionPane.showMessageDialog(this, remoteConnectionLabel + "\n\n" + metrics, "Remote Status", JOptionPane.INFORMATION_MESSAGE);
+        });
+
         JMenuItem aboutItem = new JMenuItem("About");
         aboutItem.addActionListener(e -> JOptionPane.showMessageDialog(this, "Spigot Plugin Manager\nVersion 1.2-SNAPSHOT\nDeveloped by FrameDev", "About", JOptionPane.INFORMATION_MESSAGE));
         JMenuItem helpItem = new JMenuItem("Help");
@@ -534,6 +794,10 @@ public class PluginManagerGUI extends JFrame {
         fileMenu.add(selectItem);
         fileMenu.add(connectRemoteItem);
         fileMenu.add(disconnectRemoteItem);
+        fileMenu.add(backupRemoteItem);
+        fileMenu.add(syncRemoteItem);
+        fileMenu.add(fleetItem);
+        fileMenu.add(remoteStatusItem);
         fileMenu.add(helpItem);
         fileMenu.add(aboutItem);
         fileMenu.addSeparator();
@@ -541,57 +805,440 @@ public class PluginManagerGUI extends JFrame {
         fileMenu.addSeparator();
         fileMenu.add(exitItem);
 
+        JMenu toolsMenu = new JMenu("Tools");
+        JMenuItem duplicatesItem = new JMenuItem("Find Duplicate Libraries...");
+        duplicatesItem.addActionListener(e -> {
+            boolean remote = remoteMode;
+            RemoteHelper helper = remoteHelper;
+            String path = remotePluginPath;
+            File directory = pluginDirectory;
+            if (remote ? helper == null || !helper.isConnected() : directory == null) {
+                JOptionPane.showMessageDialog(this, "Select a plugin folder or connect to a remote first.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            ShadedLibraryAnalyzer analyzer = new ShadedLibraryAnalyzer(Main.config.getInt("library-package-depth", 3));
+            taskExecutor.<ShadedLibraryAnalyzer.Report>submit("Finding duplicate libraries", task -> remote
+                            ? analyzer.analyzeRemote(helper, path, task::setProgress, task::isCancelled)
+                            : analyzer.analyzeLocal(directory, task::setProgress, task::isCancelled),
+                    report -> showReport("Duplicate Libraries", report.toText()),
+                    ex -> showError("Failed to analyze plugins: " + ex.getMessage()));
+        });
+        JMenuItem dependenciesItem = new JMenuItem("Dependency Analysis...");
+        dependenciesItem.addActionListener(e -> {
+            if (dependencyGraph.size() == 0) {
+                JOptionPane.showMessageDialog(this, "No indexed plugins yet. Select a plugin folder or connect to a remote first.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            String text = dependencyGraph.toText();
+            String selected = installedPluginsList.getSelectedValue();
+            PluginIndex.Entry entry = selected != null ? currentIndex().get(selected) : null;
+            if (entry != null && entry.descriptor() != null && entry.descriptor().getName() != null) {
+                DependencyGraph.Impact impact = dependencyGraph.impactOfDisabling(entry.descriptor().getName());
+                if (impact != null) text = describeImpact(impact) + "\n" + text;
+            }
+            showReport("Dependency Analysis", text);
+        });
+        JMenuItem startupItem = new JMenuItem("Startup Profile...");
+        startupItem.addActionListener(e -> {
+            if (remoteMode ? remoteHelper == null || !remoteHelper.isConnected() : pluginDirectory == null) {
+                JOptionPane.showMessageDialog(this, "Select a plugin folder or connect to a remote first.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            profileStartup(report -> showReport("Startup Profile", report.toText()));
+        });
+        JMenuItem blockingItem = new JMenuItem("Scan for Blocking Calls...");
+        blockingItem.addActionListener(e -> {
+            boolean remote = remoteMode;
+            RemoteHelper helper = remoteHelper;
+            String path = remotePluginPath;
+            File directory = pluginDirectory;
+            if (remote ? helper == null || !helper.isConnected() : directory == null) {
+                JOptionPane.showMessageDialog(this, "Select a plugin folder or connect to a remote first.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            List<PluginIndex.Entry> entries = new ArrayList<>(currentIndex().entries());
+            String suffix = DISABLED_SUFFIX;
+            PluginIndex[] hashed = new PluginIndex[1];
+            taskExecutor.<Map<String, BlockingCallScanner.JarReport>>submit("Scanning for blocking calls", task -> {
+                        if (!remote) return blockingCallScanner.scanLocal(directory, entries, task::setProgress, task::isCancelled);
+                        // results are cached by content hash, which the remote index only carries when asked for
+                        hashed[0] = helper.scanFolder(path, suffix, true, false);
+                        return blockingCallScanner.scanRemote(helper, path, hashed[0].entries(), task::setProgress, task::isCancelled);
+                    },
+                    reports -> {
+                        if (hashed[0] != null && helper == remoteHelper) remoteIndex = hashed[0];
+                        showReport("Main Thread Blocking Calls", BlockingCallScanner.toText(reports));
+                        updatePluginInfo();
+                    },
+                    ex -> showError("Failed to scan plugins: " + ex.getMessage()));
+        });
+        toolsMenu.add(duplicatesItem);
+        toolsMenu.add(blockingItem);
+        toolsMenu.add(startupItem);
+        toolsMenu.add(dependenciesItem);
+
+        JMenu viewMenu = new JMenu("View");
+        JRadioButtonMenuItem sortByFileItem = new JRadioButtonMenuItem("Sort by File Name", !sortByPluginName);
+        JRadioButtonMenuItem sortByNameItem = new JRadioButtonMenuItem("Sort by Plugin Name", sortByPluginName);
+        ButtonGroup sortGroup = new ButtonGroup();
+        sortGroup.add(sortByFileItem);
+        sortGroup.add(sortByNameItem);
+        sortByFileItem.addActionListener(e -> {
+            sortByPluginName = false;
+            resortModels();
+        });
+        sortByNameItem.addActionListener(e -> {
+            sortByPluginName = true;
+            resortModels();
+        });
+        viewMenu.add(sortByFileItem);
+        viewMenu.add(sortByNameItem);
+
         menuBar.add(fileMenu);
+        menuBar.add(viewMenu);
+        menuBar.add(toolsMenu);
         setJMenuBar(menuBar);
     }
 
-    private void loadAvailablePlugins() {
+    /**
+     * Reload both plugin lists in the background and apply the result on the event thread.
+     * Remote listings are served from the helper's snapshot cache unless a fresh listing is forced.
+     */
+    private void refreshPlugins() {
+        refreshPlugins(false);
+    }
+
+    private void refreshPlugins(boolean force) {
         DISABLED_SUFFIX = Main.config.getString("suffix-for-disabled-plugins", ".disabled");
-        availableModel.clear();
-        try {
-            if (remoteMode) {
-                if (remoteHelper == null || !remoteHelper.isConnected() || remotePluginPath == null) return;
-                for (String name : remoteHelper.listPlugins(remotePluginPath)) {
-                    availableModel.addElement(name);
-                }
+        boolean remote = remoteMode;
+        RemoteHelper helper = remoteHelper;
+        String path = remotePluginPath;
+        File directory = pluginDirectory;
+        if (remote ? helper == null || !helper.isConnected() || path == null : directory == null) {
+            availableModel.clear();
+            installedModel.clear();
+            updateButtons();
+            return;
+        }
+        taskExecutor.<PluginListing>submit("Refreshing plugin list", task -> {
+            if (remote) return helper.getListing(path, force);
+            // first listing of a folder: show the persisted metadata right away, the indexer re-validates it
+            if (pluginIndex.size() == 0) pluginIndexStore.load(directory, pluginIndex);
+            return PluginListing.ofLocal(directory);
+        }, listing -> {
+            replaceModel(availablePluginsList, availableModel, listing.getAvailable());
+            replaceModel(installedPluginsList, installedModel, listing.getInstalled());
+            updateButtons();
+            if (!remote) {
+                startWatching(directory);
+                indexPlugins(directory);
+                profileStartup(null);
             } else {
-                if (pluginDirectory == null) return;
-                File[] files = pluginDirectory.listFiles();
-                if (files != null) {
-                    for (File file : files) {
-                        if (!file.isDirectory())
-                            availableModel.addElement(file.getName());
-                    }
+                // only a forced refresh, a new connection or files the index does not know start a scan; it skips unchanged jars
+                if (force || needsRemoteIndex(listing)) {
+                    indexRemotePlugins(helper, path, force);
+                } else {
+                    Set<String> names = new HashSet<>();
+                    for (PluginListing.FileInfo info : listing.getFiles()) names.add(info.name());
+                    remoteIndex.retainAll(names);
+                    dependencyGraph.sync(remoteIndex.entries());
+                    resortModels();
+                }
+                // the remote log is read once per connection, or on demand from the Tools menu
+                if (!remoteStartupRead) {
+                    remoteStartupRead = true;
+                    profileStartup(null);
                 }
             }
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Failed to list available plugins: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-        }
-        updateButtons();
+        }, ex -> showError("Failed to list plugins: " + ex.getMessage()));
     }
 
-    private void loadInstalledPlugins() {
-        installedModel.clear();
+    private void startWatching(File directory) {
+        if (folderWatcher != null && folderWatcher.getDirectory().equals(directory.toPath())) return;
+        stopWatching();
         try {
-            if (remoteMode) {
-                if (remoteHelper == null || !remoteHelper.isConnected() || remotePluginPath == null) return;
-                for (String name : remoteHelper.listPlugins(remotePluginPath)) {
-                    if (name.endsWith(".jar")) installedModel.addElement(name);
+            folderWatcher = new PluginFolderWatcher(directory.toPath(), 300,
+                    changes -> SwingUtilities.invokeLater(() -> applyFolderChanges(directory, changes)));
+        } catch (IOException ex) {
+            statusLabel.setText("Folder changes are not watched: " + ex.getMessage());
+        }
+    }
+
+    private void stopWatching() {
+        if (folderWatcher != null) {
+            folderWatcher.close();
+            folderWatcher = null;
+        }
+    }
+
+    /**
+     * Apply a batch of folder changes to the list models and re-index only the touched files
+     */
+    private void applyFolderChanges(File directory, PluginFolderWatcher.Changes changes) {
+        if (remoteMode || !directory.equals(pluginDirectory)) return;
+        if (changes.overflow()) {
+            refreshPlugins();
+            return;
+        }
+        for (String name : changes.removed()) {
+            availableModel.removeElement(name);
+            installedModel.removeElement(name);
+            pluginIndex.remove(name);
+            dependencyGraph.remove(name);
+        }
+        for (String name : changes.changed()) {
+            if (!availableModel.contains(name)) insertSorted(availableModel, name);
+            if (name.endsWith(".jar") && !installedModel.contains(name)) insertSorted(installedModel, name);
+        }
+        updateButtons();
+
+        String suffix = DISABLED_SUFFIX;
+        List<String> toIndex = new ArrayList<>();
+        for (String name : changes.changed()) {
+            if (PluginIndexer.isPluginFile(name, suffix)) toIndex.add(name);
+        }
+        String selected = availablePluginsList.getSelectedValue();
+        taskExecutor.submit("Indexing changed plugins", task -> {
+            for (int i = 0; i < toIndex.size(); i++) {
+                task.checkCancelled();
+                String name = toIndex.get(i);
+                File file = new File(directory, name);
+                if (file.isFile()) {
+                    PluginIndex.Entry entry = PluginIndexer.readEntry(file, pluginIndex.get(name));
+                    pluginIndex.put(entry);
+                    dependencyGraph.put(name, entry.descriptor());
                 }
-            } else {
-                if (pluginDirectory == null) return;
-                File[] files = pluginDirectory.listFiles((dir, name) -> name.endsWith(".jar"));
-                if (files != null) {
-                    for (File file : files) {
-                        if (!file.isDirectory())
-                            installedModel.addElement(file.getName());
-                    }
+                task.setProgress(i + 1, toIndex.size());
+            }
+            pluginIndexStore.save(directory, pluginIndex);
+            return null;
+        }, result -> {
+            if (sortByPluginName) resortModels();
+            availablePluginsList.repaint();
+            installedPluginsList.repaint();
+            if (selected != null && toIndex.contains(selected)) updatePluginInfo();
+        }, ex -> statusLabel.setText("Failed to index changes: " + ex.getMessage()));
+    }
+
+    /**
+     * Index plugin metadata of the local folder in the background, then redraw the lists with it
+     */
+    private void indexPlugins(File directory) {
+        if (indexTask != null) indexTask.cancel();
+        String suffix = DISABLED_SUFFIX;
+        indexTask = taskExecutor.<PluginIndexer.ScanResult>submit("Indexing plugins", task -> {
+            PluginIndexer.ScanResult result = PluginIndexer.scan(directory, suffix, pluginIndex, task::setProgress);
+            if (result.changed()) pluginIndexStore.save(directory, pluginIndex);
+            return result;
+        }, result -> {
+            indexTask = null;
+            if (!directory.equals(pluginDirectory)) return;
+            dependencyGraph.sync(pluginIndex.entries());
+            resortModels();
+            statusLabel.setText(result.toString());
+            scanBlockingCalls(directory);
+        }, ex -> indexTask = null);
+    }
+
+    /**
+     * Scan the indexed jars of the local folder for main thread blocking calls, so their info shows without delay
+     */
+    private void scanBlockingCalls(File directory) {
+        List<PluginIndex.Entry> entries = new ArrayList<>(pluginIndex.entries());
+        taskExecutor.<Map<String, BlockingCallScanner.JarReport>>submit("Scanning for blocking calls",
+                task -> blockingCallScanner.scanLocal(directory, entries, task::setProgress, task::isCancelled),
+                reports -> {
+                    long risky = reports.values().stream().filter(report -> report.getRisk() != BlockingCallScanner.Risk.NONE).count();
+                    if (risky > 0) statusLabel.setText(risky + " plugins call blocking APIs on the main thread (Tools > Scan for Blocking Calls)");
+                    String selected = availablePluginsList.getSelectedValue();
+                    if (selected != null && reports.containsKey(selected) && directory.equals(pluginDirectory) && !remoteMode) updatePluginInfo();
+                }, ex -> statusLabel.setText("Blocking call scan failed: " + ex.getMessage()));
+    }
+
+    // Whether the listing has plugin files the remote index does not describe yet
+    private boolean needsRemoteIndex(PluginListing listing) {
+        for (PluginListing.FileInfo info : listing.getFiles()) {
+            if (!PluginIndexer.isPluginFile(info.name(), DISABLED_SUFFIX)) continue;
+            PluginIndex.Entry entry = remoteIndex.get(info.name());
+            // the listing's mtime of our own uploads is local, so only the size is compared
+            if (entry == null || entry.size() != info.size()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Index the remote folder in one round trip (see {@link RemoteHelper#scanFolder}), then redraw the lists with it.
+     * Jars that did not change since the last scan are not read again unless forced.
+     */
+    private void indexRemotePlugins(RemoteHelper helper, String path, boolean force) {
+        if (indexTask != null) indexTask.cancel();
+        String suffix = DISABLED_SUFFIX;
+        indexTask = taskExecutor.<PluginIndex>submit("Indexing remote plugins", task -> helper.scanFolder(path, suffix, false, force), index -> {
+            indexTask = null;
+            if (!remoteMode || helper != remoteHelper) return;
+            remoteIndex = index;
+            dependencyGraph.sync(index.entries());
+            resortModels();
+            statusLabel.setText("Indexed " + index.size() + " remote plugins");
+        }, ex -> {
+            indexTask = null;
+            statusLabel.setText("Remote plugins not indexed: " + ex.getMessage());
+        });
+    }
+
+    /**
+     * Read the server's logs/latest.log next to the plugin folder and show the startup time of each plugin in the lists
+     */
+    private void profileStartup(Consumer<StartupProfiler.Report> then) {
+        boolean remote = remoteMode;
+        RemoteHelper helper = remoteHelper;
+        String path = remotePluginPath;
+        File directory = pluginDirectory;
+        StartupProfiler profiler = remote ? remoteProfiler : localProfiler;
+        taskExecutor.<StartupProfiler.Report>submit("Reading server log", task -> {
+            if (remote) return profiler.readRemote(helper, serverLogPath(path), task::isCancelled);
+            File log = new File(directory.getAbsoluteFile().getParentFile(), "logs" + File.separator + "latest.log");
+            if (!log.isFile()) throw new FileNotFoundException(log.getPath());
+            return profiler.readLocal(log, task::isCancelled);
+        }, report -> {
+            if (remote ? helper != remoteHelper : !directory.equals(pluginDirectory)) return;
+            applyStartupReport(report);
+            if (then != null) then.accept(report);
+        }, ex -> {
+            if (then != null) showError("Failed to read the server log: " + ex.getMessage());
+            // a local plugin folder without a server next to it is not worth a message
+            else if (remote ? helper == remoteHelper : directory.equals(pluginDirectory) && !(ex instanceof FileNotFoundException)) {
+                statusLabel.setText("Startup times not available: " + ex.getMessage());
+            }
+        });
+    }
+
+    // logs/latest.log of the server whose plugin folder is given
+    private static String serverLogPath(String remotePluginDir) {
+        String dir = remotePluginDir.endsWith("/") ? remotePluginDir.substring(0, remotePluginDir.length() - 1) : remotePluginDir;
+        int slash = dir.lastIndexOf('/');
+        String server = slash > 0 ? dir.substring(0, slash) : slash == 0 ? "" : ".";
+        return server + "/logs/latest.log";
+    }
+
+    private void applyStartupReport(StartupProfiler.Report report) {
+        Map<String, Integer> ranks = new HashMap<>();
+        if (report != null) {
+            for (StartupProfiler.Timing timing : report.timings()) ranks.put(timing.plugin(), ranks.size() + 1);
+        }
+        startupMillis = report != null ? report.getMillisByPlugin() : Map.of();
+        startupRanks = ranks;
+        dependencyGraph.setWeights(startupMillis);
+        availablePluginsList.repaint();
+        installedPluginsList.repaint();
+    }
+
+    private PluginIndex currentIndex() {
+        return remoteMode ? remoteIndex : pluginIndex;
+    }
+
+    /**
+     * Replace the contents of a list model in one step, keeping the current selection where possible
+     */
+    private void replaceModel(JList<String> list, DefaultListModel<String> model, List<String> names) {
+        List<String> selected = list.getSelectedValuesList();
+        List<String> sorted = new ArrayList<>(names);
+        sorted.sort(listComparator());
+        model.clear();
+        model.addAll(sorted);
+        for (String value : selected) {
+            int i = model.indexOf(value);
+            if (i >= 0) list.addSelectionInterval(i, i);
+        }
+    }
+
+    private void insertSorted(DefaultListModel<String> model, String name) {
+        Comparator<String> comparator = listComparator();
+        int i = 0;
+        while (i < model.size() && comparator.compare(model.get(i), name) <= 0) i++;
+        model.add(i, name);
+    }
+
+    private Comparator<String> listComparator() {
+        return sortByPluginName ? Comparator.comparing(this::sortKey, String.CASE_INSENSITIVE_ORDER) : String.CASE_INSENSITIVE_ORDER;
+    }
+
+    private void resortModels() {
+        replaceModel(availablePluginsList, availableModel, Collections.list(availableModel.elements()));
+        replaceModel(installedPluginsList, installedModel, Collections.list(installedModel.elements()));
+    }
+
+    private String sortKey(String fileName) {
+        PluginIndex.Entry entry = currentIndex().get(fileName);
+        return entry != null ? entry.getDisplayName() : fileName;
+    }
+
+    /**
+     * Shows "Name Version (file)" for indexed plugins and the plain file name otherwise, with the startup rank and time if known
+     */
+    private class PluginListCellRenderer extends DefaultListCellRenderer {
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+            super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            PluginIndex.Entry entry = currentIndex().get(String.valueOf(value));
+            if (entry != null && entry.getName() != null) {
+                setText(entry.getDisplayName() + "  (" + entry.fileName() + ")");
+                Long millis = startupMillis.get(entry.getName());
+                if (millis != null) {
+                    setText(getText() + String.format("  [#%d, %.1f s]", startupRanks.get(entry.getName()), millis / 1000.0));
                 }
             }
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, "Failed to list installed plugins: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            return this;
         }
-        updateButtons();
+    }
+
+    /**
+     * Reflect the running background tasks in the status bar
+     */
+    private void updateStatusBar() {
+        List<Task<?>> running = taskExecutor.getRunningTasks();
+        if (running.isEmpty()) {
+            statusLabel.setText(" ");
+            progressBar.setVisible(false);
+            cancelTaskButton.setVisible(false);
+            return;
+        }
+        Task<?> current = running.get(0);
+        String text = current.getMessage() != null ? current.getName() + " - " + current.getMessage() : current.getName();
+        if (running.size() > 1) text += " (+" + (running.size() - 1) + " more)";
+        statusLabel.setText(text);
+        progressBar.setIndeterminate(current.getProgress() < 0);
+        if (current.getProgress() >= 0) progressBar.setValue(current.getProgress());
+        progressBar.setVisible(true);
+        cancelTaskButton.setVisible(true);
+    }
+
+    /**
+     * Adapt a task to JSch's progress callback; returning false from count() aborts the transfer on cancel
+     */
+    private static SftpProgressMonitor monitorFor(Task<?> task) {
+        return new SftpProgressMonitor() {
+            private long total;
+            private long done;
+
+            @Override
+            public void init(int op, String src, String dest, long max) {
+                total = max;
+                done = 0;
+            }
+
+            @Override
+            public boolean count(long count) {
+                done += count;
+                task.setProgress(done, total);
+                return !task.isCancelled();
+            }
+
+            @Override
+            public void end() {
+                task.setProgress(total, total);
+            }
+        };
     }
 
     public void display() {
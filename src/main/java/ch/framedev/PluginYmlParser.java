@@ -0,0 +1,176 @@
+package ch.framedev;
+
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.parser.Parser;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads selected top-level keys of a plugin.yml from the parser's event stream, without building nodes or objects
+ * for the rest. Large sections such as permissions are skipped event by event.
+ * <p>
+ * Values are converted like {@code new Yaml().load(...)} does for the types plugin.yml uses: strings, booleans,
+ * decimal integers, floats, null, lists and maps. Other implicit types (timestamps, hex numbers) stay strings.
+ */
+final class PluginYmlParser {
+
+    /**
+     * Thrown for documents the event reader does not handle (an alias to a skipped anchor);
+     * the caller should load the document in full instead.
+     */
+    static final class UnsupportedDocumentException extends RuntimeException {
+        UnsupportedDocumentException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    // Resolves implicit scalar types; read-only after construction
+    private static final Resolver RESOLVER = new Resolver();
+
+    private final Parser parser;
+    private final Map<String, Object> anchors = new HashMap<>();
+
+    private PluginYmlParser(InputStream in) {
+        this.parser = new ParserImpl(new StreamReader(new UnicodeReader(in)), new LoaderOptions());
+    }
+
+    /**
+     * @param in   The plugin.yml contents; not closed.
+     * @param keys The top-level keys to read.
+     * @return The requested keys that are present, or null if the document is not a mapping.
+     * @throws UnsupportedDocumentException If the document needs a full load.
+     */
+    static Map<String, Object> parse(InputStream in, Set<String> keys) {
+        return new PluginYmlParser(in).readTopLevel(keys);
+    }
+
+    private Map<String, Object> readTopLevel(Set<String> keys) {
+        expect(Event.ID.StreamStart);
+        if (parser.checkEvent(Event.ID.StreamEnd)) return null;
+        expect(Event.ID.DocumentStart);
+        if (!parser.checkEvent(Event.ID.MappingStart)) return null;
+        remember(parser.getEvent(), null);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        while (!parser.checkEvent(Event.ID.MappingEnd)) {
+            Event key = checkKey(parser.getEvent());
+            if (key instanceof ScalarEvent scalar && keys.contains(scalar.getValue())) {
+                result.put(scalar.getValue(), readValue(parser.getEvent()));
+            } else {
+                skip(key);
+                skip(parser.getEvent());
+            }
+        }
+        // anything after the mapping (further documents) is of no interest
+        return result;
+    }
+
+    private Object readValue(Event event) {
+        Object value;
+        if (event instanceof ScalarEvent scalar) {
+            value = scalar(scalar);
+        } else if (event instanceof AliasEvent alias) {
+            if (!anchors.containsKey(alias.getAnchor())) {
+                throw new UnsupportedDocumentException("Alias to skipped anchor " + alias.getAnchor());
+            }
+            return anchors.get(alias.getAnchor());
+        } else if (event.is(Event.ID.SequenceStart)) {
+            List<Object> list = new ArrayList<>();
+            while (!parser.checkEvent(Event.ID.SequenceEnd)) list.add(readValue(parser.getEvent()));
+            parser.getEvent();
+            value = list;
+        } else if (event.is(Event.ID.MappingStart)) {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            while (!parser.checkEvent(Event.ID.MappingEnd)) {
+                Object key = readValue(checkKey(parser.getEvent()));
+                map.put(key, readValue(parser.getEvent()));
+            }
+            parser.getEvent();
+            value = map;
+        } else {
+            throw new UnsupportedDocumentException("Unexpected event " + event.getEventId());
+        }
+        remember(event, value);
+        return value;
+    }
+
+    // A merge key ("<<: *defaults") pulls entries in from elsewhere, which only a full load resolves
+    private static Event checkKey(Event key) {
+        if (key instanceof ScalarEvent scalar && scalar.getValue().equals("<<")
+                && (scalar.getTag() != null ? new Tag(scalar.getTag()).equals(Tag.MERGE) : scalar.isPlain())) {
+            throw new UnsupportedDocumentException("Merge key");
+        }
+        return key;
+    }
+
+    // Skips the node that starts with the given event, including all its children
+    private void skip(Event event) {
+        int depth = isStart(event) ? 1 : 0;
+        while (depth > 0) {
+            Event next = parser.getEvent();
+            if (isStart(next)) depth++;
+            else if (next.is(Event.ID.SequenceEnd) || next.is(Event.ID.MappingEnd)) depth--;
+        }
+    }
+
+    private static boolean isStart(Event event) {
+        return event.is(Event.ID.SequenceStart) || event.is(Event.ID.MappingStart);
+    }
+
+    private void remember(Event event, Object value) {
+        if (event instanceof NodeEvent node && node.getAnchor() != null) anchors.put(node.getAnchor(), value);
+    }
+
+    private void expect(Event.ID id) {
+        Event event = parser.getEvent();
+        if (!event.is(id)) throw new UnsupportedDocumentException("Expected " + id + " but got " + event.getEventId());
+    }
+
+    private static Object scalar(ScalarEvent event) {
+        String value = event.getValue();
+        Tag tag;
+        if (event.getTag() != null && !event.getTag().equals("!")) {
+            tag = new Tag(event.getTag());
+        } else if (event.isPlain()) {
+            tag = RESOLVER.resolve(NodeId.scalar, value, true);
+        } else {
+            return value;
+        }
+        if (tag.equals(Tag.NULL)) {
+            return null;
+        } else if (tag.equals(Tag.BOOL)) {
+            return value.equalsIgnoreCase("true") || value.equalsIgnoreCase("yes") || value.equalsIgnoreCase("on");
+        } else if (tag.equals(Tag.INT)) {
+            String digits = value.replace("_", "");
+            try {
+                long number = Long.parseLong(digits.startsWith("+") ? digits.substring(1) : digits);
+                return number == (int) number ? (Object) (int) number : (Object) number;
+            } catch (NumberFormatException e) {
+                return value;
+            }
+        } else if (tag.equals(Tag.FLOAT)) {
+            try {
+                return Double.parseDouble(value.replace("_", ""));
+            } catch (NumberFormatException e) {
+                return value;
+            }
+        }
+        return value;
+    }
+}
@@ -2,68 +2,178 @@ package ch.framedev;
 
 import com.jcraft.jsch.*;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.logging.Logger;
 
 /**
  * Simple SSH/SFTP helper using JSch for remote plugin folder operations.
  * Usage: create instance, connect(), call operations, disconnect().
+ * Operations borrow channels from an {@link SftpChannelPool}, so they may run concurrently from several threads
+ * and survive a dropped connection.
  */
 public class RemoteHelper {
+    private static final Logger LOGGER = Logger.getLogger(RemoteHelper.class.getName());
+
+    // Prints "F <size> <mtime> <sha256|-> <Y|N|U> <descriptor length> <name length>\n<name><descriptor>" for every
+    // plugin file and "E\n" at the end. Y: plugin.yml or paper-plugin.yml follows, N: the jar has none, U: unzip is
+    // missing. Files listed on stdin as "<size> <mtime> <name>" lines are unchanged if both still match; for them only
+    // "K <name length>\n<name>" is printed, without hashing or unzipping them. Lengths are in bytes (LC_ALL=C), so names
+    // with any characters frame correctly. Arguments: folder, disabled suffix, 1 to hash changed files or 0 for "-".
+    private static final String SCAN_SCRIPT = String.join("\n",
+            "LC_ALL=C; export LC_ALL",
+            "cd \"$1\" || exit 3",
+            "if command -v unzip >/dev/null 2>&1; then z=1; else z=0; fi",
+            "t=$(mktemp) || exit 4",
+            "k=$(mktemp) || exit 4",
+            "trap 'rm -f \"$t\" \"$k\"' EXIT",
+            "cat > \"$k\"",
+            "for f in *; do",
+            "  [ -f \"$f\" ] || continue",
+            "  case \"$f\" in *.jar|*\"$2\") ;; *) continue ;; esac",
+            "  s=$(stat -c '%s %Y' \"./$f\") || exit 5",
+            "  if [ -s \"$k\" ] && grep -Fxq -e \"$s $f\" \"$k\"; then printf 'K %s\\n%s' \"${#f}\" \"$f\"; continue; fi",
+            "  h=-",
+            "  if [ \"$3\" = 1 ]; then h=$(sha256sum < \"./$f\") || exit 6; fi",
+            "  y=U; : > \"$t\"",
+            "  if [ $z = 1 ]; then",
+            "    if { unzip -p \"./$f\" plugin.yml > \"$t\" 2>/dev/null && [ -s \"$t\" ]; } ||"
+                    + " { unzip -p \"./$f\" paper-plugin.yml > \"$t\" 2>/dev/null && [ -s \"$t\" ]; }; then y=Y; else y=N; : > \"$t\"; fi",
+            "  fi",
+            "  printf 'F %s %s %s %s %s\\n' \"$s\" \"${h%% *}\" \"$y\" \"$(wc -c < \"$t\" | tr -d ' ')\" \"${#f}\"",
+            "  printf '%s' \"$f\"",
+            "  cat \"$t\"",
+            "done",
+            "printf 'E\\n'");
+
     private final JSch jsch = new JSch();
-    private Session session;
-    private ChannelSftp sftp;
+    private volatile SftpChannelPool pool;
+    private volatile String connectionId;
+    private volatile int maxChannels = 4;
+
+    // Cached folder listings, keyed by remote directory without trailing slash
+    private final Map<String, PluginListing> listings = new ConcurrentHashMap<>();
+    // Indexes of the last folder scans, same keys; unchanged jars are taken from here instead of being read again
+    private final Map<String, PluginIndex> indexes = new ConcurrentHashMap<>();
+    private volatile long listingTtlMillis = 30_000;
+    private volatile boolean verifyHash = true;
+
+    // Number of SFTP channels opened side by side; takes effect on the next connect
+    public void setMaxChannels(int maxChannels) {
+        this.maxChannels = Math.max(1, maxChannels);
+    }
 
     // Connect using password
-    public void connect(String host, int port, String username, String password, int timeoutMs) throws JSchException {
-        session = jsch.getSession(username, host, port);
-        session.setPassword(password);
-        session.setConfig("StrictHostKeyChecking", "no");
-        session.connect(timeoutMs);
-        openSftp();
+    public synchronized void connect(String host, int port, String username, String password, int timeoutMs) throws JSchException {
+        openPool(username + "@" + host + ":" + port, () -> {
+            Session session = jsch.getSession(username, host, port);
+            session.setPassword(password);
+            session.setConfig("StrictHostKeyChecking", "no");
+            session.connect(timeoutMs);
+            return session;
+        });
     }
 
     // Connect using private key file (optional passphrase)
     @SuppressWarnings("unused")
-    public void connectWithKey(String host, int port, String username, String privateKeyPath, String passphrase, int timeoutMs) throws JSchException {
+    public synchronized void connectWithKey(String host, int port, String username, String privateKeyPath, String passphrase, int timeoutMs) throws JSchException {
         if (passphrase == null) jsch.addIdentity(privateKeyPath);
         else jsch.addIdentity(privateKeyPath, passphrase);
-        session = jsch.getSession(username, host, port);
-        session.setConfig("StrictHostKeyChecking", "no");
-        session.connect(timeoutMs);
-        openSftp();
+        openPool(username + "@" + host + ":" + port, () -> {
+            Session session = jsch.getSession(username, host, port);
+            session.setConfig("StrictHostKeyChecking", "no");
+            session.connect(timeoutMs);
+            return session;
+        });
     }
 
-    private void openSftp() throws JSchException {
-        Channel channel = session.openChannel("sftp");
-        channel.connect();
-        sftp = (ChannelSftp) channel;
+    private void openPool(String id, SftpChannelPool.SessionFactory factory) throws JSchException {
+        disconnect();
+        pool = new SftpChannelPool(factory, maxChannels);
+        connectionId = id;
     }
 
+    // True until disconnect(); a dropped link is re-established by the pool on the next operation
     @SuppressWarnings("BooleanMethodIsAlwaysInverted")
     public boolean isConnected() {
-        return session != null && session.isConnected() && sftp != null && sftp.isConnected();
+        SftpChannelPool p = pool;
+        return p != null && p.isOpen();
     }
 
+    // Closing the pool from another thread aborts running transfers
     public void disconnect() {
-        if (sftp != null) {
-            sftp.disconnect();
-            sftp = null;
-        }
-        if (session != null) {
-            session.disconnect();
-            session = null;
+        listings.clear();
+        indexes.clear();
+        SftpChannelPool p = pool;
+        pool = null;
+        if (p != null) p.close();
+    }
+
+    public String getConnectionId() {
+        return connectionId;
+    }
+
+    public SftpChannelPool.Metrics getPoolMetrics() {
+        SftpChannelPool p = pool;
+        return p != null ? p.getMetrics() : null;
+    }
+
+    public int getMaxChannels() {
+        return maxChannels;
+    }
+
+    // Run a call with a pooled channel, unwrapped: callers see exactly what the call threw
+    <T> T execute(SftpChannelPool.ChannelCall<T> call, boolean idempotent) throws Exception {
+        SftpChannelPool p = pool;
+        if (p == null) throw new SftpException(ChannelSftp.SSH_FX_NO_CONNECTION, "Not connected");
+        return p.execute(call, idempotent);
+    }
+
+    // Run a call with a pooled channel for methods that only declare SftpException
+    private <T> T withChannel(SftpChannelPool.ChannelCall<T> call, boolean idempotent) throws SftpException {
+        try {
+            return execute(call, idempotent);
+        } catch (SftpException | RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "Interrupted", e);
+        } catch (Exception e) {
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, e.getMessage(), e);
         }
     }
 
     // List files in remote directory
     @SuppressWarnings("unchecked")
     public List<String> listFiles(String remoteDir) throws SftpException {
-        Vector<ChannelSftp.LsEntry> entries = sftp.ls(remoteDir);
+        Vector<ChannelSftp.LsEntry> entries = withChannel(c -> c.ls(remoteDir), true);
         List<String> names = new ArrayList<>();
         for (ChannelSftp.LsEntry e : entries) {
             if (!".".equals(e.getFilename()) && !"..".equals(e.getFilename()) && !e.getAttrs().isDir() && !e.getFilename().startsWith(".")) {
@@ -73,44 +183,570 @@ public class RemoteHelper {
         return names;
     }
 
+    // How long a listing is served from cache before the directory mtime is checked again
+    public void setListingTtlMillis(long listingTtlMillis) {
+        this.listingTtlMillis = listingTtlMillis;
+    }
+
+    // Snapshot of a remote folder: served from cache while fresh, revalidated by directory mtime, otherwise listed once
+    public PluginListing getListing(String remoteDir, boolean forceRefresh) throws SftpException {
+        String key = listingKey(remoteDir);
+        PluginListing cached = listings.get(key);
+        if (!forceRefresh && cached != null) {
+            if (cached.isFresh(listingTtlMillis)) return cached;
+            if (withChannel(c -> c.stat(remoteDir), true).getMTime() * 1000L == cached.getDirectoryModified()) {
+                PluginListing touched = cached.touched();
+                listings.put(key, touched);
+                return touched;
+            }
+        }
+        PluginListing listing = readListing(remoteDir);
+        listings.put(key, listing);
+        return listing;
+    }
+
+    public void invalidateListings() {
+        listings.clear();
+        indexes.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private PluginListing readListing(String remoteDir) throws SftpException {
+        Vector<ChannelSftp.LsEntry> entries = withChannel(c -> c.ls(remoteDir), true);
+        List<PluginListing.FileInfo> files = new ArrayList<>();
+        long directoryModified = 0;
+        for (ChannelSftp.LsEntry e : entries) {
+            SftpATTRS attrs = e.getAttrs();
+            if (".".equals(e.getFilename())) {
+                directoryModified = attrs.getMTime() * 1000L;
+            } else if (!"..".equals(e.getFilename()) && !attrs.isDir() && !e.getFilename().startsWith(".")) {
+                files.add(new PluginListing.FileInfo(e.getFilename(), attrs.getSize(), attrs.getMTime() * 1000L));
+            }
+        }
+        return new PluginListing(files, directoryModified);
+    }
+
+    // Applies a change we made to the cached snapshot; the folder mtime is read again after the change, otherwise
+    // the next revalidation would see our own change as a foreign one and list the folder anyway
+    void updateListing(String remoteDir, UnaryOperator<PluginListing> update) {
+        String key = listingKey(remoteDir);
+        if (!listings.containsKey(key)) return;
+        long directoryModified;
+        try {
+            directoryModified = withChannel(c -> c.stat(remoteDir), true).getMTime() * 1000L;
+        } catch (SftpException | RuntimeException e) {
+            // the change itself succeeded; the folder is simply listed again next time
+            listings.remove(key);
+            return;
+        }
+        listings.computeIfPresent(key, (k, listing) -> update.apply(listing).withDirectoryModified(directoryModified));
+    }
+
+    // Applies a change we made to the index of the last scan, so the next scan still finds the jar unchanged
+    void updateIndex(String remoteDir, Consumer<PluginIndex> update) {
+        PluginIndex index = indexes.get(listingKey(remoteDir));
+        if (index != null) update.accept(index);
+    }
+
+    static String resolve(String remoteDir, String name) {
+        return remoteDir.endsWith("/") ? remoteDir + name : remoteDir + "/" + name;
+    }
+
+    private static String listingKey(String remoteDir) {
+        return remoteDir.length() > 1 && remoteDir.endsWith("/") ? remoteDir.substring(0, remoteDir.length() - 1) : remoteDir;
+    }
+
     // Upload local file to remote directory (overwrites)
     public void uploadFile(File localFile, String remoteDir) throws SftpException {
+        uploadFile(localFile, remoteDir, null);
+    }
+
+    // Upload local file to remote directory (overwrites), reporting progress to the optional monitor
+    public void uploadFile(File localFile, String remoteDir, SftpProgressMonitor monitor) throws SftpException {
+        uploadFile(localFile, remoteDir, localFile.getName(), monitor);
+    }
+
+    // Upload local file to remote directory under another name (overwrites), e.g. from the download cache
+    public void uploadFile(File localFile, String remoteDir, String remoteName, SftpProgressMonitor monitor) throws SftpException {
         if (!localFile.exists() || !localFile.isFile()) throw new IllegalArgumentException("Local file invalid");
-        String remotePath = remoteDir.endsWith("/") ? remoteDir + localFile.getName() : remoteDir + "/" + localFile.getName();
-        sftp.put(localFile.getAbsolutePath(), remotePath, ChannelSftp.OVERWRITE);
+        String expectedSha256;
+        try {
+            expectedSha256 = verifyHash ? PluginHelper.sha256(localFile) : null;
+        } catch (IOException e) {
+            throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "Cannot read " + localFile + ": " + e.getMessage(), e);
+        }
+        String stagingPath = resolve(remoteDir, StagedFiles.stagingName(remoteName));
+        withChannel(c -> {
+            try {
+                c.put(localFile.getAbsolutePath(), stagingPath, monitor, ChannelSftp.OVERWRITE);
+            } catch (SftpException | RuntimeException e) {
+                removeStaging(c, stagingPath);
+                throw e;
+            }
+            promote(c, stagingPath, resolve(remoteDir, remoteName), localFile.length(), expectedSha256);
+            return null;
+        }, true);
+        updateListing(remoteDir, listing -> listing.withFile(
+                new PluginListing.FileInfo(remoteName, localFile.length(), System.currentTimeMillis())));
+        updateIndex(remoteDir, index -> index.remove(remoteName));
+    }
+
+    // Stream a download from a URL straight into the remote directory, without a local temp copy
+    public HttpDownloader.Result uploadFromUrl(HttpDownloader downloader, URI uri, String remoteDir,
+                                               HttpDownloader.ProgressListener listener, BooleanSupplier cancelled) throws Exception {
+        MessageDigest digest = StagedFiles.newDigest();
+        String[] stagingPath = new String[1];
+        // not retried: a resume needs the same channel the partial upload was written with
+        HttpDownloader.Result result = execute(c -> {
+            HttpDownloader.Result downloaded;
+            try {
+                downloaded = downloader.download(uri, fileName -> {
+                    stagingPath[0] = resolve(remoteDir, StagedFiles.stagingName(fileName));
+                    return HttpDownloader.hashing(offset -> {
+                        try {
+                            // APPEND writes after the bytes the previous attempt already stored
+                            return c.put(stagingPath[0], null, offset == 0 ? ChannelSftp.OVERWRITE : ChannelSftp.APPEND, 0);
+                        } catch (SftpException e) {
+                            throw new IOException(e.getMessage(), e);
+                        }
+                    }, digest);
+                }, listener, cancelled);
+            } catch (Exception e) {
+                // failed or cancelled: no half-written jar is left in the plugins folder
+                if (stagingPath[0] != null) removeStaging(c, stagingPath[0]);
+                throw e;
+            }
+            promote(c, stagingPath[0], resolve(remoteDir, downloaded.fileName()), downloaded.bytes(),
+                    verifyHash ? HexFormat.of().formatHex(digest.digest()) : null);
+            return downloaded;
+        }, false);
+        updateListing(remoteDir, listing -> listing.withFile(
+                new PluginListing.FileInfo(result.fileName(), result.bytes(), System.currentTimeMillis())));
+        updateIndex(remoteDir, index -> index.remove(result.fileName()));
+        return result;
+    }
+
+    // Whether staged uploads are also verified by hashing them on the server (size is always verified)
+    public void setVerifyHash(boolean verifyHash) {
+        this.verifyHash = verifyHash;
+    }
+
+    public boolean isVerifyHash() {
+        return verifyHash;
+    }
+
+    /**
+     * Verifies an uploaded staging file and renames it over the final path. On failure the staging file is removed
+     * and the final path left untouched.
+     *
+     * @param channel        The channel the staging file was written with.
+     * @param stagingPath    The staging file.
+     * @param finalPath      The path to install to.
+     * @param expectedSize   The expected size, or -1 to skip the check.
+     * @param expectedSha256 The expected SHA-256, or null to skip the check. Skipped as well if the server has no sha256sum.
+     * @throws Exception If verification or the rename fails.
+     */
+    void promote(ChannelSftp channel, String stagingPath, String finalPath, long expectedSize, String expectedSha256) throws Exception {
+        try {
+            long size = channel.stat(stagingPath).getSize();
+            if (expectedSize >= 0 && size != expectedSize) {
+                throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "Size mismatch for " + finalPath + ": expected " + expectedSize + " bytes, wrote " + size);
+            }
+            if (expectedSha256 != null) {
+                int slash = stagingPath.lastIndexOf('/');
+                String name = stagingPath.substring(slash + 1);
+                String actual = remoteSha256(slash > 0 ? stagingPath.substring(0, slash) : "/", List.of(name)).get(name);
+                if (actual == null) {
+                    LOGGER.fine("Could not hash " + stagingPath + " remotely, verified size only");
+                } else if (!actual.equalsIgnoreCase(expectedSha256)) {
+                    throw new SftpException(ChannelSftp.SSH_FX_FAILURE, "Checksum mismatch for " + finalPath);
+                }
+            }
+            renameOver(channel, stagingPath, finalPath);
+        } catch (Exception e) {
+            removeStaging(channel, stagingPath);
+            throw e;
+        }
+    }
+
+    private static void removeStaging(ChannelSftp channel, String stagingPath) {
+        try {
+            channel.rm(stagingPath);
+        } catch (SftpException e) {
+            // never written, or the channel is gone; the hidden leftover does no harm
+            LOGGER.fine("Could not remove staging file " + stagingPath + ": " + e.getMessage());
+        }
+    }
+
+    // Rename replacing the target. JSch uses posix-rename@openssh.com when the server offers it, which is atomic;
+    // plain SFTP v3 rename refuses to overwrite, so without the extension the target is moved aside first and
+    // restored if the staging file cannot take its place. Any other rename failure leaves the target untouched.
+    private void renameOver(ChannelSftp channel, String from, String to) throws SftpException {
+        if (channel.getExtension("posix-rename@openssh.com") != null) {
+            channel.rename(from, to);
+            return;
+        }
+        try {
+            channel.rename(from, to);
+            return;
+        } catch (SftpException e) {
+            // the refusal to overwrite comes as a generic failure while both files exist
+            boolean refused;
+            try {
+                refused = e.id == ChannelSftp.SSH_FX_FAILURE && exists(channel, to) && exists(channel, from);
+            } catch (SftpException statError) {
+                e.addSuppressed(statError);
+                throw e;
+            }
+            if (!refused) throw e;
+        }
+        LOGGER.warning("Server has no atomic rename, replacing " + to + " non-atomically");
+        String backup = to + ".replaced-" + Long.toHexString(System.nanoTime());
+        channel.rename(to, backup);
+        try {
+            channel.rename(from, to);
+        } catch (SftpException e) {
+            try {
+                channel.rename(backup, to);
+            } catch (SftpException restore) {
+                e.addSuppressed(restore);
+                LOGGER.severe("Could not restore " + to + " from " + backup + ": " + restore.getMessage());
+            }
+            throw e;
+        }
+        try {
+            channel.rm(backup);
+        } catch (SftpException e) {
+            LOGGER.warning("Could not remove replaced file " + backup + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean exists(ChannelSftp channel, String path) throws SftpException {
+        try {
+            channel.stat(path);
+            return true;
+        } catch (SftpException e) {
+            if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) return false;
+            throw e;
+        }
     }
 
     // Download remote file to local destination (overwrites)
     public void downloadFile(String remoteFilePath, File localDest) throws Exception {
-        try (InputStream in = sftp.get(remoteFilePath); FileOutputStream out = new FileOutputStream(localDest)) {
-            byte[] buf = new byte[8192];
-            int len;
-            while ((len = in.read(buf)) != -1) out.write(buf, 0, len);
+        downloadFile(remoteFilePath, localDest, null);
+    }
+
+    // Download remote file to local destination (overwrites), reporting progress to the optional monitor
+    public void downloadFile(String remoteFilePath, File localDest, SftpProgressMonitor monitor) throws Exception {
+        execute(c -> {
+            try (InputStream in = c.get(remoteFilePath, monitor); FileOutputStream out = new FileOutputStream(localDest)) {
+                byte[] buf = new byte[8192];
+                int len;
+                while ((len = in.read(buf)) != -1) out.write(buf, 0, len);
+            }
+            return null;
+        }, true);
+    }
+
+    // Read a remote plugin's descriptor with ranged reads (zip directory + plugin.yml or paper-plugin.yml only) instead of downloading the jar
+    public PluginDescriptor readDescriptor(String remoteFilePath) throws Exception {
+        return execute(sftp -> readDescriptor(sftp, remoteFilePath), true);
+    }
+
+    private PluginDescriptor readDescriptor(ChannelSftp sftp, String remoteFilePath) throws SftpException, IOException {
+        SftpATTRS attrs = sftp.stat(remoteFilePath);
+        long size = attrs.getSize();
+        return PluginHelper.getDescriptorCache().get("sftp://" + connectionId + remoteFilePath, size, attrs.getMTime() * 1000L, () -> {
+            LongAdder transferred = new LongAdder();
+            ZipEntryReader.Source source = sftpSource(sftp, remoteFilePath, size, transferred);
+            byte[] yml = ZipEntryReader.readEntry(source, PluginHelper.DESCRIPTOR_FILES);
+            LOGGER.fine("Read descriptor of " + remoteFilePath + " (" + size + " bytes) with " + transferred.sum() + " bytes transferred");
+            return yml != null ? PluginHelper.parseDescriptor(yml) : null;
+        });
+    }
+
+    /**
+     * Reads the central directory of a remote jar with ranged reads, e.g. to compare class files across plugins
+     * without downloading them.
+     *
+     * @param remoteFilePath The remote jar.
+     * @return The entries in central directory order.
+     * @throws Exception If the file cannot be read or is not a supported zip.
+     */
+    public List<ZipEntryReader.CentralEntry> readCentralDirectory(String remoteFilePath) throws Exception {
+        return execute(sftp -> ZipEntryReader.readCentralDirectory(sftpSource(sftp, remoteFilePath, sftp.stat(remoteFilePath).getSize(), null)), true);
+    }
+
+    // Ranged reads of a remote file; counts the bytes read into transferred if it is not null
+    static ZipEntryReader.Source sftpSource(ChannelSftp sftp, String remoteFilePath, long size, LongAdder transferred) {
+        return new ZipEntryReader.Source() {
+            @Override
+            public long size() {
+                return size;
+            }
+
+            @Override
+            public InputStream open(long offset) throws IOException {
+                try {
+                    InputStream in = sftp.get(remoteFilePath, null, offset);
+                    if (transferred == null) return in;
+                    return new FilterInputStream(in) {
+                        @Override
+                        public int read(byte[] b, int off, int len) throws IOException {
+                            int n = super.read(b, off, len);
+                            if (n > 0) transferred.add(n);
+                            return n;
+                        }
+                    };
+                } catch (SftpException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Output of a remote command.
+     */
+    record ExecResult(int exitStatus, String stdout, String stderr) {
+    }
+
+    /**
+     * Consumes the standard output of a remote command while it runs.
+     */
+    @FunctionalInterface
+    interface OutputReader {
+        void read(InputStream stdout) throws Exception;
+    }
+
+    // Run a shell command on the server over an exec channel of the pooled session
+    ExecResult exec(String command) throws Exception {
+        return exec(command, null);
+    }
+
+    // Run a shell command, feeding it the given bytes (or nothing if null) on standard input
+    ExecResult exec(String command, byte[] stdin) throws Exception {
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ExecResult result = exec(command, stdin, in -> in.transferTo(stdout));
+        return new ExecResult(result.exitStatus(), stdout.toString(StandardCharsets.UTF_8), result.stderr());
+    }
+
+    // Run a shell command and stream its output to the reader; the result carries exit status and stderr only
+    ExecResult exec(String command, byte[] stdin, OutputReader reader) throws Exception {
+        SftpChannelPool p = pool;
+        if (p == null) throw new SftpException(ChannelSftp.SSH_FX_NO_CONNECTION, "Not connected");
+        return p.withSession(session -> {
+            ChannelExec channel = (ChannelExec) session.openChannel("exec");
+            try {
+                channel.setCommand(command);
+                if (stdin != null) channel.setInputStream(new ByteArrayInputStream(stdin));
+                ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+                channel.setErrStream(stderr);
+                InputStream in = channel.getInputStream();
+                channel.connect(10_000);
+                reader.read(in);
+                in.transferTo(OutputStream.nullOutputStream());
+                // the exit status arrives shortly after the output is closed
+                while (!channel.isClosed()) Thread.sleep(10);
+                return new ExecResult(channel.getExitStatus(), "", stderr.toString(StandardCharsets.UTF_8));
+            } finally {
+                channel.disconnect();
+            }
+        });
+    }
+
+    // Quote an argument for a POSIX shell
+    static String shellQuote(String argument) {
+        return "'" + argument.replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * Hashes remote files on the server with sha256sum, so they can be compared without downloading them.
+     * Files that are missing or cannot be hashed are absent from the result.
+     *
+     * @param remoteDir The remote directory.
+     * @param names     File names in that directory.
+     * @return SHA-256 hex digests by file name.
+     * @throws Exception If the command cannot be run.
+     */
+    public Map<String, String> remoteSha256(String remoteDir, Collection<String> names) throws Exception {
+        Map<String, String> hashes = new HashMap<>();
+        List<String> pending = new ArrayList<>(names);
+        // keep the command line short
+        for (int from = 0; from < pending.size(); from += 200) {
+            StringBuilder command = new StringBuilder("cd ").append(shellQuote(remoteDir)).append(" && sha256sum --");
+            for (String name : pending.subList(from, Math.min(pending.size(), from + 200))) {
+                command.append(' ').append(shellQuote(name));
+            }
+            ExecResult result = exec(command.toString());
+            for (String line : result.stdout().split("\n")) {
+                // "<hash>  <name>"; names with special characters are escaped and start with a backslash
+                if (line.length() > 66 && line.charAt(0) != '\\') {
+                    hashes.put(line.substring(66), line.substring(0, 64).toLowerCase(Locale.ROOT));
+                }
+            }
+            if (result.exitStatus() != 0) {
+                LOGGER.warning("sha256sum exited with " + result.exitStatus() + ": " + result.stderr().trim());
+            }
         }
+        return hashes;
+    }
+
+    /**
+     * Indexes a remote plugin folder without hashes.
+     *
+     * @see #scanFolder(String, String, boolean, boolean)
+     */
+    public PluginIndex scanFolder(String remoteDir, String disabledSuffix) throws Exception {
+        return scanFolder(remoteDir, disabledSuffix, false, false);
+    }
+
+    /**
+     * Indexes a whole remote plugin folder in one round trip. A single exec channel runs {@link #SCAN_SCRIPT}, which
+     * streams size, mtime, optionally SHA-256, and the descriptor file of every plugin jar; the stream is parsed here.
+     * Jars whose size and mtime match the last scan of the folder are neither hashed nor unzipped again; their entries
+     * are taken over from that scan. Descriptors also go into the descriptor cache, so later {@link #readDescriptor}
+     * calls for these jars are free. Needs a POSIX shell with GNU stat, and sha256sum for hashes. Without unzip on the
+     * server, descriptors are read with ranged reads instead.
+     *
+     * @param remoteDir      The remote plugin folder.
+     * @param disabledSuffix The suffix of disabled plugin files.
+     * @param hashes         Whether every entry needs its SHA-256, e.g. to export or compare the folder.
+     * @param forceRefresh   Whether to read every jar again instead of reusing the last scan.
+     * @return The index of the folder; entries without a readable descriptor have a null descriptor, entries without
+     * a hash (only if none was asked for) a null SHA-256. It stays up to date with our own renames and deletions.
+     * @throws Exception If the scan cannot run on this server; callers can fall back to per-file reads.
+     */
+    public PluginIndex scanFolder(String remoteDir, String disabledSuffix, boolean hashes, boolean forceRefresh) throws Exception {
+        long start = System.nanoTime();
+        PluginIndex previous = forceRefresh ? null : indexes.get(listingKey(remoteDir));
+        // the entries offered for reuse, as sent; the cached index may change while the scan runs
+        Map<String, PluginIndex.Entry> known = new HashMap<>();
+        ByteArrayOutputStream stdin = new ByteArrayOutputStream();
+        if (previous != null) {
+            for (PluginIndex.Entry entry : previous.entries()) {
+                if (hashes && entry.sha256() == null || entry.fileName().indexOf('\n') >= 0) continue;
+                known.put(entry.fileName(), entry);
+                stdin.writeBytes((entry.size() + " " + entry.lastModified() / 1000 + " " + entry.fileName() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        PluginIndex index = new PluginIndex();
+        List<PluginIndex.Entry> withoutUnzip = new ArrayList<>();
+        boolean[] complete = {false};
+        int[] reused = {0};
+        String command = "sh -c " + shellQuote(SCAN_SCRIPT) + " sh " + shellQuote(remoteDir) + " " + shellQuote(disabledSuffix)
+                + " " + (hashes ? 1 : 0);
+        ExecResult result = exec(command, stdin.toByteArray(), in -> complete[0] = readScan(new BufferedInputStream(in), remoteDir,
+                known, index, withoutUnzip, reused));
+        if (result.exitStatus() != 0 || !complete[0]) {
+            throw new IOException("Remote scan of " + remoteDir + " failed (exit " + result.exitStatus() + "): " + result.stderr().trim());
+        }
+
+        if (!withoutUnzip.isEmpty()) {
+            LOGGER.info("unzip is not available on the server; reading " + withoutUnzip.size() + " descriptors with ranged reads");
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<PluginIndex.Entry>> futures = new ArrayList<>();
+                for (PluginIndex.Entry entry : withoutUnzip) {
+                    futures.add(executor.submit(() -> new PluginIndex.Entry(entry.fileName(), entry.size(), entry.lastModified(),
+                            entry.sha256(), readDescriptor(resolve(remoteDir, entry.fileName())))));
+                }
+                for (Future<PluginIndex.Entry> future : futures) index.put(future.get());
+            }
+        }
+        indexes.put(listingKey(remoteDir), index);
+        LOGGER.info("Scanned " + index.size() + " plugins in " + remoteDir + " (" + reused[0] + " unchanged) in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return index;
+    }
+
+    // Parses the frames of SCAN_SCRIPT; returns whether the end marker was reached
+    private boolean readScan(InputStream in, String remoteDir, Map<String, PluginIndex.Entry> known, PluginIndex index,
+                             List<PluginIndex.Entry> withoutUnzip, int[] reused) throws IOException {
+        while (true) {
+            String header = readLine(in);
+            if (header == null) return false;
+            if (header.equals("E")) return true;
+            String[] fields = header.split(" ");
+            if (fields.length == 2 && fields[0].equals("K")) {
+                PluginIndex.Entry entry = known.get(new String(readExactly(in, Integer.parseInt(fields[1])), StandardCharsets.UTF_8));
+                if (entry == null) throw new IOException("Unexpected scan output: " + header);
+                index.put(entry);
+                reused[0]++;
+                continue;
+            }
+            if (fields.length != 7 || !fields[0].equals("F")) throw new IOException("Unexpected scan output: " + header);
+            long size = Long.parseLong(fields[1]);
+            long lastModified = Long.parseLong(fields[2]) * 1000L;
+            String sha256 = fields[3].equals("-") ? null : fields[3].toLowerCase(Locale.ROOT);
+            String name = new String(readExactly(in, Integer.parseInt(fields[6])), StandardCharsets.UTF_8);
+            byte[] yml = readExactly(in, Integer.parseInt(fields[5]));
+            PluginDescriptor descriptor = null;
+            switch (fields[4]) {
+                case "Y" -> descriptor = PluginHelper.getDescriptorCache().get("sftp://" + connectionId + resolve(remoteDir, name),
+                        size, lastModified, () -> PluginHelper.parseDescriptor(yml));
+                case "U" -> withoutUnzip.add(new PluginIndex.Entry(name, size, lastModified, sha256, null));
+                default -> {
+                    // "N": no descriptor in this jar
+                }
+            }
+            index.put(new PluginIndex.Entry(name, size, lastModified, sha256, descriptor));
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) return line.size() == 0 ? null : line.toString(StandardCharsets.US_ASCII);
+            if (line.size() > 1024) throw new IOException("Scan header too long");
+            line.write(b);
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] readExactly(InputStream in, int length) throws IOException {
+        byte[] bytes = in.readNBytes(length);
+        if (bytes.length != length) throw new EOFException("Scan output ended early");
+        return bytes;
     }
 
     // Rename remote file (used to enable/disable by renaming suffix)
     public void renameRemote(String remoteDir, String oldName, String newName) throws SftpException {
         String oldPath = remoteDir.endsWith("/") ? remoteDir + oldName : remoteDir + "/" + oldName;
         String newPath = remoteDir.endsWith("/") ? remoteDir + newName : remoteDir + "/" + newName;
-        sftp.rename(oldPath, newPath);
+        withChannel(c -> {
+            c.rename(oldPath, newPath);
+            return null;
+        }, false);
+        updateListing(remoteDir, listing -> listing.renamed(oldName, newName));
+        // a rename keeps size and mtime, so the jar need not be read again under its new name
+        updateIndex(remoteDir, index -> index.rename(oldName, newName));
     }
 
     // Delete remote file
     public void deleteRemote(String remoteDir, String name) throws SftpException {
         String path = remoteDir.endsWith("/") ? remoteDir + name : remoteDir + "/" + name;
-        sftp.rm(path);
+        withChannel(c -> {
+            c.rm(path);
+            return null;
+        }, false);
+        updateListing(remoteDir, listing -> listing.without(name));
+        updateIndex(remoteDir, index -> index.remove(name));
     }
 
     // Convenience operations
     public List<String> listPlugins(String remoteDir) throws SftpException {
-        return listFiles(remoteDir);
+        return getListing(remoteDir, false).getAvailable();
     }
 
     public void installPlugin(File localJar, String remoteDir) throws SftpException {
         uploadFile(localJar, remoteDir);
     }
 
+    public void installPlugin(File localJar, String remoteDir, SftpProgressMonitor monitor) throws SftpException {
+        uploadFile(localJar, remoteDir, monitor);
+    }
+
     public void enablePlugin(String remoteDir, String disabledName, String disabledSuffix) throws SftpException {
         if (!disabledName.endsWith(disabledSuffix))
             throw new IllegalArgumentException("File does not use disabled suffix");
@@ -0,0 +1,109 @@
+package ch.framedev;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Uploads local jars to a remote folder, skipping those the server already has.
+ * A file is considered identical if size and modification time match; if only the size matches, the content hash
+ * is computed on the server with sha256sum and compared to the local one, so no file is downloaded to decide.
+ */
+public class RemoteSync {
+
+    private static final Logger LOGGER = Logger.getLogger(RemoteSync.class.getName());
+
+    /**
+     * What a sync will do.
+     *
+     * @param changed   Files to upload because they are missing or differ remotely.
+     * @param unchanged Files the server already has.
+     * @param hashed    Number of files whose remote content hash had to be compared.
+     */
+    public record Plan(String remoteDir, List<File> changed, List<File> unchanged, int hashed) {
+
+        public long getUploadBytes() {
+            long bytes = 0;
+            for (File file : changed) bytes += file.length();
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d to upload (%.1f MB), %d unchanged, %d compared by hash", changed.size(),
+                    getUploadBytes() / 1_048_576.0, unchanged.size(), hashed);
+        }
+    }
+
+    /**
+     * Outcome of a sync.
+     */
+    public record Result(Plan plan, TransferEngine.BatchResult batch) {
+        @Override
+        public String toString() {
+            return plan.unchanged().size() + " unchanged, uploaded " + batch;
+        }
+    }
+
+    private final RemoteHelper remoteHelper;
+
+    public RemoteSync(RemoteHelper remoteHelper) {
+        this.remoteHelper = remoteHelper;
+    }
+
+    /**
+     * Compares local files to their remote counterparts.
+     *
+     * @param localFiles The files to sync.
+     * @param remoteDir  The remote directory.
+     * @return The plan.
+     * @throws Exception If the remote folder cannot be listed or hashed.
+     */
+    public Plan plan(List<File> localFiles, String remoteDir) throws Exception {
+        PluginListing listing = remoteHelper.getListing(remoteDir, true);
+        List<File> changed = new ArrayList<>();
+        List<File> unchanged = new ArrayList<>();
+        List<File> sameSize = new ArrayList<>();
+        for (File file : localFiles) {
+            PluginListing.FileInfo remote = listing.get(file.getName());
+            if (remote == null || remote.size() != file.length()) {
+                changed.add(file);
+            } else if (remote.lastModified() / 1000 == file.lastModified() / 1000) {
+                unchanged.add(file);
+            } else {
+                sameSize.add(file);
+            }
+        }
+        if (!sameSize.isEmpty()) {
+            Map<String, String> remoteHashes = remoteHelper.remoteSha256(remoteDir, sameSize.stream().map(File::getName).toList());
+            for (File file : sameSize) {
+                String remoteHash = remoteHashes.get(file.getName());
+                if (remoteHash != null && remoteHash.equals(PluginHelper.sha256(file))) unchanged.add(file);
+                else changed.add(file);
+            }
+        }
+        Plan plan = new Plan(remoteDir, changed, unchanged, sameSize.size());
+        LOGGER.info("Sync plan for " + remoteDir + ": " + plan);
+        return plan;
+    }
+
+    /**
+     * Uploads the changed files of a plan, giving them the local modification times.
+     *
+     * @param plan      The plan.
+     * @param engine    The transfer engine to upload with.
+     * @param listener  Optional progress listener.
+     * @param cancelled Polled while copying.
+     * @return The result.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public Result run(Plan plan, TransferEngine engine, TransferEngine.ProgressListener listener, BooleanSupplier cancelled)
+            throws InterruptedException {
+        List<TransferEngine.Item> items = new ArrayList<>();
+        for (File file : plan.changed()) items.add(TransferEngine.Item.upload(file, plan.remoteDir()));
+        return new Result(plan, engine.setPreserveTimes(true).run(items, listener, cancelled));
+    }
+}
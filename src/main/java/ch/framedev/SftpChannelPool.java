@@ -0,0 +1,260 @@
+package ch.framedev;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpException;
+
+import java.io.Closeable;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of SFTP channels on one SSH session.
+ * Each call gets a channel of its own, so listings, metadata reads and transfers can run side by side.
+ * The session is kept alive with server-alive messages and re-established with exponential backoff when it drops.
+ */
+public class SftpChannelPool implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(SftpChannelPool.class.getName());
+
+    private static final int KEEPALIVE_INTERVAL_MS = 15_000;
+    private static final int KEEPALIVE_COUNT_MAX = 3;
+    private static final int CHANNEL_CONNECT_TIMEOUT_MS = 10_000;
+    private static final int RECONNECT_ATTEMPTS = 4;
+    private static final long RECONNECT_INITIAL_DELAY_MS = 500;
+
+    /**
+     * Opens and connects a new SSH session.
+     */
+    @FunctionalInterface
+    public interface SessionFactory {
+        Session open() throws JSchException;
+    }
+
+    /**
+     * Work done with an exclusively borrowed channel.
+     */
+    @FunctionalInterface
+    public interface ChannelCall<T> {
+        T call(ChannelSftp channel) throws Exception;
+    }
+
+    /**
+     * Work done with the pool's session.
+     */
+    @FunctionalInterface
+    public interface SessionCall<T> {
+        T call(Session session) throws Exception;
+    }
+
+    /**
+     * Point-in-time pool statistics.
+     *
+     * @param openChannels    Channels currently connected (idle or in use).
+     * @param activeCalls     Calls currently holding a channel.
+     * @param maxChannels     Upper bound of concurrent channels.
+     * @param borrows         Calls served since the pool was created.
+     * @param totalWaitMillis Total time calls waited for a free channel.
+     * @param maxWaitMillis   Longest single wait for a free channel.
+     * @param reconnects      Times the session was re-established.
+     */
+    public record Metrics(int openChannels, int activeCalls, int maxChannels, long borrows, long totalWaitMillis,
+                          long maxWaitMillis, int reconnects) {
+        @Override
+        public String toString() {
+            return "Channels: " + openChannels + " open, " + activeCalls + " active, " + maxChannels + " max\n"
+                    + "Calls: " + borrows + ", total wait " + totalWaitMillis + " ms, max wait " + maxWaitMillis + " ms\n"
+                    + "Reconnects: " + reconnects;
+        }
+    }
+
+    private final SessionFactory sessionFactory;
+    private final int maxChannels;
+    private final BlockingDeque<ChannelSftp> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger openChannels = new AtomicInteger();
+    private final AtomicInteger activeCalls = new AtomicInteger();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicInteger reconnects = new AtomicInteger();
+    private volatile Session session;
+    private volatile boolean closed;
+
+    /**
+     * Opens the session right away so that connection errors surface to the caller.
+     *
+     * @param sessionFactory Opens a connected session; called again on reconnect.
+     * @param maxChannels    Maximum number of concurrent SFTP channels.
+     * @throws JSchException If the first connection fails.
+     */
+    public SftpChannelPool(SessionFactory sessionFactory, int maxChannels) throws JSchException {
+        if (maxChannels <= 0) throw new IllegalArgumentException("maxChannels must be positive");
+        this.sessionFactory = sessionFactory;
+        this.maxChannels = maxChannels;
+        this.permits = new Semaphore(maxChannels, true);
+        this.session = openSession();
+    }
+
+    /**
+     * Runs a call with a pooled channel.
+     *
+     * @param call                  The work to do.
+     * @param retryOnConnectionLoss Whether to run the call once more after a reconnect if the connection was lost.
+     *                              Only safe for calls that can be repeated.
+     * @return The result of the call.
+     * @throws Exception Whatever the call throws, or a connection error.
+     */
+    public <T> T execute(ChannelCall<T> call, boolean retryOnConnectionLoss) throws Exception {
+        if (closed) throw new SftpException(ChannelSftp.SSH_FX_NO_CONNECTION, "Not connected");
+        long waitStart = System.nanoTime();
+        permits.acquire();
+        long waited = System.nanoTime() - waitStart;
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        borrows.incrementAndGet();
+        activeCalls.incrementAndGet();
+        try {
+            for (int attempt = 0; ; attempt++) {
+                ChannelSftp channel = acquireChannel();
+                try {
+                    T result = call.call(channel);
+                    release(channel);
+                    return result;
+                } catch (Exception e) {
+                    boolean lost = isConnectionLoss(e, channel);
+                    // a failed stream may leave unread responses behind, so only plain SFTP errors keep the channel
+                    if (!lost && e instanceof SftpException) release(channel);
+                    else discard(channel);
+                    if (lost && retryOnConnectionLoss && attempt == 0 && !closed) {
+                        LOGGER.log(Level.INFO, "Connection lost, retrying after reconnect: " + e.getMessage());
+                        continue;
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            activeCalls.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * @return True if the underlying session is currently connected.
+     */
+    public boolean isSessionConnected() {
+        Session s = session;
+        return s != null && s.isConnected();
+    }
+
+    /**
+     * Runs a call with the session itself, reconnecting first if needed; e.g. to open exec channels.
+     *
+     * @param call The work to do with the session.
+     * @return The result of the call.
+     * @throws Exception Whatever the call throws, or a connection error.
+     */
+    public <T> T withSession(SessionCall<T> call) throws Exception {
+        return call.call(ensureSession());
+    }
+
+    public Metrics getMetrics() {
+        return new Metrics(openChannels.get(), activeCalls.get(), maxChannels, borrows.get(),
+                totalWaitNanos.get() / 1_000_000, maxWaitNanos.get() / 1_000_000, reconnects.get());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        ChannelSftp channel;
+        while ((channel = idle.pollFirst()) != null) discard(channel);
+        Session s = session;
+        session = null;
+        // in-flight channels die with the session, which aborts running transfers
+        if (s != null) s.disconnect();
+    }
+
+    private ChannelSftp acquireChannel() throws Exception {
+        ChannelSftp channel;
+        while ((channel = idle.pollFirst()) != null) {
+            if (channel.isConnected()) return channel;
+            discard(channel);
+        }
+        Session s = ensureSession();
+        channel = (ChannelSftp) s.openChannel("sftp");
+        try {
+            channel.connect(CHANNEL_CONNECT_TIMEOUT_MS);
+        } catch (JSchException e) {
+            channel.disconnect();
+            throw e;
+        }
+        openChannels.incrementAndGet();
+        return channel;
+    }
+
+    private void release(ChannelSftp channel) {
+        if (closed || !channel.isConnected()) discard(channel);
+        else idle.offerFirst(channel);
+    }
+
+    private void discard(ChannelSftp channel) {
+        channel.disconnect();
+        openChannels.decrementAndGet();
+    }
+
+    private synchronized Session ensureSession() throws Exception {
+        if (closed) throw new SftpException(ChannelSftp.SSH_FX_NO_CONNECTION, "Not connected");
+        if (session != null && session.isConnected()) return session;
+
+        // channels of the old session are useless now
+        ChannelSftp channel;
+        while ((channel = idle.pollFirst()) != null) discard(channel);
+        if (session != null) session.disconnect();
+
+        long delay = RECONNECT_INITIAL_DELAY_MS;
+        JSchException last = null;
+        for (int attempt = 1; attempt <= RECONNECT_ATTEMPTS && !closed; attempt++) {
+            try {
+                session = openSession();
+                if (closed) {
+                    session.disconnect();
+                    break;
+                }
+                reconnects.incrementAndGet();
+                LOGGER.info("Reconnected after " + attempt + " attempt(s)");
+                return session;
+            } catch (JSchException e) {
+                last = e;
+                LOGGER.log(Level.WARNING, "Reconnect attempt " + attempt + " failed: " + e.getMessage());
+                Thread.sleep(delay);
+                delay *= 2;
+            }
+        }
+        throw new SftpException(ChannelSftp.SSH_FX_CONNECTION_LOST, "Connection lost and reconnect failed", last);
+    }
+
+    private Session openSession() throws JSchException {
+        Session s = sessionFactory.open();
+        s.setServerAliveInterval(KEEPALIVE_INTERVAL_MS);
+        s.setServerAliveCountMax(KEEPALIVE_COUNT_MAX);
+        return s;
+    }
+
+    private boolean isConnectionLoss(Exception e, ChannelSftp channel) {
+        if (!channel.isConnected() || !isSessionConnected()) return true;
+        if (e instanceof SftpException sftpException) {
+            return sftpException.id == ChannelSftp.SSH_FX_CONNECTION_LOST || sftpException.id == ChannelSftp.SSH_FX_NO_CONNECTION;
+        }
+        return e instanceof JSchException;
+    }
+}
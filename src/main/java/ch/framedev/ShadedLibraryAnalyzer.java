@@ -0,0 +1,285 @@
+package ch.framedev;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds libraries that several plugins shade, i.e. classes with the same name in more than one enabled jar.
+ * Every copy is loaded by its plugin's own class loader, so each costs metaspace and startup time again.
+ * <p>
+ * Only central directories are read: a class is identified by its entry name, and two copies count as identical
+ * when their CRC-32 and size match. Copies that were relocated to another package cannot be matched by name and
+ * are not reported.
+ */
+public class ShadedLibraryAnalyzer {
+
+    private static final Logger LOGGER = Logger.getLogger(ShadedLibraryAnalyzer.class.getName());
+
+    private static final int MAX_CONCURRENT_READS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * Reads the central directory of one jar.
+     */
+    @FunctionalInterface
+    public interface DirectoryReader {
+        List<ZipEntryReader.CentralEntry> read(String fileName) throws Exception;
+    }
+
+    /**
+     * One plugin's copy of a library.
+     *
+     * @param fileName The plugin jar.
+     * @param classes  Duplicated classes of the library in this jar.
+     * @param bytes    Their uncompressed size.
+     */
+    public record Copy(String fileName, int classes, long bytes) {
+    }
+
+    /**
+     * A package root shipped by more than one plugin.
+     *
+     * @param name        The package root, e.g. "com.zaxxer.hikari".
+     * @param copies      The jars shipping it, largest copy first.
+     * @param classes     Distinct duplicated class names.
+     * @param versions    Most distinct contents seen for one class name; 1 means all copies are identical.
+     * @param wastedBytes Class bytes beyond one copy of each class.
+     */
+    public record Library(String name, List<Copy> copies, int classes, int versions, long wastedBytes) {
+    }
+
+    /**
+     * @param jars       Jars analyzed.
+     * @param classes    Class entries read.
+     * @param classBytes Their uncompressed size.
+     * @param libraries  Duplicated libraries, most wasted bytes first.
+     * @param errors     Jars that could not be read, with the reason.
+     */
+    public record Report(int jars, long classes, long classBytes, List<Library> libraries, Map<String, String> errors, long millis) {
+        public long getWastedBytes() {
+            return libraries.stream().mapToLong(Library::wastedBytes).sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s duplicated in %d libraries across %d jars (%,d classes, %s) in %.1f s",
+                    formatBytes(getWastedBytes()), libraries.size(), jars, classes, formatBytes(classBytes), millis / 1000.0);
+        }
+
+        /**
+         * @return A plain-text report: one block per library with the plugins that ship it.
+         */
+        public String toText() {
+            StringBuilder text = new StringBuilder(toString()).append("\n");
+            for (Library library : libraries) {
+                text.append("\n").append(library.name()).append(": ").append(formatBytes(library.wastedBytes())).append(" duplicated, ")
+                        .append(library.classes()).append(" classes in ").append(library.copies().size()).append(" plugins")
+                        .append(library.versions() > 1 ? ", " + library.versions() + " different versions" : ", identical copies").append("\n");
+                for (Copy copy : library.copies()) {
+                    text.append("   - ").append(copy.fileName()).append(": ").append(copy.classes()).append(" classes, ")
+                            .append(formatBytes(copy.bytes())).append("\n");
+                }
+            }
+            if (!errors.isEmpty()) {
+                text.append("\nNot analyzed:\n");
+                errors.forEach((name, error) -> text.append("   - ").append(name).append(": ").append(error).append("\n"));
+            }
+            return text.toString();
+        }
+    }
+
+    // One class entry of one jar
+    private record ClassCopy(int jar, long crc, long size) {
+    }
+
+    private final int packageDepth;
+
+    /**
+     * @param packageDepth Number of package segments that name a library, e.g. 3 for "com.zaxxer.hikari".
+     */
+    public ShadedLibraryAnalyzer(int packageDepth) {
+        this.packageDepth = Math.max(1, packageDepth);
+    }
+
+    /**
+     * Analyzes the enabled jars of a local plugin folder.
+     */
+    public Report analyzeLocal(File directory, PluginIndexer.ProgressListener listener, BooleanSupplier cancelled) throws InterruptedException {
+        File[] files = directory.listFiles(file -> file.isFile() && file.getName().endsWith(".jar") && !file.getName().startsWith("."));
+        List<String> names = new ArrayList<>();
+        if (files != null) for (File file : files) names.add(file.getName());
+        return analyze(names, name -> {
+            try (FileChannel channel = FileChannel.open(new File(directory, name).toPath(), StandardOpenOption.READ)) {
+                return ZipEntryReader.readCentralDirectory(ZipEntryReader.of(channel));
+            }
+        }, listener, cancelled);
+    }
+
+    /**
+     * Analyzes the enabled jars of a remote plugin folder with ranged reads of their central directories.
+     */
+    public Report analyzeRemote(RemoteHelper helper, String remoteDir, PluginIndexer.ProgressListener listener, BooleanSupplier cancelled)
+            throws Exception {
+        List<String> names = new ArrayList<>(helper.getListing(remoteDir, true).getInstalled());
+        return analyze(names, name -> helper.readCentralDirectory(RemoteHelper.resolve(remoteDir, name)), listener, cancelled);
+    }
+
+    /**
+     * Reads the given jars in parallel and groups their duplicated classes by package root.
+     *
+     * @param fileNames The jars.
+     * @param reader    Reads one jar's central directory.
+     * @param listener  Optional progress listener.
+     * @param cancelled Polled between jars.
+     * @return The report.
+     * @throws InterruptedException If cancelled.
+     */
+    public Report analyze(List<String> fileNames, DirectoryReader reader, PluginIndexer.ProgressListener listener,
+                          BooleanSupplier cancelled) throws InterruptedException {
+        long start = System.nanoTime();
+        Map<String, List<ClassCopy>> byClass = new ConcurrentHashMap<>();
+        Map<String, String> errors = new ConcurrentHashMap<>();
+        AtomicInteger done = new AtomicInteger();
+        long[] totals = new long[2];
+        Semaphore permits = new Semaphore(MAX_CONCURRENT_READS);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < fileNames.size(); i++) {
+                int jar = i;
+                String name = fileNames.get(i);
+                futures.add(executor.submit(() -> {
+                    if (cancelled.getAsBoolean()) return null;
+                    List<ZipEntryReader.CentralEntry> entries;
+                    permits.acquire();
+                    try {
+                        entries = reader.read(name);
+                    } catch (Exception e) {
+                        LOGGER.log(Level.FINE, "Cannot analyze " + name, e);
+                        errors.put(name, String.valueOf(e.getMessage()));
+                        return null;
+                    } finally {
+                        permits.release();
+                    }
+                    long classes = 0;
+                    long bytes = 0;
+                    for (ZipEntryReader.CentralEntry entry : entries) {
+                        String entryName = entry.name();
+                        if (!entryName.endsWith(".class") || entryName.endsWith("module-info.class") || entryName.startsWith("META-INF/")) {
+                            continue;
+                        }
+                        List<ClassCopy> copies = byClass.computeIfAbsent(entryName, k -> new ArrayList<>(2));
+                        synchronized (copies) {
+                            copies.add(new ClassCopy(jar, entry.crc(), entry.size()));
+                        }
+                        classes++;
+                        bytes += entry.size();
+                    }
+                    synchronized (totals) {
+                        totals[0] += classes;
+                        totals[1] += bytes;
+                    }
+                    if (listener != null) listener.onProgress(done.incrementAndGet(), fileNames.size());
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    LOGGER.log(Level.WARNING, "Analysis failed: " + e.getMessage(), e);
+                }
+            }
+        }
+        if (cancelled.getAsBoolean()) throw new InterruptedException("Analysis cancelled");
+
+        List<Library> libraries = group(byClass, fileNames);
+        Report report = new Report(fileNames.size() - errors.size(), totals[0], totals[1], libraries, new LinkedHashMap<>(errors),
+                (System.nanoTime() - start) / 1_000_000);
+        LOGGER.info(report.toString());
+        return report;
+    }
+
+    private List<Library> group(Map<String, List<ClassCopy>> byClass, List<String> fileNames) {
+        // per library: class count, version count, wasted bytes, and per jar its classes and bytes
+        Map<String, long[]> stats = new HashMap<>();
+        Map<String, Map<Integer, long[]>> perJar = new HashMap<>();
+        for (Map.Entry<String, List<ClassCopy>> entry : byClass.entrySet()) {
+            List<ClassCopy> copies = entry.getValue();
+            if (copies.size() < 2) continue;
+            Set<Integer> jars = new HashSet<>();
+            Set<Long> contents = new HashSet<>();
+            long total = 0;
+            long largest = 0;
+            for (ClassCopy copy : copies) {
+                jars.add(copy.jar());
+                contents.add(copy.crc() * 31 + copy.size());
+                total += copy.size();
+                largest = Math.max(largest, copy.size());
+            }
+            if (jars.size() < 2) continue;
+            String library = libraryName(entry.getKey());
+            long[] s = stats.computeIfAbsent(library, k -> new long[3]);
+            s[0]++;
+            s[1] = Math.max(s[1], contents.size());
+            s[2] += total - largest;
+            Map<Integer, long[]> jarStats = perJar.computeIfAbsent(library, k -> new HashMap<>());
+            for (ClassCopy copy : copies) {
+                long[] j = jarStats.computeIfAbsent(copy.jar(), k -> new long[2]);
+                j[0]++;
+                j[1] += copy.size();
+            }
+        }
+        List<Library> libraries = new ArrayList<>(stats.size());
+        for (Map.Entry<String, long[]> entry : stats.entrySet()) {
+            List<Copy> copies = new ArrayList<>();
+            perJar.get(entry.getKey()).forEach((jar, j) -> copies.add(new Copy(fileNames.get(jar), (int) j[0], j[1])));
+            copies.sort(Comparator.comparingLong(Copy::bytes).reversed());
+            long[] s = entry.getValue();
+            libraries.add(new Library(entry.getKey(), List.copyOf(copies), (int) s[0], (int) s[1], s[2]));
+        }
+        libraries.sort(Comparator.comparingLong(Library::wastedBytes).reversed().thenComparing(Library::name));
+        return libraries;
+    }
+
+    // "com/zaxxer/hikari/pool/HikariPool.class" -> "com.zaxxer.hikari" at depth 3
+    private String libraryName(String className) {
+        int end = className.lastIndexOf('/');
+        if (end < 0) return "(default package)";
+        int segments = 0;
+        int i = 0;
+        while (i < end) {
+            int next = className.indexOf('/', i);
+            if (next < 0 || next > end) next = end;
+            if (++segments == packageDepth) {
+                end = next;
+                break;
+            }
+            i = next + 1;
+        }
+        return className.substring(0, end).replace('/', '.');
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+}
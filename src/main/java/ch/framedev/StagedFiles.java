@@ -0,0 +1,148 @@
+package ch.framedev;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Crash-safe installs: a file is written under a hidden staging name next to its target, verified, and only then
+ * renamed over the target in one atomic step. A server scanning the folder never sees a half-written jar, and an
+ * interrupted install leaves the previous version in place.
+ */
+public final class StagedFiles {
+
+    private static final Logger LOGGER = Logger.getLogger(StagedFiles.class.getName());
+
+    private StagedFiles() {
+    }
+
+    /**
+     * @param name The final file name.
+     * @return A hidden, unique name to write to first. It neither ends in .jar nor shows up in listings.
+     */
+    public static String stagingName(String name) {
+        return "." + name + ".part-" + Long.toHexString(ThreadLocalRandom.current().nextLong() & 0xffffffffL);
+    }
+
+    /**
+     * @return A staging file in the same folder as the target, so the final rename stays on one file system.
+     */
+    public static File stagingFile(File target) {
+        return new File(target.getAbsoluteFile().getParentFile(), stagingName(target.getName()));
+    }
+
+    /**
+     * @return A new SHA-256 digest.
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Copies a stream into the target through a staging file.
+     *
+     * @param in           The source, read to the end but not closed.
+     * @param target       The file to install.
+     * @param expectedSize The expected number of bytes, or -1 if unknown.
+     * @param bufferSize   The copy buffer size.
+     * @param progress     Receives the number of bytes of each write; may be null.
+     * @param cancelled    Polled while copying.
+     * @return The SHA-256 of the installed file.
+     * @throws IOException If copying or verifying fails; the target is then left untouched.
+     */
+    public static String copy(InputStream in, File target, long expectedSize, int bufferSize, LongConsumer progress,
+                              BooleanSupplier cancelled) throws IOException {
+        File staging = stagingFile(target);
+        try {
+            MessageDigest digest = newDigest();
+            DigestInputStream hashing = new DigestInputStream(in, digest);
+            try (FileOutputStream out = new FileOutputStream(staging)) {
+                byte[] buf = new byte[bufferSize];
+                int len;
+                while ((len = hashing.read(buf)) != -1) {
+                    if (cancelled.getAsBoolean()) throw new InterruptedIOException("Install cancelled");
+                    out.write(buf, 0, len);
+                    if (progress != null) progress.accept(len);
+                }
+                // the data must be on disk before the rename makes it visible
+                out.getFD().sync();
+            }
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            promote(staging, target, expectedSize, sha256);
+            return sha256;
+        } finally {
+            if (staging.exists() && !staging.delete()) staging.deleteOnExit();
+        }
+    }
+
+    /**
+     * Installs a local file whose content is already verified, e.g. a cached download, through a staging file.
+     * The copy is left to the file system and only its size is checked, so the source is not read again here.
+     *
+     * @param source       The file to install.
+     * @param target       The file to install it as.
+     * @param expectedSize The expected size, or -1 to skip the check.
+     * @throws IOException If copying fails; the target is then left untouched.
+     */
+    public static void install(File source, File target, long expectedSize) throws IOException {
+        File staging = stagingFile(target);
+        try {
+            Files.copy(source.toPath(), staging.toPath());
+            // the data must be on disk before the rename makes it visible
+            try (FileOutputStream out = new FileOutputStream(staging, true)) {
+                out.getFD().sync();
+            }
+            promote(staging, target, expectedSize, null);
+        } finally {
+            if (staging.exists() && !staging.delete()) staging.deleteOnExit();
+        }
+    }
+
+    /**
+     * Verifies a written staging file and renames it over the target.
+     *
+     * @param staging        The staging file.
+     * @param target         The file to install.
+     * @param expectedSize   The expected size, or -1 to skip the check.
+     * @param expectedSha256 The expected SHA-256 hex digest, or null to skip the check.
+     * @throws IOException If the staging file does not match; it is deleted then and the target left untouched.
+     */
+    public static void promote(File staging, File target, long expectedSize, String expectedSha256) throws IOException {
+        try {
+            if (expectedSize >= 0 && staging.length() != expectedSize) {
+                throw new IOException("Size mismatch for " + target.getName() + ": expected " + expectedSize + " bytes, wrote " + staging.length());
+            }
+            if (expectedSha256 != null) {
+                String actual = PluginHelper.sha256(staging);
+                if (!actual.equalsIgnoreCase(expectedSha256)) {
+                    throw new IOException("Checksum mismatch for " + target.getName());
+                }
+            }
+            try {
+                Files.move(staging.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                LOGGER.warning("Atomic rename not supported for " + target + ", replacing non-atomically");
+                Files.move(staging.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            if (staging.exists() && !staging.delete()) staging.deleteOnExit();
+        }
+    }
+}
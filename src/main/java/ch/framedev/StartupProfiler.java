@@ -0,0 +1,324 @@
+package ch.framedev;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Attributes server startup time to plugins from the "Loading X vY" and "Enabling X vY" lines of latest.log.
+ * A plugin's phase lasts from its line until the next plugin's line or the next server milestone ("Preparing level",
+ * "Done"), so world loading is not charged to the last plugin enabled before it.
+ * <p>
+ * The log is read line by line through a fixed buffer and only the timings of the current boot are kept, so memory
+ * does not grow with the log. A profiler remembers how far it has read, so a log that grew is only read from there on,
+ * locally as well as remotely. Log timestamps usually have second resolution; short phases then show as 0 or 1 s.
+ */
+public class StartupProfiler {
+
+    // Longest line prefix looked at; plugin and milestone lines are far shorter, stack traces are cut off
+    private static final int MAX_LINE = 512;
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private static final Pattern PLUGIN_LINE = Pattern.compile("\\[[^\\]]+\\] (Loading|Enabling) (?:server plugin )?(.+?) v\\S+\\s*");
+    private static final Pattern DONE = Pattern.compile("Done \\((\\d+(?:[.,]\\d+)?)s\\)!.*");
+
+    // Prints "from <offset> <first 64 bytes in hex>" and the complete lines of interest after that offset, then
+    // "consumed <bytes>" on stderr. The offset is the given one, or 0 if the log shrank or its start changed; a last
+    // line that is still being written is not consumed. Arguments: log file, offset, head in hex.
+    private static final String REMOTE_SCRIPT = String.join("\n",
+            "LC_ALL=C; export LC_ALL",
+            "s=$(wc -c < \"$1\") || exit 2",
+            "s=$((s)); p=$2",
+            "h=$(head -c 64 \"$1\" | od -An -v -tx1 | tr -d ' \\n')",
+            "case \"$h\" in \"$3\"*) ;; *) p=0 ;; esac",
+            "[ \"$s\" -ge \"$p\" ] || p=0",
+            "printf 'from %s %s\\n' \"$p\" \"$h\"",
+            "tail -c +$((p + 1)) \"$1\" | head -c $((s - p)) | awk -v m=$((s - p)) '",
+            "  NR > 1 && prev ~ /Loading |Enabling |Preparing level|Done [(]|Starting minecraft server/ { print prev }",
+            "  { prev = $0; n += length($0) + 1 }",
+            "  END {",
+            "    c = n + 0",
+            "    if (n > m) c = n - length(prev) - 1",
+            "    else if (NR > 0 && prev ~ /Loading |Enabling |Preparing level|Done [(]|Starting minecraft server/) print prev",
+            "    print \"consumed \" c | \"cat 1>&2\"",
+            "  }'");
+    private static final Pattern REMOTE_HEADER = Pattern.compile("from (\\d+) ([0-9a-f]*)");
+    private static final Pattern REMOTE_CONSUMED = Pattern.compile("consumed (\\d+)");
+
+    /**
+     * Time one plugin took in each phase.
+     */
+    public record Timing(String plugin, long loadMillis, long enableMillis) {
+        public long totalMillis() {
+            return loadMillis + enableMillis;
+        }
+    }
+
+    /**
+     * @param timings     Plugins by total time, slowest first.
+     * @param doneMillis  Startup time the server reported in its "Done" line, or -1 if it has not finished starting.
+     * @param bytesRead   Log bytes read so far.
+     */
+    public record Report(List<Timing> timings, long doneMillis, long bytesRead) {
+        public long getPluginMillis() {
+            return timings.stream().mapToLong(Timing::totalMillis).sum();
+        }
+
+        /**
+         * @return Enable plus load times by plugin name, e.g. as weights for a {@link DependencyGraph}.
+         */
+        public Map<String, Long> getMillisByPlugin() {
+            Map<String, Long> millis = new HashMap<>();
+            for (Timing timing : timings) millis.put(timing.plugin(), timing.totalMillis());
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d plugins took %.1f s of %s", timings.size(), getPluginMillis() / 1000.0,
+                    doneMillis >= 0 ? String.format("a %.1f s startup", doneMillis / 1000.0) : "an unfinished startup");
+        }
+
+        /**
+         * @return A plain-text report, slowest plugins first.
+         */
+        public String toText() {
+            StringBuilder text = new StringBuilder(toString()).append("\n\n");
+            text.append(String.format("  %-32s %9s %9s %9s%n", "Plugin", "Load", "Enable", "Total"));
+            for (Timing timing : timings) {
+                text.append(String.format("  %-32s %8.1fs %8.1fs %8.1fs%n", timing.plugin(), timing.loadMillis() / 1000.0,
+                        timing.enableMillis() / 1000.0, timing.totalMillis() / 1000.0));
+            }
+            return text.toString();
+        }
+    }
+
+    private final Map<String, long[]> timings = new LinkedHashMap<>();
+    private final byte[] line = new byte[MAX_LINE];
+    private int lineLength;
+    private boolean lineTruncated;
+    private long position;
+    // start of the log, to notice a file that was replaced by a new one of at least the same size
+    private byte[] head = new byte[0];
+
+    private String openPlugin;
+    private int openPhase;
+    private long openSince;
+    private long lastTime = -1;
+    private long dayOffset;
+    private long doneMillis = -1;
+    private boolean done;
+
+    /**
+     * Reads what was appended to a local log since the last call, or the whole log if it is new or was replaced.
+     *
+     * @param log       The log file, e.g. logs/latest.log.
+     * @param cancelled Polled between buffers.
+     * @return The report of the latest boot in the log.
+     * @throws IOException If the log cannot be read.
+     */
+    public synchronized Report readLocal(File log, BooleanSupplier cancelled) throws IOException, InterruptedException {
+        try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() < position || !startsWith(channel, head)) reset();
+            channel.position(position);
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            while (channel.read(buffer) > 0) {
+                if (cancelled.getAsBoolean()) throw new InterruptedException("Cancelled");
+                buffer.flip();
+                feed(buffer.array(), 0, buffer.limit());
+                buffer.clear();
+            }
+        }
+        return report();
+    }
+
+    /**
+     * Reads what was appended to a remote log since the last call, or the whole log if it is new or was replaced.
+     * Lines are selected on the server, so only the lines of interest are transferred.
+     *
+     * @param helper    A connected helper; a profiler should be used for one server only.
+     * @param logPath   The remote log file, e.g. /srv/mc/logs/latest.log.
+     * @param cancelled Polled between buffers.
+     * @return The report of the latest boot in the log.
+     * @throws Exception If the log cannot be read.
+     */
+    public synchronized Report readRemote(RemoteHelper helper, String logPath, BooleanSupplier cancelled) throws Exception {
+        String command = "sh -c " + RemoteHelper.shellQuote(REMOTE_SCRIPT) + " sh " + RemoteHelper.shellQuote(logPath) + " "
+                + position + " " + RemoteHelper.shellQuote(HexFormat.of().formatHex(head));
+        long[] from = {-1};
+        try {
+            RemoteHelper.ExecResult result = helper.exec(command, null, in -> {
+                Matcher header = REMOTE_HEADER.matcher(readHeader(in));
+                if (!header.matches()) return;
+                from[0] = Long.parseLong(header.group(1));
+                if (from[0] != position) reset();
+                head = HexFormat.of().parseHex(header.group(2));
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    if (cancelled.getAsBoolean()) throw new InterruptedException("Cancelled");
+                    scan(buffer, 0, n);
+                }
+            });
+            Matcher consumed = REMOTE_CONSUMED.matcher(result.stderr());
+            if (result.exitStatus() != 0 || from[0] < 0 || !consumed.find()) {
+                throw new IOException("Cannot read " + logPath + ": " + result.stderr().trim());
+            }
+            position = from[0] + Long.parseLong(consumed.group(1));
+        } catch (Exception e) {
+            // lines of a partly read chunk would be counted twice by the next call
+            reset();
+            throw e;
+        }
+        return report();
+    }
+
+    private static String readHeader(InputStream in) throws IOException {
+        StringBuilder header = new StringBuilder();
+        int b;
+        while ((b = in.read()) >= 0 && b != '\n') {
+            if (header.length() >= MAX_LINE) throw new IOException("Unexpected output from the server");
+            header.append((char) b);
+        }
+        return header.toString();
+    }
+
+    /**
+     * Reads log data from a stream until its end; may be called again with data that follows.
+     */
+    public synchronized void read(InputStream in, BooleanSupplier cancelled) throws IOException, InterruptedException {
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            if (cancelled.getAsBoolean()) throw new InterruptedException("Cancelled");
+            feed(buffer, 0, n);
+        }
+    }
+
+    /**
+     * @return The timings of the latest boot read so far; a phase that has not ended yet is not counted.
+     */
+    public synchronized Report report() {
+        List<Timing> result = new ArrayList<>(timings.size());
+        timings.forEach((plugin, millis) -> result.add(new Timing(plugin, millis[0], millis[1])));
+        result.sort(Comparator.comparingLong(Timing::totalMillis).reversed().thenComparing(Timing::plugin));
+        return new Report(List.copyOf(result), doneMillis, position);
+    }
+
+    private void reset() {
+        timings.clear();
+        lineLength = 0;
+        lineTruncated = false;
+        position = 0;
+        head = new byte[0];
+        openPlugin = null;
+        lastTime = -1;
+        dayOffset = 0;
+        doneMillis = -1;
+        done = false;
+    }
+
+    private boolean startsWith(FileChannel channel, byte[] prefix) throws IOException {
+        if (prefix.length == 0) return true;
+        ByteBuffer buffer = ByteBuffer.allocate(prefix.length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) throw new EOFException();
+            }
+        } catch (EOFException e) {
+            return false;
+        }
+        return Arrays.equals(buffer.array(), prefix);
+    }
+
+    private void feed(byte[] data, int offset, int length) {
+        if (head.length < 64 && position < 64) {
+            int take = (int) Math.min(64 - position, length);
+            head = Arrays.copyOf(head, head.length + take);
+            System.arraycopy(data, offset, head, head.length - take, take);
+        }
+        position += length;
+        scan(data, offset, length);
+    }
+
+    // Splits data into lines; the position is tracked by the caller
+    private void scan(byte[] data, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            byte b = data[i];
+            if (b == '\n') {
+                if (!lineTruncated || lineLength > 0) onLine(new String(line, 0, lineLength, StandardCharsets.UTF_8));
+                lineLength = 0;
+                lineTruncated = false;
+            } else if (lineLength < MAX_LINE) {
+                if (b != '\r') line[lineLength++] = b;
+            } else {
+                lineTruncated = true;
+            }
+        }
+    }
+
+    private void onLine(String text) {
+        // "[12:34:56 INFO]: msg", "[12:34:56] [Server thread/INFO]: msg" or with ".SSS" after the seconds
+        if (text.length() < 10 || text.charAt(0) != '[' || text.charAt(3) != ':' || text.charAt(6) != ':') return;
+        long time;
+        try {
+            time = (Integer.parseInt(text, 1, 3, 10) * 3600L + Integer.parseInt(text, 4, 6, 10) * 60L
+                    + Integer.parseInt(text, 7, 9, 10)) * 1000L;
+            if (text.charAt(9) == '.' && text.length() > 12) time += Integer.parseInt(text, 10, 13, 10);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        int message = text.indexOf("]: ");
+        if (message < 0) return;
+        String body = text.substring(message + 3);
+
+        if (body.startsWith("Starting minecraft server")) {
+            timings.clear();
+            openPlugin = null;
+            doneMillis = -1;
+            done = false;
+        }
+        if (lastTime >= 0 && time + dayOffset < lastTime - DAY_MILLIS / 2) dayOffset += DAY_MILLIS;
+        time += dayOffset;
+        lastTime = time;
+        if (done) return;
+
+        Matcher plugin = PLUGIN_LINE.matcher(body);
+        boolean pluginLine = plugin.matches();
+        Matcher doneLine = DONE.matcher(body);
+        boolean milestone = doneLine.matches() || body.startsWith("Preparing level");
+        if (pluginLine || milestone) close(time);
+        if (pluginLine) {
+            openPlugin = plugin.group(2);
+            openPhase = plugin.group(1).equals("Loading") ? 0 : 1;
+            openSince = time;
+            timings.computeIfAbsent(openPlugin, k -> new long[2]);
+        }
+        if (doneLine.matches()) {
+            doneMillis = Math.round(Double.parseDouble(doneLine.group(1).replace(',', '.')) * 1000);
+            done = true;
+        }
+    }
+
+    private void close(long time) {
+        if (openPlugin != null) timings.get(openPlugin)[openPhase] += time - openSince;
+        openPlugin = null;
+    }
+}
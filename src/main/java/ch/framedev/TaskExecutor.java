@@ -0,0 +1,229 @@
+package ch.framedev;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs blocking plugin-folder and SFTP work on virtual threads, away from the Swing event thread.
+ * Completion callbacks and progress notifications are always delivered on the event thread.
+ */
+public class TaskExecutor {
+
+    private static final Logger LOGGER = Logger.getLogger(TaskExecutor.class.getName());
+
+    /**
+     * A unit of background work. Long-running jobs should report progress and poll {@link Task#isCancelled()}.
+     */
+    @FunctionalInterface
+    public interface Job<T> {
+        T run(Task<T> task) throws Exception;
+    }
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<Task<?>> running = ConcurrentHashMap.newKeySet();
+    private final List<Consumer<Task<?>>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Submits a job for background execution.
+     *
+     * @param name      Human readable name shown in the status bar.
+     * @param job       The work to run off the event thread.
+     * @param onSuccess Called on the event thread with the job's result, unless the task was cancelled.
+     * @param onFailure Called on the event thread if the job throws, unless the task was cancelled. Errors such as
+     *                  OutOfMemoryError arrive wrapped in an {@link ExecutionException}.
+     * @return A handle that can be used to follow or cancel the task.
+     */
+    public <T> Task<T> submit(String name, Job<T> job, Consumer<T> onSuccess, Consumer<Exception> onFailure) {
+        Task<T> task = new Task<>(this, name);
+        running.add(task);
+        fireChanged(task);
+        task.future = executor.submit(() -> {
+            // a task cancelled before it started has already been finished by cancel()
+            if (!task.started.compareAndSet(false, true)) return;
+            try {
+                T result = job.run(task);
+                task.finish();
+                SwingUtilities.invokeLater(() -> {
+                    if (!task.isCancelled() && onSuccess != null) onSuccess.accept(result);
+                });
+            } catch (Throwable t) {
+                task.finish();
+                if (task.isCancelled()) {
+                    LOGGER.log(Level.FINE, "Task cancelled: " + name);
+                    return;
+                }
+                LOGGER.log(Level.WARNING, "Task failed: " + name + ": " + t.getMessage(), t);
+                Exception ex = t instanceof Exception e ? e : new ExecutionException(t.toString(), t);
+                SwingUtilities.invokeLater(() -> {
+                    if (onFailure != null) onFailure.accept(ex);
+                });
+            } finally {
+                task.finish();
+            }
+        });
+        return task;
+    }
+
+    /**
+     * Registers a listener that is notified on the event thread whenever a task starts, progresses or ends.
+     *
+     * @param listener The listener.
+     */
+    public void addListener(Consumer<Task<?>> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return A snapshot of the tasks that have not finished yet.
+     */
+    public List<Task<?>> getRunningTasks() {
+        return new ArrayList<>(running);
+    }
+
+    /**
+     * Cancels every running task.
+     */
+    public void cancelAll() {
+        for (Task<?> task : getRunningTasks()) {
+            task.cancel();
+        }
+    }
+
+    public void shutdown() {
+        cancelAll();
+        executor.shutdownNow();
+    }
+
+    private void fireChanged(Task<?> task) {
+        if (listeners.isEmpty()) return;
+        SwingUtilities.invokeLater(() -> {
+            for (Consumer<Task<?>> listener : listeners) {
+                listener.accept(task);
+            }
+        });
+    }
+
+    /**
+     * Handle of a submitted job. Progress is a percentage from 0 to 100, or -1 while it is unknown.
+     */
+    public static final class Task<T> {
+        private final TaskExecutor owner;
+        private final String name;
+        private volatile int progress = -1;
+        private volatile String message;
+        private volatile boolean cancelled;
+        private volatile boolean done;
+        private volatile Future<?> future;
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        private Task(TaskExecutor owner, String name) {
+            this.owner = owner;
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getProgress() {
+            return progress;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Updates the progress from a done/total pair. Listeners are only notified when the percentage changes.
+         *
+         * @param done  Units of work done so far.
+         * @param total Total units of work, or a value below 1 if unknown.
+         */
+        public void setProgress(long done, long total) {
+            int percent = total > 0 ? (int) Math.min(100, done * 100 / total) : -1;
+            if (percent != progress) {
+                progress = percent;
+                owner.fireChanged(this);
+            }
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+            owner.fireChanged(this);
+        }
+
+        /**
+         * Throws a {@link CancellationException} if the task was cancelled.
+         */
+        public void checkCancelled() {
+            if (cancelled) throw new CancellationException(name + " cancelled");
+        }
+
+        public void cancel() {
+            if (done) return;
+            cancelled = true;
+            Future<?> f = future;
+            if (f != null) f.cancel(true);
+            // a body that never starts never finishes, so take it off the running list here
+            if (started.compareAndSet(false, true)) {
+                finish();
+                return;
+            }
+            owner.fireChanged(this);
+        }
+
+        /**
+         * Copies a stream while reporting progress and honouring cancellation.
+         *
+         * @param in    The source stream.
+         * @param out   The destination stream.
+         * @param total The expected number of bytes, or a value below 1 if unknown.
+         * @return The number of bytes copied.
+         * @throws IOException If reading or writing fails, or the task was cancelled.
+         */
+        public long transfer(InputStream in, OutputStream out, long total) throws IOException {
+            byte[] buf = new byte[64 * 1024];
+            long copied = 0;
+            int len;
+            while ((len = in.read(buf)) != -1) {
+                if (cancelled) throw new InterruptedIOException(name + " cancelled");
+                out.write(buf, 0, len);
+                copied += len;
+                setProgress(copied, total);
+            }
+            return copied;
+        }
+
+        private synchronized void finish() {
+            if (done) return;
+            done = true;
+            owner.running.remove(this);
+            owner.fireChanged(this);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package ch.framedev;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.SftpException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Moves a batch of files between the local machine and a remote server over several pooled SFTP channels at once.
+ * Each file is streamed with a large buffer; downloads additionally keep several read requests in flight per channel.
+ */
+public class TransferEngine {
+
+    private static final Logger LOGGER = Logger.getLogger(TransferEngine.class.getName());
+
+    public enum Direction {
+        UPLOAD, DOWNLOAD
+    }
+
+    /**
+     * One file to transfer. The size is used for aggregate progress; -1 if unknown.
+     */
+    public record Item(Direction direction, File localFile, String remotePath, long size) {
+
+        public static Item upload(File localFile, String remoteDir) {
+            return new Item(Direction.UPLOAD, localFile, RemoteHelper.resolve(remoteDir, localFile.getName()), localFile.length());
+        }
+
+        public static Item download(String remotePath, File localFile, long size) {
+            return new Item(Direction.DOWNLOAD, localFile, remotePath, size);
+        }
+
+        // The name of the target file; an upload may come from a file of another name, e.g. the download cache
+        public String getName() {
+            return direction == Direction.UPLOAD ? remotePath.substring(remotePath.lastIndexOf('/') + 1) : localFile.getName();
+        }
+    }
+
+    /**
+     * Outcome of one file. The error is null on success.
+     */
+    public record FileResult(Item item, long bytes, long millis, Exception error) {
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        public double getMegabytesPerSecond() {
+            return throughput(bytes, millis);
+        }
+    }
+
+    /**
+     * Outcome of a batch, with wall-clock aggregate throughput.
+     */
+    public record BatchResult(List<FileResult> files, long bytes, long millis) {
+
+        public List<FileResult> getFailures() {
+            List<FileResult> failures = new ArrayList<>();
+            for (FileResult file : files) {
+                if (!file.isSuccess()) failures.add(file);
+            }
+            return failures;
+        }
+
+        public double getMegabytesPerSecond() {
+            return throughput(bytes, millis);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d of %d files, %.1f MB in %.1f s (%.2f MB/s)", files.size() - getFailures().size(),
+                    files.size(), bytes / 1_048_576.0, millis / 1000.0, getMegabytesPerSecond());
+        }
+    }
+
+    /**
+     * Receives aggregate progress from worker threads.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(long bytesDone, long bytesTotal, int filesDone, int filesTotal);
+    }
+
+    private final RemoteHelper remoteHelper;
+    private int bufferSize = 256 * 1024;
+    private int bulkRequests = 32;
+    private int parallelism;
+    private boolean preserveTimes;
+    private boolean deltaUploads;
+
+    public TransferEngine(RemoteHelper remoteHelper) {
+        this.remoteHelper = remoteHelper;
+        this.parallelism = remoteHelper.getMaxChannels();
+    }
+
+    public TransferEngine setBufferSize(int bufferSize) {
+        this.bufferSize = Math.max(8 * 1024, bufferSize);
+        return this;
+    }
+
+    // Outstanding read requests per channel for downloads; more hides latency on slow links
+    public TransferEngine setBulkRequests(int bulkRequests) {
+        this.bulkRequests = Math.max(1, bulkRequests);
+        return this;
+    }
+
+    public TransferEngine setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    // Give uploaded files the local modification time, so a later sync can compare size and mtime cheaply
+    public TransferEngine setPreserveTimes(boolean preserveTimes) {
+        this.preserveTimes = preserveTimes;
+        return this;
+    }
+
+    // Replace existing remote jars by sending only changed entries, see DeltaUpload
+    public TransferEngine setDeltaUploads(boolean deltaUploads) {
+        this.deltaUploads = deltaUploads;
+        return this;
+    }
+
+    /**
+     * Transfers all items, up to the configured parallelism at a time. Failures of single files do not stop the batch.
+     *
+     * @param items     The files to transfer.
+     * @param listener  Optional progress listener.
+     * @param cancelled Polled while copying; returning true aborts the remaining work.
+     * @return Per-file and aggregate results, in the order of the items.
+     * @throws InterruptedException If the calling thread is interrupted.
+     */
+    public BatchResult run(List<Item> items, ProgressListener listener, BooleanSupplier cancelled) throws InterruptedException {
+        long start = System.nanoTime();
+        long total = 0;
+        for (Item item : items) total += Math.max(0, item.size());
+        long bytesTotal = total;
+        AtomicLong bytesDone = new AtomicLong();
+        AtomicInteger filesDone = new AtomicInteger();
+        ProgressListener progress = listener != null ? listener : (b, bt, f, ft) -> {
+        };
+
+        Semaphore permits = new Semaphore(parallelism);
+        List<Future<FileResult>> futures = new ArrayList<>(items.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Item item : items) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return transfer(item, cancelled, n -> progress.onProgress(bytesDone.addAndGet(n), bytesTotal, filesDone.get(), items.size()));
+                    } finally {
+                        permits.release();
+                        progress.onProgress(bytesDone.get(), bytesTotal, filesDone.incrementAndGet(), items.size());
+                    }
+                }));
+            }
+            List<FileResult> results = new ArrayList<>(items.size());
+            long bytes = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                FileResult result;
+                try {
+                    result = futures.get(i).get();
+                } catch (InterruptedException e) {
+                    executor.shutdownNow();
+                    throw e;
+                } catch (Exception e) {
+                    result = new FileResult(items.get(i), 0, 0, e);
+                }
+                bytes += result.bytes();
+                results.add(result);
+            }
+            BatchResult batch = new BatchResult(results, bytes, (System.nanoTime() - start) / 1_000_000);
+            LOGGER.info("Transfer batch finished: " + batch);
+            return batch;
+        }
+    }
+
+    private FileResult transfer(Item item, BooleanSupplier cancelled, ByteCounter counter) {
+        long start = System.nanoTime();
+        long[] copied = {0};
+        try {
+            remoteHelper.execute(channel -> {
+                // a retried attempt starts from scratch
+                counter.add(-copied[0]);
+                copied[0] = 0;
+                if (item.direction() == Direction.UPLOAD) {
+                    upload(channel, item, cancelled, n -> {
+                        copied[0] += n;
+                        counter.add(n);
+                    });
+                } else {
+                    download(channel, item, cancelled, n -> {
+                        copied[0] += n;
+                        counter.add(n);
+                    });
+                }
+                return null;
+            }, true);
+            if (item.direction() == Direction.UPLOAD) {
+                String remoteDir = item.remotePath().substring(0, item.remotePath().lastIndexOf('/') + 1);
+                long modified = preserveTimes ? item.localFile().lastModified() / 1000 * 1000 : System.currentTimeMillis();
+                remoteHelper.updateListing(remoteDir, listing -> listing.withFile(new PluginListing.FileInfo(
+                        item.getName(), item.localFile().length(), modified)));
+                remoteHelper.updateIndex(remoteDir, index -> index.remove(item.getName()));
+            }
+            return new FileResult(item, copied[0], (System.nanoTime() - start) / 1_000_000, null);
+        } catch (Exception e) {
+            return new FileResult(item, copied[0], (System.nanoTime() - start) / 1_000_000, e);
+        }
+    }
+
+    // Uploads to a hidden staging file that is verified and renamed over the target, so a server never sees half a jar
+    private void upload(ChannelSftp channel, Item item, BooleanSupplier cancelled, ByteCounter counter) throws Exception {
+        if (deltaUploads && item.getName().endsWith(".jar")) {
+            long[] sent = {0};
+            DeltaUpload.Result delta = new DeltaUpload(remoteHelper).setBufferSize(bufferSize).upload(channel, item.localFile(),
+                    item.remotePath(), preserveTimes ? item.localFile().lastModified() / 1000 : -1, n -> {
+                        sent[0] += n;
+                        counter.add(n);
+                    }, cancelled);
+            if (delta != null) {
+                // count the reused part as done so aggregate progress still reaches the file size
+                counter.add(item.localFile().length() - sent[0]);
+                return;
+            }
+        }
+        String remoteDir = item.remotePath().substring(0, item.remotePath().lastIndexOf('/') + 1);
+        String stagingPath = remoteDir + StagedFiles.stagingName(item.getName());
+        MessageDigest digest = StagedFiles.newDigest();
+        try (InputStream in = new DigestInputStream(new FileInputStream(item.localFile()), digest);
+             OutputStream out = channel.put(stagingPath, ChannelSftp.OVERWRITE)) {
+            copy(in, out, cancelled, counter);
+        } catch (Exception e) {
+            try {
+                channel.rm(stagingPath);
+            } catch (SftpException cleanup) {
+                // the channel may be gone; the hidden leftover does no harm
+            }
+            throw e;
+        }
+        if (preserveTimes) channel.setMtime(stagingPath, (int) (item.localFile().lastModified() / 1000));
+        remoteHelper.promote(channel, stagingPath, item.remotePath(), item.localFile().length(),
+                remoteHelper.isVerifyHash() ? HexFormat.of().formatHex(digest.digest()) : null);
+    }
+
+    private void download(ChannelSftp channel, Item item, BooleanSupplier cancelled, ByteCounter counter) throws Exception {
+        channel.setBulkRequests(bulkRequests);
+        try (InputStream in = channel.get(item.remotePath());
+             OutputStream out = new FileOutputStream(item.localFile())) {
+            copy(in, out, cancelled, counter);
+        }
+    }
+
+    private void copy(InputStream in, OutputStream out, BooleanSupplier cancelled, ByteCounter counter) throws IOException {
+        byte[] buf = new byte[bufferSize];
+        int len;
+        while ((len = in.read(buf)) != -1) {
+            if (cancelled.getAsBoolean()) throw new InterruptedIOException("Transfer cancelled");
+            out.write(buf, 0, len);
+            counter.add(len);
+        }
+    }
+
+    private static double throughput(long bytes, long millis) {
+        return millis > 0 ? bytes / 1_048_576.0 / (millis / 1000.0) : 0.0;
+    }
+
+    @FunctionalInterface
+    private interface ByteCounter {
+        void add(long bytes);
+    }
+}
@@ -0,0 +1,435 @@
+package ch.framedev;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Minimal zip reader that extracts a single entry using only positioned reads:
+ * the end-of-central-directory record, the central directory up to the wanted entry, and that entry's data.
+ * It can also list the central directory, which is enough to tell which entries two versions of a jar share.
+ * Anything unusual (zip64, encryption, unknown compression) raises a {@link ZipException} so callers can fall back
+ * to a full read with {@link java.util.jar.JarFile}.
+ */
+public final class ZipEntryReader {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int CEN_SIZE = 46;
+    private static final int LOC_SIZE = 30;
+    private static final int MAX_COMMENT = 0xFFFF;
+    // Most jars have no archive comment, so a small tail read almost always finds the EOCD record
+    private static final int INITIAL_TAIL = 1024;
+    // Plugin descriptors are tiny; refuse to inflate anything absurd
+    private static final long MAX_ENTRY_SIZE = 16L * 1024 * 1024;
+
+    /**
+     * Random-access view of a zip file.
+     */
+    public interface Source {
+        long size() throws IOException;
+
+        /**
+         * Opens a stream positioned at the given offset. Callers close it as soon as they have read what they need.
+         */
+        InputStream open(long offset) throws IOException;
+    }
+
+    // On Windows a mapped file cannot be renamed or deleted until the mapping is garbage collected,
+    // which would break enabling or disabling a plugin right after a scan; positioned reads are used there instead
+    private static final boolean MAP_FILES = !System.getProperty("os.name", "").startsWith("Windows");
+
+    private ZipEntryReader() {
+    }
+
+    /**
+     * A source for a local zip file: memory-mapped where that is safe, positioned reads otherwise.
+     *
+     * @param channel An open channel; it must stay open while the source is used.
+     * @return The source.
+     * @throws IOException If the file cannot be mapped.
+     */
+    public static Source of(FileChannel channel) throws IOException {
+        long size = channel.size();
+        return MAP_FILES && size <= Integer.MAX_VALUE ? of(channel.map(FileChannel.MapMode.READ_ONLY, 0, size)) : positioned(channel);
+    }
+
+    /**
+     * A source over bytes that are already in memory, e.g. a jar mapped with {@link FileChannel#map}.
+     * Streams opened from it are views of the buffer and copy nothing until read.
+     *
+     * @param buffer The whole zip file; its position and limit are left untouched.
+     * @return The source.
+     */
+    public static Source of(ByteBuffer buffer) {
+        return new BufferSource(buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    private record BufferSource(ByteBuffer buffer) implements Source {
+        @Override
+        public long size() {
+            return buffer.limit();
+        }
+
+        @Override
+        public InputStream open(long offset) throws IOException {
+            if (offset < 0 || offset > buffer.limit()) throw new EOFException("offset beyond end of zip data");
+            return new BufferInputStream(buffer.duplicate().position((int) offset));
+        }
+    }
+
+    /**
+     * A source reading a file through positioned channel reads, for when mapping is not wanted.
+     * Streams share the channel's position, so only one may be open at a time.
+     *
+     * @param channel An open channel; closing the streams does not close it.
+     * @return The source.
+     */
+    public static Source positioned(FileChannel channel) {
+        return new Source() {
+            @Override
+            public long size() throws IOException {
+                return channel.size();
+            }
+
+            @Override
+            public InputStream open(long offset) throws IOException {
+                // the reader closes what it opens, which must not close the shared channel
+                return new FilterInputStream(Channels.newInputStream(channel.position(offset))) {
+                    @Override
+                    public void close() {
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Reads one of the given entries, preferring names that come earlier in the list.
+     * The central directory is only read to its end when the most preferred name is missing.
+     *
+     * @param source The zip to read from.
+     * @param names  Candidate entry names, most preferred first.
+     * @return The uncompressed entry data, or null if no entry matches.
+     * @throws ZipException If the archive uses a feature this reader does not support or is corrupt.
+     * @throws IOException  If reading from the source fails.
+     */
+    public static byte[] readEntry(Source source, List<String> names) throws IOException {
+        Directory directory = findCentralDirectory(source);
+        CentralEntry entry = findCentralEntry(source, directory.offset(), directory.entries(), names);
+        if (entry == null) {
+            return null;
+        }
+        return readEntryData(source, entry);
+    }
+
+    /**
+     * Reads one entry found with {@link #readCentralDirectory(Source)}.
+     *
+     * @return The uncompressed entry data.
+     * @throws ZipException If the entry is too large, uses an unsupported feature or its CRC does not match.
+     * @throws IOException  If reading from the source fails.
+     */
+    public static byte[] readEntry(Source source, CentralEntry entry) throws IOException {
+        checkSupported(entry);
+        return readEntryData(source, entry);
+    }
+
+    /**
+     * Reads the whole central directory, e.g. to compare two versions of a jar entry by entry.
+     *
+     * @param source The zip to read from.
+     * @return The entries in central directory order.
+     * @throws ZipException If the archive uses zip64 or encryption, or is corrupt.
+     * @throws IOException  If reading from the source fails.
+     */
+    public static List<CentralEntry> readCentralDirectory(Source source) throws IOException {
+        Directory directory = findCentralDirectory(source);
+        List<CentralEntry> entries = new ArrayList<>(directory.entries());
+        byte[] header = new byte[CEN_SIZE];
+        try (InputStream in = source.open(directory.offset())) {
+            for (int i = 0; i < directory.entries(); i++) {
+                readFully(in, header, 0, CEN_SIZE);
+                if (u32(header, 0) != CEN_SIGNATURE) throw new ZipException("bad central directory header");
+                byte[] nameBytes = new byte[u16(header, 28)];
+                readFully(in, nameBytes, 0, nameBytes.length);
+                CentralEntry entry = new CentralEntry(new String(nameBytes, StandardCharsets.UTF_8), u16(header, 8),
+                        u16(header, 10), u32(header, 16), u32(header, 20), u32(header, 24), u32(header, 42));
+                if ((entry.flags & 1) != 0) throw new ZipException("encrypted entry: " + entry.name);
+                if (entry.compressedSize == 0xFFFFFFFFL || entry.size == 0xFFFFFFFFL || entry.localOffset == 0xFFFFFFFFL) {
+                    throw new ZipException("zip64 entry: " + entry.name);
+                }
+                entries.add(entry);
+                skipFully(in, (long) u16(header, 30) + u16(header, 32));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return The offset of the entry's compressed data, found from its local header.
+     * @throws ZipException If the local header is invalid.
+     * @throws IOException  If reading from the source fails.
+     */
+    public static long dataOffset(Source source, CentralEntry entry) throws IOException {
+        byte[] local = new byte[LOC_SIZE];
+        try (InputStream in = source.open(entry.localOffset)) {
+            readFully(in, local, 0, LOC_SIZE);
+        }
+        if (u32(local, 0) != LOC_SIGNATURE) throw new ZipException("bad local header for " + entry.name);
+        return entry.localOffset + LOC_SIZE + u16(local, 26) + u16(local, 28);
+    }
+
+    private static Directory findCentralDirectory(Source source) throws IOException {
+        long size = source.size();
+        byte[] eocd = findEndOfCentralDirectory(source, size);
+        int entries = u16(eocd, 10);
+        long cdSize = u32(eocd, 12);
+        long cdOffset = u32(eocd, 16);
+        if (entries == 0xFFFF || cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL) {
+            throw new ZipException("zip64 archives are not supported");
+        }
+        if (cdOffset + cdSize > size) {
+            throw new ZipException("central directory out of bounds");
+        }
+        return new Directory(entries, cdOffset);
+    }
+
+    private static byte[] findEndOfCentralDirectory(Source source, long size) throws IOException {
+        if (size < EOCD_SIZE) throw new ZipException("file too small to be a zip");
+        int tail = (int) Math.min(size, INITIAL_TAIL);
+        while (true) {
+            byte[] buf = new byte[tail];
+            try (InputStream in = source.open(size - tail)) {
+                readFully(in, buf, 0, tail);
+            }
+            for (int i = tail - EOCD_SIZE; i >= 0; i--) {
+                if (u32(buf, i) == EOCD_SIGNATURE && i + EOCD_SIZE + u16(buf, i + 20) == tail) {
+                    byte[] eocd = new byte[EOCD_SIZE];
+                    System.arraycopy(buf, i, eocd, 0, EOCD_SIZE);
+                    return eocd;
+                }
+            }
+            int max = (int) Math.min(size, EOCD_SIZE + MAX_COMMENT);
+            if (tail >= max) throw new ZipException("end of central directory not found");
+            tail = max;
+        }
+    }
+
+    private static CentralEntry findCentralEntry(Source source, long cdOffset, int entries, List<String> names) throws IOException {
+        // names are compared as bytes, so the thousands of class entries of a jar are never decoded
+        byte[][] wanted = new byte[names.size()][];
+        for (int i = 0; i < wanted.length; i++) wanted[i] = names.get(i).getBytes(StandardCharsets.UTF_8);
+        if (source instanceof BufferSource buffered) {
+            return findCentralEntry(buffered.buffer(), (int) cdOffset, entries, names, wanted);
+        }
+        byte[] header = new byte[CEN_SIZE];
+        byte[] nameBytes = new byte[0xFFFF];
+        CentralEntry best = null;
+        int bestRank = names.size();
+        try (InputStream in = source.open(cdOffset)) {
+            for (int i = 0; i < entries && bestRank > 0; i++) {
+                readFully(in, header, 0, CEN_SIZE);
+                if (u32(header, 0) != CEN_SIGNATURE) throw new ZipException("bad central directory header");
+                int nameLen = u16(header, 28);
+                int extraLen = u16(header, 30);
+                int commentLen = u16(header, 32);
+                readFully(in, nameBytes, 0, nameLen);
+                int rank = rank(wanted, nameBytes, nameLen, bestRank);
+                if (rank >= 0) {
+                    String name = names.get(rank);
+                    CentralEntry entry = new CentralEntry(name, u16(header, 8), u16(header, 10), u32(header, 16),
+                            u32(header, 20), u32(header, 24), u32(header, 42));
+                    checkSupported(entry);
+                    best = entry;
+                    bestRank = rank;
+                }
+                skipFully(in, (long) extraLen + commentLen);
+            }
+        }
+        return best;
+    }
+
+    // Same scan directly on the buffer: headers are read in place, without copying them out first
+    private static CentralEntry findCentralEntry(ByteBuffer buffer, int cdOffset, int entries, List<String> names, byte[][] wanted)
+            throws ZipException {
+        CentralEntry best = null;
+        int bestRank = names.size();
+        int position = cdOffset;
+        for (int i = 0; i < entries && bestRank > 0; i++) {
+            if (position + CEN_SIZE > buffer.limit()) throw new ZipException("central directory out of bounds");
+            if (buffer.getInt(position) != CEN_SIGNATURE) throw new ZipException("bad central directory header");
+            int nameLen = Short.toUnsignedInt(buffer.getShort(position + 28));
+            int next = position + CEN_SIZE + nameLen + Short.toUnsignedInt(buffer.getShort(position + 30))
+                    + Short.toUnsignedInt(buffer.getShort(position + 32));
+            if (next > buffer.limit()) throw new ZipException("central directory out of bounds");
+            for (int rank = 0; rank < bestRank; rank++) {
+                if (wanted[rank].length == nameLen
+                        && buffer.slice(position + CEN_SIZE, nameLen).equals(ByteBuffer.wrap(wanted[rank]))) {
+                    CentralEntry entry = new CentralEntry(names.get(rank), Short.toUnsignedInt(buffer.getShort(position + 8)),
+                            Short.toUnsignedInt(buffer.getShort(position + 10)), Integer.toUnsignedLong(buffer.getInt(position + 16)),
+                            Integer.toUnsignedLong(buffer.getInt(position + 20)), Integer.toUnsignedLong(buffer.getInt(position + 24)),
+                            Integer.toUnsignedLong(buffer.getInt(position + 42)));
+                    checkSupported(entry);
+                    best = entry;
+                    bestRank = rank;
+                    break;
+                }
+            }
+            position = next;
+        }
+        return best;
+    }
+
+    private static void checkSupported(CentralEntry entry) throws ZipException {
+        if ((entry.flags & 1) != 0) throw new ZipException("encrypted entry: " + entry.name);
+        if (entry.compressedSize == 0xFFFFFFFFL || entry.size == 0xFFFFFFFFL || entry.localOffset == 0xFFFFFFFFL) {
+            throw new ZipException("zip64 entry: " + entry.name);
+        }
+        if (entry.size > MAX_ENTRY_SIZE || entry.compressedSize > MAX_ENTRY_SIZE) throw new ZipException("entry too large: " + entry.name);
+    }
+
+    // Index of the wanted name equal to the given bytes, considering only names ranked better than limit; or -1
+    private static int rank(byte[][] wanted, byte[] name, int length, int limit) {
+        for (int i = 0; i < limit; i++) {
+            if (Arrays.equals(wanted[i], 0, wanted[i].length, name, 0, length)) return i;
+        }
+        return -1;
+    }
+
+    private static byte[] readEntryData(Source source, CentralEntry entry) throws IOException {
+        byte[] compressed;
+        try (InputStream in = source.open(entry.localOffset)) {
+            byte[] local = new byte[LOC_SIZE];
+            readFully(in, local, 0, LOC_SIZE);
+            if (u32(local, 0) != LOC_SIGNATURE) throw new ZipException("bad local header for " + entry.name);
+            skipFully(in, (long) u16(local, 26) + u16(local, 28));
+            if (entry.compressedSize > MAX_ENTRY_SIZE) throw new ZipException("entry too large: " + entry.name);
+            compressed = new byte[(int) entry.compressedSize];
+            readFully(in, compressed, 0, compressed.length);
+        }
+
+        byte[] data;
+        if (entry.method == 0) {
+            data = compressed;
+        } else if (entry.method == 8) {
+            data = inflate(compressed, (int) entry.size);
+        } else {
+            throw new ZipException("unsupported compression method " + entry.method + " for " + entry.name);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if (crc.getValue() != entry.crc) throw new ZipException("CRC mismatch for " + entry.name);
+        return data;
+    }
+
+    static byte[] inflate(byte[] compressed, int expectedSize) throws ZipException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(expectedSize, 64));
+            byte[] buf = new byte[8192];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("truncated deflate stream");
+                }
+                if (out.size() + n > expectedSize) throw new ZipException("entry inflates beyond its declared size");
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new ZipException("invalid deflate data: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void readFully(InputStream in, byte[] buf, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = in.read(buf, off, len);
+            if (n < 0) throw new EOFException("unexpected end of zip data");
+            off += n;
+            len -= n;
+        }
+    }
+
+    private static void skipFully(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) throw new EOFException("unexpected end of zip data");
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    static int u16(byte[] b, int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8;
+    }
+
+    static long u32(byte[] b, int off) {
+        return ((long) u16(b, off + 2) << 16) | u16(b, off);
+    }
+
+    // Stream over a buffer view; reads copy straight out of the (mapped) buffer
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+    /**
+     * A central directory record. Offsets and sizes are in bytes; the method is 0 (stored) or 8 (deflated) in jars.
+     */
+    public record CentralEntry(String name, int flags, int method, long crc, long compressedSize, long size, long localOffset) {
+    }
+
+    private record Directory(int entries, long offset) {
+    }
+}